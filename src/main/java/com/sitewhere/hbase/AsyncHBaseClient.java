@@ -0,0 +1,72 @@
+/*
+ * AsyncHBaseClient.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase;
+
+import org.apache.log4j.Logger;
+import org.hbase.async.HBaseClient;
+
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * HBase client that adds a non-blocking asynchbase client to the default implementation.
+ * Blocking table interfaces are still available for code that has not been converted.
+ * 
+ * @author Derek
+ */
+public class AsyncHBaseClient extends DefaultHBaseClient implements ISiteWhereAsyncHBaseClient {
+
+	/** Static logger instance */
+	private static final Logger LOGGER = Logger.getLogger(AsyncHBaseClient.class);
+
+	/** Asynchronous client */
+	private HBaseClient asyncClient;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.hbase.DefaultHBaseClient#afterPropertiesSet()
+	 */
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		super.afterPropertiesSet();
+		try {
+			this.asyncClient = new HBaseClient(getQuorum());
+		} catch (Exception e) {
+			throw new SiteWhereException(e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.hbase.DefaultHBaseClient#stop()
+	 */
+	@Override
+	public void stop() {
+		if (asyncClient != null) {
+			try {
+				asyncClient.shutdown().joinUninterruptibly();
+			} catch (Exception e) {
+				LOGGER.error("Asynchronous HBase client did not shut down cleanly.", e);
+			}
+		}
+		super.stop();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.hbase.ISiteWhereAsyncHBaseClient#getAsyncClient()
+	 */
+	@Override
+	public HBaseClient getAsyncClient() {
+		return asyncClient;
+	}
+}
@@ -0,0 +1,27 @@
+/*
+ * ISiteWhereAsyncHBaseClient.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase;
+
+import org.hbase.async.HBaseClient;
+
+/**
+ * Extends the standard HBase client with access to a non-blocking asynchbase client.
+ * 
+ * @author Derek
+ */
+public interface ISiteWhereAsyncHBaseClient extends ISiteWhereHBaseClient {
+
+	/**
+	 * Get the asynchronous HBase client.
+	 * 
+	 * @return
+	 */
+	public HBaseClient getAsyncClient();
+}
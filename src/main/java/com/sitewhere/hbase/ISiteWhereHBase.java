@@ -37,6 +37,15 @@ public interface ISiteWhereHBase {
 	/** Users table name */
 	public static final byte[] USERS_TABLE_NAME = Bytes.toBytes("sw-users");
 
+	/** Measurement rollups table name */
+	public static final byte[] ROLLUPS_TABLE_NAME = Bytes.toBytes("sw-rollups");
+
+	/** Location index table name */
+	public static final byte[] GEO_TABLE_NAME = Bytes.toBytes("sw-geo");
+
+	/** Location history index table name */
+	public static final byte[] LOCATION_HISTORY_TABLE_NAME = Bytes.toBytes("sw-geo-history");
+
 	/*******************
 	 * COLUMN FAMILIES *
 	 *******************/
@@ -0,0 +1,36 @@
+/*
+ * CursorSearchResults.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.common;
+
+import java.util.List;
+
+import com.sitewhere.rest.model.search.SearchResults;
+
+/**
+ * Page of search results along with an opaque token that resumes the search after the
+ * last result. The total number of matches is not calculated, so the number of results
+ * is the size of the page.
+ * 
+ * @author Derek
+ */
+public class CursorSearchResults<T> extends SearchResults<T> {
+
+	/** Token passed back to get the next page or null if there are no more results */
+	private String resumeToken;
+
+	public CursorSearchResults(List<T> results, String resumeToken) {
+		super(results, results.size());
+		this.resumeToken = resumeToken;
+	}
+
+	public String getResumeToken() {
+		return resumeToken;
+	}
+}
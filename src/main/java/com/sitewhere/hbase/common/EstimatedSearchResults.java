@@ -0,0 +1,36 @@
+/*
+ * EstimatedSearchResults.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.common;
+
+import java.util.List;
+
+import com.sitewhere.rest.model.search.SearchResults;
+
+/**
+ * Page of search results from a scan that stopped once the page was filled. The total
+ * comes from a maintained count where one applies, otherwise it is the number of matches
+ * seen before the scan stopped and is marked as estimated.
+ * 
+ * @author Derek
+ */
+public class EstimatedSearchResults<T> extends SearchResults<T> {
+
+	/** Indicates the total is a lower bound rather than an exact count */
+	private boolean estimated;
+
+	public EstimatedSearchResults(List<T> results, long numResults, boolean estimated) {
+		super(results, numResults);
+		this.estimated = estimated;
+	}
+
+	public boolean isEstimated() {
+		return estimated;
+	}
+}
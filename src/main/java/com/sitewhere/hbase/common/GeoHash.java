@@ -0,0 +1,201 @@
+/*
+ * GeoHash.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.common;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Geohash encoding and related geometry. A geohash interleaves longitude and latitude
+ * bits and encodes them in base 32, so points that share a prefix lie in the same cell
+ * and cells can be found with prefix scans.
+ * 
+ * @author Derek
+ */
+public class GeoHash {
+
+	/** Characters used to encode geohashes */
+	private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+	/** Mean radius of the earth in kilometers */
+	public static final double EARTH_RADIUS_KM = 6371.0;
+
+	/**
+	 * Encode a position as a geohash.
+	 * 
+	 * @param latitude
+	 * @param longitude
+	 * @param precision
+	 *            number of characters
+	 * @return
+	 */
+	public static String encode(double latitude, double longitude, int precision) {
+		double[] latRange = new double[] { -90.0, 90.0 };
+		double[] lngRange = new double[] { -180.0, 180.0 };
+		StringBuilder hash = new StringBuilder(precision);
+		boolean even = true;
+		int bit = 0;
+		int ch = 0;
+		while (hash.length() < precision) {
+			double[] range = even ? lngRange : latRange;
+			double value = even ? longitude : latitude;
+			double mid = (range[0] + range[1]) / 2;
+			if (value >= mid) {
+				ch |= (16 >> bit);
+				range[0] = mid;
+			} else {
+				range[1] = mid;
+			}
+			even = !even;
+			if (bit < 4) {
+				bit++;
+			} else {
+				hash.append(BASE32[ch]);
+				bit = 0;
+				ch = 0;
+			}
+		}
+		return hash.toString();
+	}
+
+	/**
+	 * Get the height in degrees of a cell for the given precision.
+	 * 
+	 * @param precision
+	 * @return
+	 */
+	public static double getCellHeight(int precision) {
+		return 180.0 / Math.pow(2, (5 * precision) / 2);
+	}
+
+	/**
+	 * Get the width in degrees of a cell for the given precision.
+	 * 
+	 * @param precision
+	 * @return
+	 */
+	public static double getCellWidth(int precision) {
+		return 360.0 / Math.pow(2, ((5 * precision) + 1) / 2);
+	}
+
+	/**
+	 * Get the character used to encode a 5-bit value.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public static char getCharacter(int value) {
+		return BASE32[value];
+	}
+
+	/**
+	 * Get the geohashes of the cells that cover a bounding box. The precision is the
+	 * highest (up to the given maximum) at which no more than the given number of cells
+	 * is needed. If even single character cells need more, a single empty hash is
+	 * returned, which is the prefix of every cell, so the result never has more than the
+	 * given number of hashes.
+	 * 
+	 * @param minLat
+	 * @param maxLat
+	 * @param minLng
+	 * @param maxLng
+	 * @param maxPrecision
+	 * @param maxCells
+	 * @return
+	 */
+	public static Set<String> getCoveringHashes(double minLat, double maxLat, double minLng, double maxLng,
+			int maxPrecision, int maxCells) {
+		int precision = maxPrecision;
+		while ((precision > 0) && (getMaxCellCount(maxLat - minLat, maxLng - minLng, precision) > maxCells)) {
+			precision--;
+		}
+		Set<String> hashes = new LinkedHashSet<String>();
+		if (precision == 0) {
+			hashes.add("");
+			return hashes;
+		}
+		double height = getCellHeight(precision);
+		double width = getCellWidth(precision);
+		for (double lat = minLat;; lat += height) {
+			double currentLat = Math.min(lat, maxLat);
+			for (double lng = minLng;; lng += width) {
+				double currentLng = Math.min(lng, maxLng);
+				hashes.add(encode(currentLat, currentLng, precision));
+				if (currentLng >= maxLng) {
+					break;
+				}
+			}
+			if (currentLat >= maxLat) {
+				break;
+			}
+		}
+		return hashes;
+	}
+
+	/**
+	 * Get the most cells of the given precision that a box of the given size can overlap.
+	 * 
+	 * @param height
+	 *            height of the box in degrees
+	 * @param width
+	 *            width of the box in degrees
+	 * @param precision
+	 * @return
+	 */
+	protected static long getMaxCellCount(double height, double width, int precision) {
+		long rows = (long) Math.floor(height / getCellHeight(precision)) + 2;
+		long columns = (long) Math.floor(width / getCellWidth(precision)) + 2;
+		return rows * columns;
+	}
+
+	/**
+	 * Get the bounding box of a circle. If the circle includes a pole or crosses the
+	 * antimeridian, the box covers all longitudes.
+	 * 
+	 * @param latitude
+	 * @param longitude
+	 * @param radiusKm
+	 * @return minimum latitude, maximum latitude, minimum longitude, maximum longitude
+	 */
+	public static double[] getBoundingBox(double latitude, double longitude, double radiusKm) {
+		double deltaLat = Math.toDegrees(radiusKm / EARTH_RADIUS_KM);
+		double minLat = latitude - deltaLat;
+		double maxLat = latitude + deltaLat;
+		if ((minLat <= -90.0) || (maxLat >= 90.0)) {
+			return new double[] { Math.max(minLat, -90.0), Math.min(maxLat, 90.0), -180.0, 180.0 };
+		}
+		double deltaLng = Math.toDegrees(Math.asin(Math.min(1.0, Math.sin(radiusKm / EARTH_RADIUS_KM)
+				/ Math.cos(Math.toRadians(latitude)))));
+		double minLng = longitude - deltaLng;
+		double maxLng = longitude + deltaLng;
+		if ((minLng < -180.0) || (maxLng > 180.0) || (deltaLng >= 90.0)) {
+			return new double[] { minLat, maxLat, -180.0, 180.0 };
+		}
+		return new double[] { minLat, maxLat, minLng, maxLng };
+	}
+
+	/**
+	 * Get the great circle distance between two positions.
+	 * 
+	 * @param lat1
+	 * @param lng1
+	 * @param lat2
+	 * @param lng2
+	 * @return distance in kilometers
+	 */
+	public static double getDistanceKm(double lat1, double lng1, double lat2, double lng2) {
+		double deltaLat = Math.toRadians(lat2 - lat1);
+		double deltaLng = Math.toRadians(lng2 - lng1);
+		double a =
+				Math.pow(Math.sin(deltaLat / 2), 2) + Math.cos(Math.toRadians(lat1))
+						* Math.cos(Math.toRadians(lat2)) * Math.pow(Math.sin(deltaLng / 2), 2);
+		return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+	}
+}
@@ -10,9 +10,19 @@
 package com.sitewhere.hbase.common;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
+import javax.xml.bind.DatatypeConverter;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
 
+import com.sitewhere.hbase.ISiteWhereHBase;
+import com.sitewhere.hbase.ISiteWhereHBaseClient;
 import com.sitewhere.spi.SiteWhereException;
 
 /**
@@ -37,4 +47,137 @@ public class HBaseUtils {
 			throw new SiteWhereException("Exception closing table.", e);
 		}
 	}
+
+	/**
+	 * Get the JSON content stored in a row.
+	 * 
+	 * @param result
+	 * @return
+	 */
+	public static byte[] getJsonContent(Result result) {
+		return result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.JSON_CONTENT);
+	}
+
+	/**
+	 * Create an opaque resume token from the key of the last record on a page.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public static String encodeResumeToken(byte[] key) {
+		return DatatypeConverter.printBase64Binary(key);
+	}
+
+	/**
+	 * Decode a resume token created by {@link #encodeResumeToken(byte[])}.
+	 * 
+	 * @param token
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static byte[] decodeResumeToken(String token) throws SiteWhereException {
+		try {
+			byte[] decoded = DatatypeConverter.parseBase64Binary(token);
+			if (decoded.length == 0) {
+				throw new SiteWhereException("Invalid resume token: " + token);
+			}
+			return decoded;
+		} catch (IllegalArgumentException e) {
+			throw new SiteWhereException("Invalid resume token: " + token, e);
+		}
+	}
+
+	/**
+	 * Get the first row to scan when resuming after the row in a resume token. The result
+	 * is never before the given start row.
+	 * 
+	 * @param startRow
+	 *            start of scan range or null for the start of the table
+	 * @param resumeToken
+	 *            token from the previous page or null for the first page
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static byte[] getResumeRow(byte[] startRow, String resumeToken) throws SiteWhereException {
+		if (resumeToken == null) {
+			return startRow;
+		}
+		byte[] next = Bytes.add(decodeResumeToken(resumeToken), new byte[] { 0x00 });
+		if ((startRow != null) && (Bytes.compareTo(startRow, next) > 0)) {
+			return startRow;
+		}
+		return next;
+	}
+
+	/**
+	 * Get the token that resumes a cursor search after the last row on a page. Returns
+	 * null if the page was not filled, since there are no more rows.
+	 * 
+	 * @param pager
+	 * @return
+	 */
+	public static String getResumeToken(Pager<Result> pager) {
+		if ((!pager.isDone()) || (pager.getResults().isEmpty())) {
+			return null;
+		}
+		return encodeResumeToken(pager.getResults().get(pager.getResults().size() - 1).getRow());
+	}
+
+	/**
+	 * Get the stop row for a scan of all rows that start with a prefix. The last byte that
+	 * is not 0xFF is incremented and the bytes after it are dropped, so a prefix ending in
+	 * 0xFF does not wrap around to a row before the prefix.
+	 * 
+	 * @param prefix
+	 * @return stop row or an empty row (end of table) if no row sorts after the prefix
+	 */
+	public static byte[] getPrefixStopRow(byte[] prefix) {
+		for (int i = prefix.length - 1; i >= 0; i--) {
+			if (prefix[i] != (byte) 0xff) {
+				byte[] stop = Bytes.head(prefix, i + 1);
+				stop[i]++;
+				return stop;
+			}
+		}
+		return HConstants.EMPTY_END_ROW;
+	}
+
+	/**
+	 * Get the start keys of the regions of a table in ascending order.
+	 * 
+	 * @param hbase
+	 * @param tableName
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static byte[][] getRegionStartKeys(ISiteWhereHBaseClient hbase, byte[] tableName)
+			throws SiteWhereException {
+		try {
+			List<HRegionInfo> regions = hbase.getAdmin().getTableRegions(tableName);
+			byte[][] startKeys = new byte[regions.size()][];
+			for (int i = 0; i < regions.size(); i++) {
+				startKeys[i] = regions.get(i).getStartKey();
+			}
+			Arrays.sort(startKeys, Bytes.BYTES_COMPARATOR);
+			return startKeys;
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to locate regions for table.", e);
+		}
+	}
+
+	/**
+	 * Get the index of the region that holds a row, given the sorted start keys of the
+	 * regions of a table.
+	 * 
+	 * @param startKeys
+	 * @param row
+	 * @return
+	 */
+	public static int getRegionIndex(byte[][] startKeys, byte[] row) {
+		int index = Arrays.binarySearch(startKeys, row, Bytes.BYTES_COMPARATOR);
+		if (index < 0) {
+			index = -(index + 1) - 1;
+		}
+		return Math.max(0, index);
+	}
 }
\ No newline at end of file
@@ -9,12 +9,81 @@
  */
 package com.sitewhere.hbase.common;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sitewhere.hbase.encoder.IPayloadMarshaler;
+import com.sitewhere.hbase.encoder.JsonPayloadMarshaler;
+import com.sitewhere.hbase.encoder.SmilePayloadMarshaler;
+import com.sitewhere.rest.model.device.Device;
+import com.sitewhere.rest.model.device.DeviceAlert;
+import com.sitewhere.rest.model.device.DeviceAssignment;
+import com.sitewhere.rest.model.device.DeviceAssignmentState;
+import com.sitewhere.rest.model.device.DeviceLocation;
+import com.sitewhere.rest.model.device.DeviceMeasurements;
+import com.sitewhere.rest.model.device.Site;
+import com.sitewhere.rest.model.device.Zone;
+import com.sitewhere.rest.model.user.GrantedAuthority;
+import com.sitewhere.rest.model.user.User;
 import com.sitewhere.spi.SiteWhereException;
 
+/**
+ * Entry point used by the DAOs to convert entities to and from stored payloads. Writes use
+ * the configured marshaler. Reads detect the payload format, so switching marshalers does
+ * not make existing rows unreadable.
+ * 
+ * @author Derek
+ */
 public class MarshalUtils {
 
+	/** Marshaler for JSON payloads */
+	public static final JsonPayloadMarshaler JSON = new JsonPayloadMarshaler();
+
+	/** Marshaler for Smile payloads */
+	public static final SmilePayloadMarshaler SMILE = new SmilePayloadMarshaler();
+
+	/** Entity types stored by the DAOs */
+	private static final Class<?>[] ENTITY_TYPES = { Device.class, Site.class, Zone.class,
+			DeviceAssignment.class, DeviceAssignmentState.class, DeviceMeasurements.class,
+			DeviceLocation.class, DeviceAlert.class, User.class, GrantedAuthority.class };
+
+	/** Marshaler used for writes */
+	private static volatile IPayloadMarshaler marshaler = JSON;
+
+	/** Marshalers that may be used to read existing payloads */
+	private static final IPayloadMarshaler[] READERS = { JSON, SMILE };
+
+	/**
+	 * Marshal an object using the configured marshaler.
+	 * 
+	 * @param object
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static byte[] marshal(Object object) throws SiteWhereException {
+		return marshaler.encode(object);
+	}
+
+	/**
+	 * Unmarshal a payload written by any supported marshaler.
+	 * 
+	 * @param payload
+	 * @param type
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static <T> T unmarshal(byte[] payload, Class<T> type) throws SiteWhereException {
+		if ((payload == null) || (payload.length == 0)) {
+			throw new SiteWhereException("Unable to unmarshal empty payload.");
+		}
+		if (marshaler.isEncodedBy(payload)) {
+			return marshaler.decode(payload, type);
+		}
+		for (IPayloadMarshaler reader : READERS) {
+			if (reader.isEncodedBy(payload)) {
+				return reader.decode(payload, type);
+			}
+		}
+		throw new SiteWhereException("Unknown payload format for " + type.getSimpleName() + ".");
+	}
+
 	/**
 	 * Marshal an object to a JSON string.
 	 * 
@@ -23,12 +92,7 @@ public class MarshalUtils {
 	 * @throws SiteWhereException
 	 */
 	public static byte[] marshalJson(Object object) throws SiteWhereException {
-		ObjectMapper mapper = new ObjectMapper();
-		try {
-			return mapper.writeValueAsBytes(object);
-		} catch (JsonProcessingException e) {
-			throw new SiteWhereException("Could not marshal device as JSON.", e);
-		}
+		return JSON.encode(object);
 	}
 
 	/**
@@ -40,11 +104,24 @@ public class MarshalUtils {
 	 * @throws SiteWhereException
 	 */
 	public static <T> T unmarshalJson(byte[] json, Class<T> type) throws SiteWhereException {
-		ObjectMapper mapper = new ObjectMapper();
-		try {
-			return mapper.readValue(json, type);
-		} catch (Throwable e) {
-			throw new SiteWhereException("Unable to parse JSON.", e);
+		return JSON.decode(json, type);
+	}
+
+	/**
+	 * Bind readers and writers for all stored entity types.
+	 */
+	public static void prepare() {
+		marshaler.prepare(ENTITY_TYPES);
+		for (IPayloadMarshaler reader : READERS) {
+			reader.prepare(ENTITY_TYPES);
 		}
 	}
+
+	public static IPayloadMarshaler getMarshaler() {
+		return marshaler;
+	}
+
+	public static void setMarshaler(IPayloadMarshaler marshaler) {
+		MarshalUtils.marshaler = marshaler;
+	}
 }
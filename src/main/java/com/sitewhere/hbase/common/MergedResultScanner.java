@@ -0,0 +1,183 @@
+/*
+ * MergedResultScanner.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Merges results from scanners over ranges that differ only by a fixed-length row key
+ * prefix (such as a salt byte). Rows are returned in order of the row key following the
+ * prefix, as if the data had been read from a single unprefixed range.
+ * 
+ * @author Derek
+ */
+public class MergedResultScanner implements ResultScanner {
+
+	/** Scanners being merged */
+	private List<ResultScanner> scanners;
+
+	/** Length of prefix ignored when ordering rows */
+	private int prefixLength;
+
+	/** Next result from each scanner that has not been exhausted */
+	private PriorityQueue<ScannerHead> heads;
+
+	public MergedResultScanner(List<ResultScanner> scanners, int prefixLength) {
+		this.scanners = scanners;
+		this.prefixLength = prefixLength;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.hadoop.hbase.client.ResultScanner#next()
+	 */
+	public Result next() throws IOException {
+		if (heads == null) {
+			heads = new PriorityQueue<ScannerHead>(Math.max(1, scanners.size()), new HeadComparator());
+			for (ResultScanner scanner : scanners) {
+				Result first = scanner.next();
+				if (first != null) {
+					heads.add(new ScannerHead(scanner, first));
+				}
+			}
+		}
+		ScannerHead head = heads.poll();
+		if (head == null) {
+			return null;
+		}
+		Result current = head.getResult();
+		Result next = head.getScanner().next();
+		if (next != null) {
+			head.setResult(next);
+			heads.add(head);
+		}
+		return current;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.hadoop.hbase.client.ResultScanner#next(int)
+	 */
+	public Result[] next(int nbRows) throws IOException {
+		List<Result> results = new ArrayList<Result>(nbRows);
+		for (int i = 0; i < nbRows; i++) {
+			Result result = next();
+			if (result == null) {
+				break;
+			}
+			results.add(result);
+		}
+		return results.toArray(new Result[results.size()]);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.hadoop.hbase.client.ResultScanner#close()
+	 */
+	public void close() {
+		for (ResultScanner scanner : scanners) {
+			scanner.close();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Iterable#iterator()
+	 */
+	public Iterator<Result> iterator() {
+		return new Iterator<Result>() {
+
+			/** Result returned by the next call to next() */
+			private Result next;
+
+			public boolean hasNext() {
+				if (next == null) {
+					try {
+						next = MergedResultScanner.this.next();
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+				return next != null;
+			}
+
+			public Result next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Result current = next;
+				next = null;
+				return current;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Holds the current result for a scanner.
+	 * 
+	 * @author Derek
+	 */
+	private static class ScannerHead {
+
+		private ResultScanner scanner;
+
+		private Result result;
+
+		public ScannerHead(ResultScanner scanner, Result result) {
+			this.scanner = scanner;
+			this.result = result;
+		}
+
+		public ResultScanner getScanner() {
+			return scanner;
+		}
+
+		public Result getResult() {
+			return result;
+		}
+
+		public void setResult(Result result) {
+			this.result = result;
+		}
+	}
+
+	/**
+	 * Orders scanner heads by row key, ignoring the prefix.
+	 * 
+	 * @author Derek
+	 */
+	private class HeadComparator implements Comparator<ScannerHead> {
+
+		public int compare(ScannerHead a, ScannerHead b) {
+			byte[] rowA = a.getResult().getRow();
+			byte[] rowB = b.getResult().getRow();
+			return Bytes.compareTo(rowA, prefixLength, rowA.length - prefixLength, rowB, prefixLength,
+					rowB.length - prefixLength);
+		}
+	}
+}
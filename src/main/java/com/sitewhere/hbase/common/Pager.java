@@ -36,9 +36,29 @@ public class Pager<T> {
 	/** Total records matched */
 	private long total;
 
+	/** Determines how much of the scan is consumed */
+	private PagingMode mode;
+
+	/** Indicates a match was seen after the page was filled */
+	private boolean truncated = false;
+
 	public Pager(ISearchCriteria criteria) {
+		this(criteria, PagingMode.Exact);
+	}
+
+	/**
+	 * Create a pager. In cursor mode the page number is ignored since the scan already
+	 * starts after the last record of the previous page, and the total is not counted. In
+	 * limited mode records are skipped as usual, but processing stops once the page is
+	 * full and one more record has been seen, so the total is only a lower bound.
+	 * 
+	 * @param criteria
+	 * @param mode
+	 */
+	public Pager(ISearchCriteria criteria, PagingMode mode) {
 		this.criteria = criteria;
-		if (criteria.getPageNumber() >= 1) {
+		this.mode = mode;
+		if ((mode != PagingMode.Cursor) && (criteria.getPageNumber() >= 1)) {
 			this.toSkip = ((criteria.getPageNumber() - 1) * criteria.getPageSize());
 		} else {
 			this.toSkip = 0;
@@ -51,15 +71,78 @@ public class Pager<T> {
 	 * been found).
 	 * 
 	 * @param record
+	 * @return
 	 */
-	public void process(T record) {
+	public boolean process(T record) {
 		total++;
 		if (toSkip > 0) {
 			toSkip--;
 		} else if (matched < criteria.getPageSize()) {
 			results.add(record);
 			matched++;
+		} else {
+			truncated = true;
+		}
+		return !isDone();
+	}
+
+	/**
+	 * Indicates that no more records need to be processed. In cursor mode this happens as
+	 * soon as the page is full. In limited mode it happens once a record beyond the page
+	 * has been seen, which shows that more pages exist. In exact mode all records are
+	 * needed for the total.
+	 * 
+	 * @return
+	 */
+	public boolean isDone() {
+		switch (mode) {
+		case Cursor: {
+			return matched >= criteria.getPageSize();
 		}
+		case Limited: {
+			return truncated;
+		}
+		default: {
+			return false;
+		}
+		}
+	}
+
+	/**
+	 * Indicates processing stopped before all records were counted, so the total is not
+	 * exact.
+	 * 
+	 * @return
+	 */
+	public boolean isTruncated() {
+		return truncated && (mode == PagingMode.Limited);
+	}
+
+	/**
+	 * Get the number of records the pager expects to process before it is done.
+	 * 
+	 * @return number of records or -1 if all records are needed
+	 */
+	public long getExpectedRecords() {
+		switch (mode) {
+		case Cursor: {
+			return criteria.getPageSize();
+		}
+		case Limited: {
+			return toSkip + criteria.getPageSize() + 1;
+		}
+		default: {
+			return -1;
+		}
+		}
+	}
+
+	public boolean isCursor() {
+		return mode == PagingMode.Cursor;
+	}
+
+	public PagingMode getMode() {
+		return mode;
 	}
 
 	public ISearchCriteria getSearchCriteria() {
@@ -0,0 +1,27 @@
+/*
+ * PagingMode.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.common;
+
+/**
+ * Controls how much of a scan a {@link Pager} consumes.
+ * 
+ * @author Derek
+ */
+public enum PagingMode {
+
+	/** Consume every matching record so the total is exact */
+	Exact,
+
+	/** Stop once the page is filled and one more match has been seen */
+	Limited,
+
+	/** Resume from a cursor and stop once the page is filled */
+	Cursor;
+}
@@ -0,0 +1,181 @@
+/*
+ * ScanExecutor.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Bounded thread pool used to run parts of a scan in parallel. When all threads are busy
+ * and the queue is full, tasks run on the calling thread, so a burst of large queries
+ * slows down rather than failing or growing the pool. Tasks submitted while the pool is
+ * shutting down also run on the calling thread.
+ * 
+ * @author Derek
+ */
+public class ScanExecutor {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(ScanExecutor.class);
+
+	/** Number of threads running scan tasks */
+	private int threadCount = 8;
+
+	/** Maximum number of tasks waiting for a thread */
+	private int queueCapacity = 64;
+
+	/** Executes scan tasks */
+	private volatile ThreadPoolExecutor executor;
+
+	/**
+	 * Start the thread pool.
+	 */
+	public void start() {
+		this.executor =
+				new ThreadPoolExecutor(threadCount, threadCount, 60, TimeUnit.SECONDS,
+						new ArrayBlockingQueue<Runnable>(queueCapacity),
+						new CallerRunsUnlessShutdownPolicy());
+		LOGGER.info("Scan executor started with " + threadCount + " threads.");
+	}
+
+	/**
+	 * Stop the thread pool. Tasks already submitted are allowed to finish. The pool is
+	 * kept so that calls in flight see it as shut down rather than missing.
+	 */
+	public void stop() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+		LOGGER.info("Scan executor stopped.");
+	}
+
+	/**
+	 * Run a group of tasks and wait for all of them to complete. If the executor is not
+	 * running or there is only one task, tasks run on the calling thread. Tasks rejected
+	 * because the executor was stopped while they were being submitted also run on the
+	 * calling thread. If a task fails, tasks that have not started are cancelled and the
+	 * failure is rethrown.
+	 * 
+	 * @param tasks
+	 * @return results in the same order as the tasks
+	 * @throws SiteWhereException
+	 */
+	public <T> List<T> invokeAll(List<Callable<T>> tasks) throws SiteWhereException {
+		ThreadPoolExecutor current = executor;
+		if ((current == null) || (current.isShutdown()) || (tasks.size() < 2)) {
+			return runSerially(tasks);
+		}
+		List<T> results = new ArrayList<T>(tasks.size());
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		try {
+			for (Callable<T> task : tasks) {
+				try {
+					futures.add(current.submit(task));
+				} catch (RejectedExecutionException e) {
+					FutureTask<T> local = new FutureTask<T>(task);
+					local.run();
+					futures.add(local);
+				}
+			}
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (ExecutionException e) {
+			throw getException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SiteWhereException("Interrupted while waiting for scan tasks.", e);
+		} finally {
+			for (Future<T> future : futures) {
+				future.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Run a group of tasks one after another on the calling thread. Used when no executor
+	 * is configured.
+	 * 
+	 * @param tasks
+	 * @return results in the same order as the tasks
+	 * @throws SiteWhereException
+	 */
+	public static <T> List<T> runSerially(List<Callable<T>> tasks) throws SiteWhereException {
+		List<T> results = new ArrayList<T>(tasks.size());
+		for (Callable<T> task : tasks) {
+			try {
+				results.add(task.call());
+			} catch (Exception e) {
+				throw getException(e);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Convert the failure of a task to a {@link SiteWhereException}.
+	 * 
+	 * @param cause
+	 * @return
+	 */
+	protected static SiteWhereException getException(Throwable cause) {
+		if (cause instanceof SiteWhereException) {
+			return (SiteWhereException) cause;
+		}
+		return new SiteWhereException("Scan task failed.", cause);
+	}
+
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Runs rejected tasks on the calling thread while the pool is running and throws
+	 * {@link RejectedExecutionException} once it is shut down, so that the caller never
+	 * waits on a task that was silently dropped.
+	 * 
+	 * @author Derek
+	 */
+	private static class CallerRunsUnlessShutdownPolicy implements RejectedExecutionHandler {
+
+		public void rejectedExecution(Runnable task, ThreadPoolExecutor pool) {
+			if (pool.isShutdown()) {
+				throw new RejectedExecutionException("Scan executor is shut down.");
+			}
+			task.run();
+		}
+	}
+}
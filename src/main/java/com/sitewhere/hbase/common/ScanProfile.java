@@ -0,0 +1,186 @@
+/*
+ * ScanProfile.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.common;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.hbase.async.Scanner;
+
+/**
+ * Client settings applied to a scan for a given kind of query. Profiles are looked up by
+ * name from {@link ScanProfiles}.
+ * 
+ * @author Derek
+ */
+public class ScanProfile {
+
+	/** Number of rows fetched per call to the region server (0 uses the client default) */
+	private int caching = 0;
+
+	/** Maximum number of cells returned per result (0 returns whole rows) */
+	private int batch = 0;
+
+	/** Indicates whether blocks read by the scan are added to the block cache */
+	private boolean cacheBlocks = true;
+
+	/** Indicates whether caching is reduced to the number of rows a page needs */
+	private boolean adaptToPageSize = false;
+
+	/**
+	 * Apply the profile settings to a scan. Must be called before a filter is set if the
+	 * profile uses batching.
+	 * 
+	 * @param scan
+	 */
+	public void apply(Scan scan) {
+		apply(scan, -1);
+	}
+
+	/**
+	 * Apply the profile settings to a scan that is expected to need a given number of
+	 * rows.
+	 * 
+	 * @param scan
+	 * @param expectedRows
+	 *            number of rows needed or -1 if all rows are read
+	 */
+	public void apply(Scan scan, long expectedRows) {
+		int rows = getRowsPerCall(expectedRows);
+		if (rows > 0) {
+			scan.setCaching(rows);
+		}
+		if (batch > 0) {
+			scan.setBatch(batch);
+		}
+		scan.setCacheBlocks(cacheBlocks);
+	}
+
+	/**
+	 * Apply the profile settings to an asynchronous scanner.
+	 * 
+	 * @param scanner
+	 */
+	public void apply(Scanner scanner) {
+		if (caching > 0) {
+			scanner.setMaxNumRows(caching);
+		}
+		if (batch > 0) {
+			scanner.setMaxNumKeyValues(batch);
+		}
+		scanner.setServerBlockCache(cacheBlocks);
+	}
+
+	/**
+	 * Get the number of rows to fetch per call.
+	 * 
+	 * @param expectedRows
+	 * @return
+	 */
+	protected int getRowsPerCall(long expectedRows) {
+		if ((adaptToPageSize) && (expectedRows > 0) && ((caching <= 0) || (expectedRows < caching))) {
+			return (int) Math.min(expectedRows, Integer.MAX_VALUE);
+		}
+		return caching;
+	}
+
+	/**
+	 * Profile for loading a complete lookup table into memory.
+	 * 
+	 * @return
+	 */
+	public static ScanProfile uidLoad() {
+		ScanProfile profile = new ScanProfile();
+		profile.setCaching(1000);
+		profile.setCacheBlocks(false);
+		return profile;
+	}
+
+	/**
+	 * Profile for paged listings of entities such as sites, devices and users.
+	 * 
+	 * @return
+	 */
+	public static ScanProfile entityList() {
+		ScanProfile profile = new ScanProfile();
+		profile.setCaching(100);
+		profile.setAdaptToPageSize(true);
+		return profile;
+	}
+
+	/**
+	 * Profile for reading a page of events. Each row holds an hour of events, so only a
+	 * few rows are fetched per call.
+	 * 
+	 * @return
+	 */
+	public static ScanProfile eventPage() {
+		ScanProfile profile = new ScanProfile();
+		profile.setCaching(10);
+		return profile;
+	}
+
+	/**
+	 * Profile for cursors that merge the events of many assignments. A cursor usually
+	 * only needs its first row or two before the merge moves on, so rows are fetched in
+	 * small batches to limit what each open cursor holds.
+	 * 
+	 * @return
+	 */
+	public static ScanProfile eventCursor() {
+		ScanProfile profile = new ScanProfile();
+		profile.setCaching(2);
+		return profile;
+	}
+
+	/**
+	 * Profile for reading large numbers of events, such as migrations or exports, without
+	 * pushing recently used blocks out of the block cache.
+	 * 
+	 * @return
+	 */
+	public static ScanProfile eventExport() {
+		ScanProfile profile = new ScanProfile();
+		profile.setCaching(500);
+		profile.setBatch(1000);
+		profile.setCacheBlocks(false);
+		return profile;
+	}
+
+	public int getCaching() {
+		return caching;
+	}
+
+	public void setCaching(int caching) {
+		this.caching = caching;
+	}
+
+	public int getBatch() {
+		return batch;
+	}
+
+	public void setBatch(int batch) {
+		this.batch = batch;
+	}
+
+	public boolean isCacheBlocks() {
+		return cacheBlocks;
+	}
+
+	public void setCacheBlocks(boolean cacheBlocks) {
+		this.cacheBlocks = cacheBlocks;
+	}
+
+	public boolean isAdaptToPageSize() {
+		return adaptToPageSize;
+	}
+
+	public void setAdaptToPageSize(boolean adaptToPageSize) {
+		this.adaptToPageSize = adaptToPageSize;
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * ScanProfiles.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.common;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of named {@link ScanProfile} instances. Defaults are registered for each kind
+ * of query and may be replaced through {@link com.sitewhere.hbase.device.HBaseDeviceManagement}.
+ * 
+ * @author Derek
+ */
+public class ScanProfiles {
+
+	/** Profile used when loading unique id mappings */
+	public static final String UID_LOAD = "uid-load";
+
+	/** Profile used when listing entities */
+	public static final String ENTITY_LIST = "entity-list";
+
+	/** Profile used when reading a page of events */
+	public static final String EVENT_PAGE = "event-page";
+
+	/** Profile used by cursors that merge the events of many assignments */
+	public static final String EVENT_CURSOR = "event-cursor";
+
+	/** Profile used when reading events in bulk */
+	public static final String EVENT_EXPORT = "event-export";
+
+	/** Singleton instance */
+	private static ScanProfiles SINGLETON;
+
+	/** Profiles by name */
+	private Map<String, ScanProfile> profiles = new ConcurrentHashMap<String, ScanProfile>();
+
+	/** Used for names that have no profile */
+	private ScanProfile defaultProfile = new ScanProfile();
+
+	private ScanProfiles() {
+		profiles.put(UID_LOAD, ScanProfile.uidLoad());
+		profiles.put(ENTITY_LIST, ScanProfile.entityList());
+		profiles.put(EVENT_PAGE, ScanProfile.eventPage());
+		profiles.put(EVENT_CURSOR, ScanProfile.eventCursor());
+		profiles.put(EVENT_EXPORT, ScanProfile.eventExport());
+	}
+
+	public static synchronized ScanProfiles getInstance() {
+		if (SINGLETON == null) {
+			SINGLETON = new ScanProfiles();
+		}
+		return SINGLETON;
+	}
+
+	/**
+	 * Get the profile registered under a name.
+	 * 
+	 * @param name
+	 * @return profile or a profile using client defaults if none is registered
+	 */
+	public static ScanProfile get(String name) {
+		ScanProfile profile = getInstance().getProfiles().get(name);
+		return (profile != null) ? profile : getInstance().defaultProfile;
+	}
+
+	/**
+	 * Register profiles, replacing any existing profiles with the same names.
+	 * 
+	 * @param updated
+	 */
+	public void putProfiles(Map<String, ScanProfile> updated) {
+		profiles.putAll(updated);
+	}
+
+	public Map<String, ScanProfile> getProfiles() {
+		return profiles;
+	}
+}
@@ -9,9 +9,16 @@
  */
 package com.sitewhere.hbase.common;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
 import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.regionserver.StoreFile.BloomType;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.log4j.Logger;
 
 import com.sitewhere.hbase.ISiteWhereHBase;
@@ -37,21 +44,118 @@ public class SiteWhereTables {
 	 */
 	public static void assureTable(ISiteWhereHBaseClient hbase, byte[] tableName, BloomType bloom)
 			throws SiteWhereException {
+		TableProfile profile = new TableProfile();
+		profile.setBloomType(bloom);
+		assureTable(hbase, tableName, profile, null);
+	}
+
+	/**
+	 * Assure that the given table exists and create it if not. New tables are created
+	 * with the settings from the given profile and pre-split at the given keys.
+	 * 
+	 * @param hbase
+	 * @param tableName
+	 * @param profile
+	 * @param splitKeys split points or null to create a single region
+	 * @throws SiteWhereException
+	 */
+	public static void assureTable(ISiteWhereHBaseClient hbase, byte[] tableName, TableProfile profile,
+			byte[][] splitKeys) throws SiteWhereException {
+		Map<byte[], TableProfile> families = new TreeMap<byte[], TableProfile>(Bytes.BYTES_COMPARATOR);
+		families.put(ISiteWhereHBase.FAMILY_ID, profile);
+		assureTable(hbase, tableName, families, splitKeys);
+	}
+
+	/**
+	 * Assure that the given table exists with the given column families. New tables are
+	 * created with all families and pre-split at the given keys. Families missing from an
+	 * existing table are added, which requires the table to be disabled briefly.
+	 * 
+	 * @param hbase
+	 * @param tableName
+	 * @param families profile for each column family
+	 * @param splitKeys split points or null to create a single region
+	 * @throws SiteWhereException
+	 */
+	public static void assureTable(ISiteWhereHBaseClient hbase, byte[] tableName,
+			Map<byte[], TableProfile> families, byte[][] splitKeys) throws SiteWhereException {
 		try {
 			String tnameStr = new String(tableName);
 			if (!hbase.getAdmin().tableExists(tableName)) {
 				LOGGER.info("Table '" + tnameStr + "' does not exist. Creating table...");
 				HTableDescriptor table = new HTableDescriptor(tableName);
-				HColumnDescriptor family = new HColumnDescriptor(ISiteWhereHBase.FAMILY_ID);
-				family.setBloomFilterType(bloom);
-				table.addFamily(family);
-				hbase.getAdmin().createTable(table);
-				LOGGER.info("Table '" + tnameStr + "' created successfully.");
+				for (Map.Entry<byte[], TableProfile> family : families.entrySet()) {
+					table.addFamily(family.getValue().createFamily(family.getKey()));
+				}
+				if ((splitKeys != null) && (splitKeys.length > 0)) {
+					hbase.getAdmin().createTable(table, splitKeys);
+					LOGGER.info("Table '" + tnameStr + "' created successfully with " + (splitKeys.length + 1)
+							+ " regions.");
+				} else {
+					hbase.getAdmin().createTable(table);
+					LOGGER.info("Table '" + tnameStr + "' created successfully.");
+				}
 			} else {
+				assureFamilies(hbase, tableName, families);
 				LOGGER.info("Table '" + tnameStr + "' verfied.");
 			}
 		} catch (Throwable e) {
 			throw new SiteWhereException(e);
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Add any of the given column families that are missing from an existing table.
+	 * 
+	 * @param hbase
+	 * @param tableName
+	 * @param families
+	 * @throws IOException
+	 */
+	protected static void assureFamilies(ISiteWhereHBaseClient hbase, byte[] tableName,
+			Map<byte[], TableProfile> families) throws IOException {
+		HTableDescriptor existing = hbase.getAdmin().getTableDescriptor(tableName);
+		List<HColumnDescriptor> missing = new ArrayList<HColumnDescriptor>();
+		for (Map.Entry<byte[], TableProfile> family : families.entrySet()) {
+			if (!existing.hasFamily(family.getKey())) {
+				missing.add(family.getValue().createFamily(family.getKey()));
+			}
+		}
+		if (missing.isEmpty()) {
+			return;
+		}
+		String tnameStr = new String(tableName);
+		LOGGER.info("Adding " + missing.size() + " column families to table '" + tnameStr + "'...");
+		hbase.getAdmin().disableTable(tableName);
+		try {
+			for (HColumnDescriptor family : missing) {
+				hbase.getAdmin().addColumn(tableName, family);
+			}
+		} finally {
+			hbase.getAdmin().enableTable(tableName);
+		}
+		LOGGER.info("Column families added to table '" + tnameStr + "'.");
+	}
+
+	/**
+	 * Calculate split points that divide the space of a fixed-length leading row key
+	 * identifier evenly between regions.
+	 * 
+	 * @param regions number of regions
+	 * @param keyLength length in bytes of the leading identifier
+	 * @param keySpace number of distinct identifier values expected
+	 * @return split points or null if the table should not be split
+	 */
+	public static byte[][] getSplitKeys(int regions, int keyLength, long keySpace) {
+		if ((regions <= 1) || (keySpace < regions)) {
+			return null;
+		}
+		byte[][] splits = new byte[regions - 1][];
+		for (int i = 1; i < regions; i++) {
+			byte[] value = Bytes.toBytes((keySpace * i) / regions);
+			splits[i - 1] = new byte[keyLength];
+			System.arraycopy(value, value.length - keyLength, splits[i - 1], 0, keyLength);
+		}
+		return splits;
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * TableProfile.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.common;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.io.hfile.Compression;
+import org.apache.hadoop.hbase.regionserver.StoreFile.BloomType;
+
+/**
+ * Schema settings used when creating a SiteWhere table. Settings only take effect when
+ * the table is created.
+ * 
+ * @author Derek
+ */
+public class TableProfile {
+
+	/** Bloom filter type */
+	private BloomType bloomType = BloomType.ROW;
+
+	/** Compression codec. Codecs other than GZ require native libraries on the servers */
+	private Compression.Algorithm compression = Compression.Algorithm.NONE;
+
+	/** Encoding used for data blocks */
+	private DataBlockEncoding dataBlockEncoding = DataBlockEncoding.FAST_DIFF;
+
+	/** Block size in bytes */
+	private int blockSize = HColumnDescriptor.DEFAULT_BLOCKSIZE;
+
+	/** Indicates whether blocks should be given priority in the block cache */
+	private boolean inMemory = false;
+
+	/** Indicates whether blocks are cached on read */
+	private boolean blockCacheEnabled = true;
+
+	/** Time in seconds before cells expire */
+	private int timeToLive = HConstants.FOREVER;
+
+	/** Number of regions the table is split into when created */
+	private int regions = 1;
+
+	/** Number of distinct values of the leading row key identifier expected */
+	private long keySpace = 0;
+
+	/**
+	 * Create a column family descriptor using the profile settings.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public HColumnDescriptor createFamily(byte[] name) {
+		HColumnDescriptor family = new HColumnDescriptor(name);
+		family.setBloomFilterType(bloomType);
+		family.setCompressionType(compression);
+		family.setDataBlockEncoding(dataBlockEncoding);
+		family.setBlocksize(blockSize);
+		family.setInMemory(inMemory);
+		family.setBlockCacheEnabled(blockCacheEnabled);
+		family.setTimeToLive(timeToLive);
+		return family;
+	}
+
+	/**
+	 * Profile for small lookup tables that are read on almost every request.
+	 * 
+	 * @return
+	 */
+	public static TableProfile lookupTable() {
+		TableProfile profile = new TableProfile();
+		profile.setDataBlockEncoding(DataBlockEncoding.PREFIX);
+		profile.setInMemory(true);
+		return profile;
+	}
+
+	/**
+	 * Profile for tables holding entities keyed by site or device identifiers.
+	 * 
+	 * @return
+	 */
+	public static TableProfile entityTable() {
+		return new TableProfile();
+	}
+
+	/**
+	 * Profile for entity tables that are split into regions when created.
+	 * 
+	 * @param regions
+	 * @param keySpace
+	 * @return
+	 */
+	public static TableProfile entityTable(int regions, long keySpace) {
+		TableProfile profile = entityTable();
+		profile.setRegions(regions);
+		profile.setKeySpace(keySpace);
+		return profile;
+	}
+
+	/**
+	 * Profile for tables holding large volumes of time series data.
+	 * 
+	 * @return
+	 */
+	public static TableProfile eventTable() {
+		TableProfile profile = new TableProfile();
+		profile.setCompression(Compression.Algorithm.GZ);
+		return profile;
+	}
+
+	/**
+	 * Profile for time series tables that are split into regions when created.
+	 * 
+	 * @param regions
+	 * @param keySpace
+	 * @return
+	 */
+	public static TableProfile eventTable(int regions, long keySpace) {
+		TableProfile profile = eventTable();
+		profile.setRegions(regions);
+		profile.setKeySpace(keySpace);
+		return profile;
+	}
+
+	public BloomType getBloomType() {
+		return bloomType;
+	}
+
+	public void setBloomType(BloomType bloomType) {
+		this.bloomType = bloomType;
+	}
+
+	public Compression.Algorithm getCompression() {
+		return compression;
+	}
+
+	public void setCompression(Compression.Algorithm compression) {
+		this.compression = compression;
+	}
+
+	public DataBlockEncoding getDataBlockEncoding() {
+		return dataBlockEncoding;
+	}
+
+	public void setDataBlockEncoding(DataBlockEncoding dataBlockEncoding) {
+		this.dataBlockEncoding = dataBlockEncoding;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public void setBlockSize(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
+	public boolean isInMemory() {
+		return inMemory;
+	}
+
+	public void setInMemory(boolean inMemory) {
+		this.inMemory = inMemory;
+	}
+
+	public boolean isBlockCacheEnabled() {
+		return blockCacheEnabled;
+	}
+
+	public void setBlockCacheEnabled(boolean blockCacheEnabled) {
+		this.blockCacheEnabled = blockCacheEnabled;
+	}
+
+	public int getTimeToLive() {
+		return timeToLive;
+	}
+
+	public void setTimeToLive(int timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	public int getRegions() {
+		return regions;
+	}
+
+	public void setRegions(int regions) {
+		this.regions = regions;
+	}
+
+	public long getKeySpace() {
+		return keySpace;
+	}
+
+	public void setKeySpace(long keySpace) {
+		this.keySpace = keySpace;
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * AssignmentEventCursor.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+
+import com.sitewhere.spi.search.IDateRangeSearchCriteria;
+
+/**
+ * Walks the matching events of a single assignment with the most recent first. Event
+ * rows are stored newest-first, so apart from the rows buffered by the scanner only the
+ * cells of the current row are held in memory. Cells within a row are sorted since they
+ * may come from more than one family.
+ * 
+ * @author Derek
+ */
+public class AssignmentEventCursor implements Comparable<AssignmentEventCursor> {
+
+	/** Scanner over event rows for the assignment */
+	private ResultScanner scanner;
+
+	/** Type of event being read */
+	private DeviceAssignmentRecordType eventType;
+
+	/** Criteria events must match */
+	private IDateRangeSearchCriteria criteria;
+
+	/** Matching cells from the current row, most recent first */
+	private List<EventCell> cells = new ArrayList<EventCell>();
+
+	/** Index of the current cell */
+	private int index = -1;
+
+	public AssignmentEventCursor(ResultScanner scanner, DeviceAssignmentRecordType eventType,
+			IDateRangeSearchCriteria criteria) {
+		this.scanner = scanner;
+		this.eventType = eventType;
+		this.criteria = criteria;
+	}
+
+	/**
+	 * Move to the next matching event. Must be called before the first call to
+	 * {@link #getCurrent()}.
+	 * 
+	 * @return false if there are no more matching events
+	 * @throws IOException
+	 */
+	public boolean advance() throws IOException {
+		index++;
+		while (index >= cells.size()) {
+			Result row = scanner.next();
+			if (row == null) {
+				cells.clear();
+				return false;
+			}
+			cells.clear();
+			index = 0;
+			for (KeyValue cell : row.raw()) {
+				byte[] qualifier = cell.getQualifier();
+				if (HBaseDeviceEvent.isMatchingEvent(cell.getRow(), qualifier, eventType, criteria)) {
+					cells.add(new EventCell(cell.getRow(), qualifier, cell.getValue()));
+				}
+			}
+			if (cells.size() > 1) {
+				Collections.sort(cells, Collections.reverseOrder());
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the current event.
+	 * 
+	 * @return
+	 */
+	public EventCell getCurrent() {
+		return cells.get(index);
+	}
+
+	/**
+	 * Close the underlying scanner.
+	 */
+	public void close() {
+		scanner.close();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Comparable#compareTo(java.lang.Object)
+	 */
+	public int compareTo(AssignmentEventCursor other) {
+		return other.getCurrent().compareTo(this.getCurrent());
+	}
+}
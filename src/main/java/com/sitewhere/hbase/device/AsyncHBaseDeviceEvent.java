@@ -0,0 +1,593 @@
+/*
+ * AsyncHBaseDeviceEvent.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.log4j.Logger;
+import org.hbase.async.AtomicIncrementRequest;
+import org.hbase.async.GetRequest;
+import org.hbase.async.KeyValue;
+import org.hbase.async.PutRequest;
+import org.hbase.async.Scanner;
+
+import com.sitewhere.hbase.ISiteWhereAsyncHBaseClient;
+import com.sitewhere.hbase.ISiteWhereHBase;
+import com.sitewhere.hbase.common.EstimatedSearchResults;
+import com.sitewhere.hbase.common.Pager;
+import com.sitewhere.hbase.common.PagingMode;
+import com.sitewhere.hbase.common.ScanProfiles;
+import com.sitewhere.hbase.uid.IdManager;
+import com.sitewhere.rest.model.device.DeviceAlert;
+import com.sitewhere.rest.model.device.DeviceEvent;
+import com.sitewhere.rest.model.device.DeviceLocation;
+import com.sitewhere.rest.model.device.DeviceMeasurements;
+import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.SiteWhereSystemException;
+import com.sitewhere.spi.device.IDeviceAlert;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceEvent;
+import com.sitewhere.spi.device.IDeviceLocation;
+import com.sitewhere.spi.device.IDeviceMeasurements;
+import com.sitewhere.spi.device.request.IDeviceAlertCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceLocationCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceMeasurementsCreateRequest;
+import com.sitewhere.spi.error.ErrorCode;
+import com.sitewhere.spi.error.ErrorLevel;
+import com.sitewhere.spi.search.IDateRangeSearchCriteria;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+
+/**
+ * Non-blocking counterpart to {@link HBaseDeviceEvent} built on asynchbase. Events are
+ * prepared with the same logic and key layout as the blocking implementation, but all
+ * HBase calls return {@link Deferred} results so that callers are not tied to a thread
+ * per request.
+ * 
+ * @author Derek
+ */
+public class AsyncHBaseDeviceEvent {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(AsyncHBaseDeviceEvent.class);
+
+	/** Logs failed event count increments */
+	private static final Callback<Object, Exception> COUNT_ERROR = new Callback<Object, Exception>() {
+
+		public Object call(Exception e) throws Exception {
+			LOGGER.error("Unable to update event count.", e);
+			return null;
+		}
+	};
+
+	/**
+	 * Create a new device measurements entry for an assignment.
+	 * 
+	 * @param hbase
+	 * @param assignment
+	 * @param request
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static Deferred<IDeviceMeasurements> createDeviceMeasurements(ISiteWhereAsyncHBaseClient hbase,
+			IDeviceAssignment assignment, IDeviceMeasurementsCreateRequest request) throws SiteWhereException {
+		return storeEventWrite(hbase, HBaseDeviceEvent.prepareDeviceMeasurements(assignment, request));
+	}
+
+	/**
+	 * Create a new device location entry for an assignment.
+	 * 
+	 * @param hbase
+	 * @param assignment
+	 * @param request
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static Deferred<IDeviceLocation> createDeviceLocation(ISiteWhereAsyncHBaseClient hbase,
+			IDeviceAssignment assignment, IDeviceLocationCreateRequest request) throws SiteWhereException {
+		return storeEventWrite(hbase, HBaseDeviceEvent.prepareDeviceLocation(assignment, request));
+	}
+
+	/**
+	 * Create a new device alert entry for an assignment.
+	 * 
+	 * @param hbase
+	 * @param assignment
+	 * @param request
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static Deferred<IDeviceAlert> createDeviceAlert(ISiteWhereAsyncHBaseClient hbase,
+			IDeviceAssignment assignment, IDeviceAlertCreateRequest request) throws SiteWhereException {
+		return storeEventWrite(hbase, HBaseDeviceEvent.prepareDeviceAlert(assignment, request));
+	}
+
+	/**
+	 * Get a device measurements entry by its unique id. The result is null if no entry
+	 * exists for the id.
+	 * 
+	 * @param hbase
+	 * @param id
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static Deferred<IDeviceMeasurements> getDeviceMeasurements(ISiteWhereAsyncHBaseClient hbase,
+			String id) throws SiteWhereException {
+		return getEvent(hbase, id, DeviceMeasurements.class);
+	}
+
+	/**
+	 * Get a device location entry by its unique id. The result is null if no entry exists
+	 * for the id.
+	 * 
+	 * @param hbase
+	 * @param id
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static Deferred<IDeviceLocation> getDeviceLocation(ISiteWhereAsyncHBaseClient hbase, String id)
+			throws SiteWhereException {
+		return getEvent(hbase, id, DeviceLocation.class);
+	}
+
+	/**
+	 * Get a device alert entry by its unique id. The result is null if no entry exists for
+	 * the id.
+	 * 
+	 * @param hbase
+	 * @param id
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static Deferred<IDeviceAlert> getDeviceAlert(ISiteWhereAsyncHBaseClient hbase, String id)
+			throws SiteWhereException {
+		return getEvent(hbase, id, DeviceAlert.class);
+	}
+
+	/**
+	 * List measurements associated with an assignment based on the given criteria.
+	 * 
+	 * @param hbase
+	 * @param assnToken
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static Deferred<SearchResults<IDeviceMeasurements>> listDeviceMeasurements(
+			ISiteWhereAsyncHBaseClient hbase, String assnToken, IDateRangeSearchCriteria criteria)
+			throws SiteWhereException {
+		return listEvents(hbase, assnToken, DeviceAssignmentRecordType.Measurement, criteria,
+				DeviceMeasurements.class);
+	}
+
+	/**
+	 * List locations associated with an assignment based on the given criteria.
+	 * 
+	 * @param hbase
+	 * @param assnToken
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static Deferred<SearchResults<IDeviceLocation>> listDeviceLocations(
+			ISiteWhereAsyncHBaseClient hbase, String assnToken, IDateRangeSearchCriteria criteria)
+			throws SiteWhereException {
+		return listEvents(hbase, assnToken, DeviceAssignmentRecordType.Location, criteria,
+				DeviceLocation.class);
+	}
+
+	/**
+	 * List alerts associated with an assignment based on the given criteria.
+	 * 
+	 * @param hbase
+	 * @param assnToken
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static Deferred<SearchResults<IDeviceAlert>> listDeviceAlerts(ISiteWhereAsyncHBaseClient hbase,
+			String assnToken, IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return listEvents(hbase, assnToken, DeviceAssignmentRecordType.Alert, criteria, DeviceAlert.class);
+	}
+
+	/**
+	 * Send the mutations for a prepared event as asynchronous puts. The result completes
+	 * with the event once all puts have been acknowledged. Counter increments are sent
+	 * after the puts without delaying the result.
+	 * 
+	 * @param hbase
+	 * @param write
+	 * @return
+	 */
+	public static <T extends IDeviceEvent> Deferred<T> storeEventWrite(
+			final ISiteWhereAsyncHBaseClient hbase, DeviceEventWrite<T> write) {
+		final T event = write.getEvent();
+		List<Deferred<Object>> pending = new ArrayList<Deferred<Object>>();
+		for (String tableName : write.getPuts().keySet()) {
+			byte[] table = Bytes.toBytes(tableName);
+			for (Put put : write.getPuts().get(tableName)) {
+				for (List<org.apache.hadoop.hbase.KeyValue> kvs : put.getFamilyMap().values()) {
+					for (org.apache.hadoop.hbase.KeyValue kv : kvs) {
+						PutRequest request =
+								new PutRequest(table, kv.getRow(), kv.getFamily(), kv.getQualifier(),
+										kv.getValue(), kv.getTimestamp());
+						pending.add(hbase.getAsyncClient().put(request));
+					}
+				}
+			}
+		}
+		final Map<String, List<Increment>> increments = write.getIncrements();
+		return Deferred.group(pending).addCallback(new Callback<T, ArrayList<Object>>() {
+
+			public T call(ArrayList<Object> results) throws Exception {
+				storeEventCounts(hbase, increments);
+				return event;
+			}
+		});
+	}
+
+	/**
+	 * Send counter increments for an event once its puts have been acknowledged. The
+	 * increments are buffered by the client so that counts for the same column are
+	 * coalesced. Failures are logged since the event itself has already been stored.
+	 * 
+	 * @param hbase
+	 * @param increments
+	 */
+	protected static void storeEventCounts(ISiteWhereAsyncHBaseClient hbase,
+			Map<String, List<Increment>> increments) {
+		for (String tableName : increments.keySet()) {
+			byte[] table = Bytes.toBytes(tableName);
+			for (Increment increment : increments.get(tableName)) {
+				Map<byte[], NavigableMap<byte[], Long>> families = increment.getFamilyMap();
+				for (Map.Entry<byte[], NavigableMap<byte[], Long>> family : families.entrySet()) {
+					for (Map.Entry<byte[], Long> column : family.getValue().entrySet()) {
+						AtomicIncrementRequest request =
+								new AtomicIncrementRequest(table, increment.getRow(), family.getKey(),
+										column.getKey(), column.getValue());
+						hbase.getAsyncClient().bufferAtomicIncrement(request).addErrback(COUNT_ERROR);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get a single event by its unique id.
+	 * 
+	 * @param hbase
+	 * @param id
+	 * @param type
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected static <I extends IDeviceEvent, D extends DeviceEvent> Deferred<I> getEvent(
+			ISiteWhereAsyncHBaseClient hbase, String id, Class<D> type) throws SiteWhereException {
+		byte[][] key = HBaseDeviceEvent.getEventKeyFromId(id);
+		DeviceAssignmentRecordType eventType = DeviceAssignmentRecordType.getByType(key[1][3]);
+		if (eventType == null) {
+			throw new SiteWhereException("Unknown event type in event id: " + id);
+		}
+		byte[][] families = HBaseDeviceEvent.getReadFamilies(eventType);
+		return getEvent(hbase, key, families, 0, type);
+	}
+
+	/**
+	 * Get a single event from the first of the given families that holds it.
+	 * 
+	 * @param hbase
+	 * @param key
+	 * @param families
+	 * @param index
+	 * @param type
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	protected static <I extends IDeviceEvent, D extends DeviceEvent> Deferred<I> getEvent(
+			final ISiteWhereAsyncHBaseClient hbase, final byte[][] key, final byte[][] families,
+			final int index, final Class<D> type) {
+		GetRequest get = new GetRequest(ISiteWhereHBase.EVENTS_TABLE_NAME, key[0]);
+		get.family(families[index]).qualifier(key[1]);
+		return hbase.getAsyncClient().get(get).addCallbackDeferring(
+				new Callback<Deferred<I>, ArrayList<KeyValue>>() {
+
+					public Deferred<I> call(ArrayList<KeyValue> cells) throws Exception {
+						if (cells.size() > 0) {
+							return Deferred.fromResult((I) DeviceEventCodec.decode(key[0], key[1],
+									cells.get(0).value(), type));
+						}
+						if (index + 1 < families.length) {
+							return getEvent(hbase, key, families, index + 1, type);
+						}
+						return Deferred.fromResult(null);
+					}
+				});
+	}
+
+	/**
+	 * Scan the event rows for an assignment and page through the values that match the
+	 * search criteria, most recent first. One scanner is opened per salt bucket and per
+	 * family that may hold events of the type, and their cells are merged in key order so
+	 * that scanning stops as soon as the page is full and one more match has been seen.
+	 * The total is then only a lower bound and the results are marked as estimated.
+	 * 
+	 * @param hbase
+	 * @param assnToken
+	 * @param eventType
+	 * @param criteria
+	 * @param type
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected static <I extends IDeviceEvent, D extends DeviceEvent> Deferred<SearchResults<I>> listEvents(
+			ISiteWhereAsyncHBaseClient hbase, String assnToken, DeviceAssignmentRecordType eventType,
+			IDateRangeSearchCriteria criteria, final Class<D> type) throws SiteWhereException {
+		byte[] assnKey = IdManager.getInstance().getAssignmentKeys().getValue(assnToken);
+		if (assnKey == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+		}
+		byte[] startKey = HBaseDeviceEvent.getScanStartKey(assnKey, criteria);
+		byte[] stopKey = HBaseDeviceEvent.getScanStopKey(assnKey, criteria);
+		long[] timeRange = HBaseDeviceEvent.getCellTimeRange(criteria);
+		byte[][] families = HBaseDeviceEvent.getReadFamilies(eventType);
+		List<EventScan> scans = new ArrayList<EventScan>();
+		for (byte[][] range : HBaseDeviceEvent.getSaltedRanges(startKey, stopKey)) {
+			for (byte[] family : families) {
+				Scanner scanner = hbase.getAsyncClient().newScanner(ISiteWhereHBase.EVENTS_TABLE_NAME);
+				scanner.setStartKey(range[0]);
+				scanner.setStopKey(range[1]);
+				scanner.setFamily(family);
+				ScanProfiles.get(ScanProfiles.EVENT_PAGE).apply(scanner);
+				if (timeRange != null) {
+					scanner.setTimeRange(timeRange[0], timeRange[1]);
+				}
+				scans.add(new EventScan(scanner, eventType, criteria));
+			}
+		}
+		Pager<EventCell> pager = new Pager<EventCell>(criteria, PagingMode.Limited);
+		return new EventMerge(scans, pager).start().addCallback(
+				new Callback<SearchResults<I>, Pager<EventCell>>() {
+
+					public SearchResults<I> call(Pager<EventCell> matches) throws Exception {
+						SearchResults<I> converted = HBaseDeviceEvent.convertMatches(matches, type);
+						if (!matches.isTruncated()) {
+							return converted;
+						}
+						return new EstimatedSearchResults<I>(converted.getResults(), matches.getTotal(), true);
+					}
+				});
+	}
+
+	/**
+	 * Merges the cells of several event scans in key order and feeds them to a pager,
+	 * requesting more rows from a scan only when its buffered cells have been used. All
+	 * scanners are closed once the pager is done, the scans are exhausted or a request
+	 * fails.
+	 * 
+	 * @author Derek
+	 */
+	private static class EventMerge {
+
+		/** Scans being merged */
+		private List<EventScan> scans;
+
+		/** Scans that have a current cell, ordered by key */
+		private PriorityQueue<EventScan> heads;
+
+		/** Pager that receives merged cells */
+		private Pager<EventCell> pager;
+
+		public EventMerge(List<EventScan> scans, Pager<EventCell> pager) {
+			this.scans = scans;
+			this.pager = pager;
+			this.heads = new PriorityQueue<EventScan>(Math.max(1, scans.size()));
+		}
+
+		/**
+		 * Read the first batch from each scan and start merging.
+		 * 
+		 * @return
+		 */
+		public Deferred<Pager<EventCell>> start() {
+			List<Deferred<EventScan>> first = new ArrayList<Deferred<EventScan>>();
+			for (EventScan scan : scans) {
+				first.add(scan.fill());
+			}
+			return Deferred.group(first).addCallbackDeferring(
+					new Callback<Deferred<Pager<EventCell>>, ArrayList<Object>>() {
+
+						public Deferred<Pager<EventCell>> call(ArrayList<Object> filled) throws Exception {
+							for (EventScan scan : scans) {
+								if (scan.getCurrent() != null) {
+									heads.add(scan);
+								}
+							}
+							return merge();
+						}
+					}).addErrback(new Callback<Exception, Exception>() {
+
+				public Exception call(Exception e) throws Exception {
+					close();
+					return e;
+				}
+			});
+		}
+
+		/**
+		 * Pass cells to the pager in key order until it is done or a scan needs more rows.
+		 * 
+		 * @return
+		 */
+		protected Deferred<Pager<EventCell>> merge() {
+			while ((!pager.isDone()) && (!heads.isEmpty())) {
+				EventScan head = heads.poll();
+				pager.process(head.getCurrent());
+				if (head.advance()) {
+					heads.add(head);
+				} else if (!head.isExhausted()) {
+					return head.fill().addCallbackDeferring(
+							new Callback<Deferred<Pager<EventCell>>, EventScan>() {
+
+								public Deferred<Pager<EventCell>> call(EventScan scan) throws Exception {
+									if (scan.getCurrent() != null) {
+										heads.add(scan);
+									}
+									return merge();
+								}
+							});
+				}
+			}
+			close();
+			return Deferred.fromResult(pager);
+		}
+
+		/**
+		 * Close all scanners that are still open.
+		 */
+		protected void close() {
+			for (EventScan scan : scans) {
+				scan.close();
+			}
+		}
+	}
+
+	/**
+	 * Pulls batches of rows from a scanner over a single family and buffers the matching
+	 * event cells of the latest batch in key order.
+	 * 
+	 * @author Derek
+	 */
+	private static class EventScan implements Callback<Deferred<EventScan>, ArrayList<ArrayList<KeyValue>>>,
+			Comparable<EventScan> {
+
+		/** Scanner being read */
+		private Scanner scanner;
+
+		/** Type of event being matched */
+		private DeviceAssignmentRecordType eventType;
+
+		/** Search criteria */
+		private IDateRangeSearchCriteria criteria;
+
+		/** Matching cells from the latest batch */
+		private List<EventCell> cells = new ArrayList<EventCell>();
+
+		/** Index of the current cell */
+		private int index;
+
+		/** Indicates the scanner has no more rows */
+		private boolean exhausted;
+
+		/** Indicates the scanner has been closed */
+		private boolean closed;
+
+		public EventScan(Scanner scanner, DeviceAssignmentRecordType eventType,
+				IDateRangeSearchCriteria criteria) {
+			this.scanner = scanner;
+			this.eventType = eventType;
+			this.criteria = criteria;
+		}
+
+		/**
+		 * Request batches of rows until one holds a matching cell or the scanner is
+		 * exhausted.
+		 * 
+		 * @return
+		 */
+		public Deferred<EventScan> fill() {
+			cells.clear();
+			index = 0;
+			return scanner.nextRows().addCallbackDeferring(this);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see com.stumbleupon.async.Callback#call(java.lang.Object)
+		 */
+		public Deferred<EventScan> call(ArrayList<ArrayList<KeyValue>> rows) throws Exception {
+			if (rows == null) {
+				exhausted = true;
+				close();
+				return Deferred.fromResult(this);
+			}
+			for (ArrayList<KeyValue> row : rows) {
+				for (KeyValue cell : row) {
+					if (HBaseDeviceEvent.isMatchingEvent(cell.key(), cell.qualifier(), eventType, criteria)) {
+						cells.add(new EventCell(cell.key(), cell.qualifier(), cell.value()));
+					}
+				}
+			}
+			if (cells.isEmpty()) {
+				return scanner.nextRows().addCallbackDeferring(this);
+			}
+			return Deferred.fromResult(this);
+		}
+
+		/**
+		 * Get the current cell or null if the buffered cells have been used.
+		 * 
+		 * @return
+		 */
+		public EventCell getCurrent() {
+			return (index < cells.size()) ? cells.get(index) : null;
+		}
+
+		/**
+		 * Move to the next buffered cell.
+		 * 
+		 * @return true if a buffered cell is available
+		 */
+		public boolean advance() {
+			index++;
+			return index < cells.size();
+		}
+
+		public boolean isExhausted() {
+			return exhausted;
+		}
+
+		/**
+		 * Close the scanner if it is still open.
+		 */
+		public void close() {
+			if (!closed) {
+				closed = true;
+				scanner.close();
+			}
+		}
+
+		/**
+		 * Orders scans by the key of their current cell, ignoring the salt prefix.
+		 * 
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		public int compareTo(EventScan other) {
+			EventCell a = getCurrent();
+			EventCell b = other.getCurrent();
+			int salt = HBaseDeviceEvent.getSaltLength();
+			int result =
+					Bytes.compareTo(a.getRow(), salt, a.getRow().length - salt, b.getRow(), salt,
+							b.getRow().length - salt);
+			if (result != 0) {
+				return result;
+			}
+			return EventCell.KEY_ORDER.compare(a, b);
+		}
+	}
+}
@@ -48,4 +48,19 @@ public enum DeviceAssignmentRecordType {
 	public byte getType() {
 		return type;
 	}
+
+	/**
+	 * Get the record type for a type indicator.
+	 * 
+	 * @param type
+	 * @return record type or null if not recognized
+	 */
+	public static DeviceAssignmentRecordType getByType(byte type) {
+		for (DeviceAssignmentRecordType value : values()) {
+			if (value.getType() == type) {
+				return value;
+			}
+		}
+		return null;
+	}
 }
\ No newline at end of file
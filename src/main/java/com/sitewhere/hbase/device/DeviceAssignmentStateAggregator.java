@@ -0,0 +1,408 @@
+/*
+ * DeviceAssignmentStateAggregator.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.sitewhere.core.SiteWherePersistence;
+import com.sitewhere.hbase.ISiteWhereHBaseClient;
+import com.sitewhere.hbase.common.MarshalUtils;
+import com.sitewhere.rest.model.device.DeviceAssignment;
+import com.sitewhere.rest.model.device.DeviceAssignmentState;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.SiteWhereSystemException;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceEventBatch;
+import com.sitewhere.spi.error.ErrorCode;
+import com.sitewhere.spi.error.ErrorLevel;
+
+/**
+ * Keeps the latest state for each active device assignment in memory and merges
+ * successive event batches into it. The state is written to HBase periodically and on
+ * shutdown. Each write stores only the state column, so the assignment is not read again.
+ * Entries that see no updates for the idle timeout are removed once their state is
+ * stored. State and assignment are held in marshaled form, so each caller gets its own
+ * copy, and the assignment is replaced via {@link #refresh(IDeviceAssignment)} whenever
+ * its status or metadata changes.
+ * 
+ * @author Derek
+ */
+public class DeviceAssignmentStateAggregator {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(DeviceAssignmentStateAggregator.class);
+
+	/** Time in milliseconds between writes of pending state */
+	private long flushIntervalMs = 5000;
+
+	/** Time in milliseconds an entry is kept without updates */
+	private long idleTimeoutMs = 10 * 60 * 1000;
+
+	/** HBase client used for reads and writes */
+	private ISiteWhereHBaseClient hbase;
+
+	/** Entries by assignment token */
+	private ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/** Runs periodic flushes */
+	private ScheduledExecutorService flusher;
+
+	/** Keeps entries from being removed while their state is being written */
+	private final Object flushLock = new Object();
+
+	/**
+	 * Start periodic flushes.
+	 * 
+	 * @param hbase
+	 * @throws SiteWhereException
+	 */
+	public void start(ISiteWhereHBaseClient hbase) throws SiteWhereException {
+		this.hbase = hbase;
+		this.flusher = Executors.newSingleThreadScheduledExecutor();
+		flusher.scheduleWithFixedDelay(new Runnable() {
+
+			public void run() {
+				try {
+					flush();
+				} catch (Throwable t) {
+					LOGGER.error("Unable to flush device assignment state.", t);
+				}
+			}
+		}, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+		LOGGER.info("Device assignment state aggregator started with flush interval of " + flushIntervalMs
+				+ "ms.");
+	}
+
+	/**
+	 * Stop periodic flushes and write any pending state.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	public void stop() throws SiteWhereException {
+		if (flusher == null) {
+			return;
+		}
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(flushIntervalMs, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		LOGGER.info("Device assignment state aggregator stopped.");
+	}
+
+	/**
+	 * Merge an event batch into the state for an assignment.
+	 * 
+	 * @param token
+	 * @param batch
+	 * @return copy of the assignment with the merged state
+	 * @throws SiteWhereException
+	 */
+	public DeviceAssignment update(String token, IDeviceEventBatch batch) throws SiteWhereException {
+		while (true) {
+			Entry entry = getEntry(token);
+			synchronized (entry) {
+				if (entry.isRemoved()) {
+					continue;
+				}
+				if (entry.getContent() == null) {
+					load(token, entry);
+				}
+				DeviceAssignment assignment = entry.getAssignment();
+				DeviceAssignmentState state =
+						SiteWherePersistence.assignmentStateUpdateLogic(assignment, batch);
+				assignment.setState(state);
+				entry.setState(MarshalUtils.marshal(state));
+				entry.setDirty(true);
+				entry.setLastUpdated(System.currentTimeMillis());
+				return assignment;
+			}
+		}
+	}
+
+	/**
+	 * Replace the cached assignment after its status or metadata has been stored and apply
+	 * the latest state to it. Assignments without an entry are only given their state.
+	 * 
+	 * @param assignment
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public IDeviceAssignment refresh(IDeviceAssignment assignment) throws SiteWhereException {
+		if (!(assignment instanceof DeviceAssignment)) {
+			return assignment;
+		}
+		Entry entry = entries.get(assignment.getToken());
+		if (entry == null) {
+			return assignment;
+		}
+		byte[] content = MarshalUtils.marshal(assignment);
+		byte[] state;
+		synchronized (entry) {
+			if (entry.getContent() != null) {
+				entry.setContent(content);
+			}
+			state = entry.getState();
+		}
+		if (state != null) {
+			((DeviceAssignment) assignment).setState(MarshalUtils.unmarshal(state,
+					DeviceAssignmentState.class));
+		}
+		return assignment;
+	}
+
+	/**
+	 * Apply the latest state held in memory to an assignment loaded from HBase.
+	 * 
+	 * @param assignment
+	 * @return
+	 */
+	public IDeviceAssignment applyState(IDeviceAssignment assignment) {
+		if (!(assignment instanceof DeviceAssignment)) {
+			return assignment;
+		}
+		Entry entry = entries.get(assignment.getToken());
+		if (entry == null) {
+			return assignment;
+		}
+		byte[] state;
+		synchronized (entry) {
+			state = entry.getState();
+		}
+		if (state != null) {
+			try {
+				((DeviceAssignment) assignment).setState(MarshalUtils.unmarshal(state,
+						DeviceAssignmentState.class));
+			} catch (SiteWhereException e) {
+				LOGGER.warn("Unable to apply cached state to device assignment.", e);
+			}
+		}
+		return assignment;
+	}
+
+	/**
+	 * Apply the latest state held in memory to a list of assignments.
+	 * 
+	 * @param assignments
+	 */
+	public void applyState(List<IDeviceAssignment> assignments) {
+		for (IDeviceAssignment assignment : assignments) {
+			applyState(assignment);
+		}
+	}
+
+	/**
+	 * Drop the entry for an assignment without writing its state. Used when the
+	 * assignment is deleted. Waits for a flush in progress, so state written by the flush
+	 * can not recreate the row after it is deleted.
+	 * 
+	 * @param token
+	 */
+	public void remove(String token) {
+		synchronized (flushLock) {
+			Entry entry = entries.remove(token);
+			if (entry != null) {
+				synchronized (entry) {
+					entry.setRemoved(true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write state for all assignments updated since the last flush and remove idle
+	 * entries.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	public void flush() throws SiteWhereException {
+		synchronized (flushLock) {
+			Map<String, byte[]> pending = new HashMap<String, byte[]>();
+			List<Entry> flushed = new ArrayList<Entry>();
+			long idleBefore = System.currentTimeMillis() - idleTimeoutMs;
+			for (Map.Entry<String, Entry> current : entries.entrySet()) {
+				Entry entry = current.getValue();
+				synchronized (entry) {
+					if (entry.isRemoved()) {
+						continue;
+					}
+					if (entry.isDirty()) {
+						pending.put(current.getKey(), entry.getState());
+						entry.setDirty(false);
+						flushed.add(entry);
+					} else if (entry.getLastUpdated() < idleBefore) {
+						entry.setRemoved(true);
+						entries.remove(current.getKey(), entry);
+					}
+				}
+			}
+			if (pending.isEmpty()) {
+				return;
+			}
+			try {
+				HBaseDeviceAssignment.storeDeviceAssignmentStates(hbase, pending);
+			} catch (SiteWhereException e) {
+				for (Entry entry : flushed) {
+					synchronized (entry) {
+						entry.setDirty(true);
+					}
+				}
+				throw e;
+			}
+			LOGGER.debug("Stored state for " + pending.size() + " device assignments.");
+		}
+	}
+
+	/**
+	 * Get the entry for an assignment, adding an empty entry if none exists. The entry is
+	 * added before the assignment is loaded so that a concurrent
+	 * {@link #refresh(IDeviceAssignment)} either patches the loaded entry or happens before
+	 * the load.
+	 * 
+	 * @param token
+	 * @return
+	 */
+	protected Entry getEntry(String token) {
+		Entry entry = entries.get(token);
+		if (entry != null) {
+			return entry;
+		}
+		entry = new Entry();
+		Entry existing = entries.putIfAbsent(token, entry);
+		return (existing != null) ? existing : entry;
+	}
+
+	/**
+	 * Load the assignment and stored state for an empty entry. Must be called while
+	 * synchronized on the entry. The entry is removed if the assignment does not exist.
+	 * 
+	 * @param token
+	 * @param entry
+	 * @throws SiteWhereException
+	 */
+	protected void load(String token, Entry entry) throws SiteWhereException {
+		DeviceAssignment assignment = HBaseDeviceAssignment.getDeviceAssignment(hbase, token);
+		if (assignment == null) {
+			entry.setRemoved(true);
+			entries.remove(token, entry);
+			throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+		}
+		entry.setContent(MarshalUtils.marshal(assignment));
+		if (assignment.getState() != null) {
+			entry.setState(MarshalUtils.marshal(assignment.getState()));
+		}
+	}
+
+	/**
+	 * Latest known assignment and state along with flush bookkeeping. Both are marshaled
+	 * so that no object is shared with callers. All access is synchronized on the entry.
+	 * 
+	 * @author Derek
+	 */
+	private static class Entry {
+
+		/** Marshaled assignment or null if not loaded */
+		private byte[] content;
+
+		/** Marshaled latest state or null if none */
+		private byte[] state;
+
+		/** Indicates state changed since last flush */
+		private boolean dirty;
+
+		/** Indicates entry is no longer in the map */
+		private boolean removed;
+
+		/** Time of last update */
+		private long lastUpdated = System.currentTimeMillis();
+
+		/**
+		 * Get a new copy of the assignment with the latest state.
+		 * 
+		 * @return
+		 * @throws SiteWhereException
+		 */
+		public DeviceAssignment getAssignment() throws SiteWhereException {
+			DeviceAssignment assignment = MarshalUtils.unmarshal(content, DeviceAssignment.class);
+			if (state != null) {
+				assignment.setState(MarshalUtils.unmarshal(state, DeviceAssignmentState.class));
+			}
+			return assignment;
+		}
+
+		public byte[] getContent() {
+			return content;
+		}
+
+		public void setContent(byte[] content) {
+			this.content = content;
+		}
+
+		public byte[] getState() {
+			return state;
+		}
+
+		public void setState(byte[] state) {
+			this.state = state;
+		}
+
+		public boolean isDirty() {
+			return dirty;
+		}
+
+		public void setDirty(boolean dirty) {
+			this.dirty = dirty;
+		}
+
+		public boolean isRemoved() {
+			return removed;
+		}
+
+		public void setRemoved(boolean removed) {
+			this.removed = removed;
+		}
+
+		public long getLastUpdated() {
+			return lastUpdated;
+		}
+
+		public void setLastUpdated(long lastUpdated) {
+			this.lastUpdated = lastUpdated;
+		}
+	}
+
+	public long getFlushIntervalMs() {
+		return flushIntervalMs;
+	}
+
+	public void setFlushIntervalMs(long flushIntervalMs) {
+		this.flushIntervalMs = flushIntervalMs;
+	}
+
+	public long getIdleTimeoutMs() {
+		return idleTimeoutMs;
+	}
+
+	public void setIdleTimeoutMs(long idleTimeoutMs) {
+		this.idleTimeoutMs = idleTimeoutMs;
+	}
+}
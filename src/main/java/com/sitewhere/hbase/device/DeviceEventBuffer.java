@@ -0,0 +1,475 @@
+/*
+ * DeviceEventBuffer.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+
+import com.sitewhere.hbase.ISiteWhereHBaseClient;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceEvent;
+
+/**
+ * Bounded buffer that accepts prepared device events and writes them to HBase in batches
+ * from a pool of background flusher threads. A batch is written when it reaches the
+ * configured size or when the oldest event in it has waited for the flush interval.
+ * Callers block (up to a timeout) when the buffer is full. Callers that need the event
+ * stored before they continue use {@link #write(DeviceEventWrite)}, which waits (up to a
+ * timeout) for the batch holding the event to be written.
+ * 
+ * @author Derek
+ */
+public class DeviceEventBuffer {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(DeviceEventBuffer.class);
+
+	/** Message for events failed because the buffer stopped */
+	private static final String NOT_WRITTEN = "Device event buffer stopped before event was written.";
+
+	/** Maximum number of events waiting to be written */
+	private int queueCapacity = 10000;
+
+	/** Maximum number of events written in a single batch */
+	private int batchSize = 500;
+
+	/** Maximum time in milliseconds an event waits before its batch is written */
+	private long flushIntervalMs = 100;
+
+	/** Number of background threads writing batches */
+	private int flusherCount = 2;
+
+	/** Time in milliseconds a caller waits for space in a full buffer */
+	private long enqueueTimeoutMs = 5000;
+
+	/** Time in milliseconds to wait for pending writes on shutdown */
+	private long shutdownTimeoutMs = 30000;
+
+	/** Time in milliseconds a caller of {@link #write(DeviceEventWrite)} waits for the write */
+	private long writeTimeoutMs = 30000;
+
+	/** HBase client used for writes */
+	private ISiteWhereHBaseClient hbase;
+
+	/** Events waiting to be written */
+	private BlockingQueue<BufferedWrite<?>> queue;
+
+	/** Executes flusher threads */
+	private ExecutorService flushers;
+
+	/** Indicates whether new events are accepted */
+	private volatile boolean running = false;
+
+	/** Held while events are added (read) and while the buffer is stopped (write) */
+	private ReadWriteLock state = new ReentrantReadWriteLock();
+
+	/**
+	 * Start the flusher threads.
+	 * 
+	 * @param hbase
+	 * @throws SiteWhereException
+	 */
+	public void start(ISiteWhereHBaseClient hbase) throws SiteWhereException {
+		this.hbase = hbase;
+		this.queue = new ArrayBlockingQueue<BufferedWrite<?>>(queueCapacity);
+		this.flushers = Executors.newFixedThreadPool(flusherCount);
+		this.running = true;
+		for (int i = 0; i < flusherCount; i++) {
+			flushers.execute(new Flusher());
+		}
+		LOGGER.info("Device event buffer started with " + flusherCount + " flushers and capacity of "
+				+ queueCapacity + " events.");
+	}
+
+	/**
+	 * Stop accepting events and wait for pending events to be written. Once no more
+	 * events can be added, the flushers write what is left in the queue. If they do not
+	 * finish before the shutdown timeout they are interrupted and events still in the
+	 * queue are failed, so no caller is left waiting on a future that never completes.
+	 */
+	public void stop() {
+		state.writeLock().lock();
+		try {
+			running = false;
+		} finally {
+			state.writeLock().unlock();
+		}
+		if (flushers == null) {
+			return;
+		}
+		flushers.shutdown();
+		boolean terminated = false;
+		try {
+			terminated = flushers.awaitTermination(shutdownTimeoutMs, TimeUnit.MILLISECONDS);
+			if (!terminated) {
+				LOGGER.warn("Device event buffer did not flush all events before shutdown timeout.");
+				flushers.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			flushers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		List<BufferedWrite<?>> remaining = new ArrayList<BufferedWrite<?>>();
+		queue.drainTo(remaining);
+		if (!remaining.isEmpty()) {
+			if (terminated) {
+				flush(remaining);
+			} else {
+				fail(remaining, new SiteWhereException(NOT_WRITTEN));
+			}
+		}
+		LOGGER.info("Device event buffer stopped.");
+	}
+
+	/**
+	 * Add a prepared event to the buffer. Blocks if the buffer is full and fails if space
+	 * does not become available before the enqueue timeout.
+	 * 
+	 * @param write
+	 * @return future that completes when the event has been written
+	 * @throws SiteWhereException
+	 */
+	public <T extends IDeviceEvent> Future<T> add(DeviceEventWrite<T> write) throws SiteWhereException {
+		return add(write, null);
+	}
+
+	/**
+	 * Add a prepared event to the buffer with a listener that is called once the event has
+	 * been written and before the future completes. The listener runs on a flusher thread
+	 * and is not called if the write fails. Errors thrown by the listener are logged and
+	 * do not fail the write.
+	 * 
+	 * @param write
+	 * @param listener
+	 *            listener or null for none
+	 * @return future that completes when the event has been written
+	 * @throws SiteWhereException
+	 */
+	public <T extends IDeviceEvent> Future<T> add(DeviceEventWrite<T> write, WriteListener<T> listener)
+			throws SiteWhereException {
+		BufferedWrite<T> buffered = new BufferedWrite<T>(write, listener);
+		state.readLock().lock();
+		try {
+			if (!running) {
+				throw new SiteWhereException("Device event buffer is not running.");
+			}
+			if (!queue.offer(buffered, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+				throw new SiteWhereException("Device event buffer is full. Event was not accepted.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SiteWhereException("Interrupted while waiting for space in device event buffer.", e);
+		} finally {
+			state.readLock().unlock();
+		}
+		return buffered.getFuture();
+	}
+
+	/**
+	 * Add a prepared event to the buffer and wait for it to be written.
+	 * 
+	 * @param write
+	 * @return the event once written
+	 * @throws SiteWhereException
+	 *             if the event was not accepted, the write failed or the write timeout
+	 *             passed first (in which case the event may still be written later)
+	 */
+	public <T extends IDeviceEvent> T write(DeviceEventWrite<T> write) throws SiteWhereException {
+		Future<T> future = add(write);
+		try {
+			return future.get(writeTimeoutMs, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SiteWhereException) {
+				throw (SiteWhereException) e.getCause();
+			}
+			throw new SiteWhereException("Unable to write device event.", e.getCause());
+		} catch (TimeoutException e) {
+			throw new SiteWhereException("Timed out waiting for device event to be written.", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SiteWhereException("Interrupted while waiting for device event to be written.", e);
+		}
+	}
+
+	/**
+	 * Create a future that has already completed with the given event. Used when events
+	 * are written synchronously but callers expect a future.
+	 * 
+	 * @param event
+	 * @return
+	 */
+	public static <T extends IDeviceEvent> Future<T> completed(T event) {
+		WriteFuture<T> future = new WriteFuture<T>();
+		future.complete(event);
+		return future;
+	}
+
+	/**
+	 * Write a batch of events and complete their futures.
+	 * 
+	 * @param batch
+	 */
+	protected void flush(List<BufferedWrite<?>> batch) {
+		List<DeviceEventWrite<?>> writes = new ArrayList<DeviceEventWrite<?>>(batch.size());
+		for (BufferedWrite<?> buffered : batch) {
+			writes.add(buffered.getWrite());
+		}
+		try {
+			HBaseDeviceEvent.storeEventWrites(hbase, writes);
+			for (BufferedWrite<?> buffered : batch) {
+				buffered.complete();
+			}
+		} catch (Throwable t) {
+			LOGGER.error("Unable to write batch of " + batch.size() + " device events.", t);
+			fail(batch, t);
+		}
+	}
+
+	/**
+	 * Fail the futures for a batch of events that were not written.
+	 * 
+	 * @param batch
+	 * @param t
+	 */
+	protected void fail(List<BufferedWrite<?>> batch, Throwable t) {
+		for (BufferedWrite<?> buffered : batch) {
+			buffered.fail(t);
+		}
+	}
+
+	/**
+	 * Pulls events from the queue and writes them in batches.
+	 * 
+	 * @author Derek
+	 */
+	private class Flusher implements Runnable {
+
+		public void run() {
+			List<BufferedWrite<?>> batch = new ArrayList<BufferedWrite<?>>(batchSize);
+			while (running || !queue.isEmpty()) {
+				try {
+					BufferedWrite<?> first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+					if (first == null) {
+						continue;
+					}
+					batch.add(first);
+					long deadline = System.currentTimeMillis() + flushIntervalMs;
+					while (batch.size() < batchSize) {
+						queue.drainTo(batch, batchSize - batch.size());
+						long remaining = deadline - System.currentTimeMillis();
+						if ((batch.size() >= batchSize) || (remaining <= 0) || (!running)) {
+							break;
+						}
+						BufferedWrite<?> next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+						if (next == null) {
+							break;
+						}
+						batch.add(next);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					fail(batch, new SiteWhereException(NOT_WRITTEN));
+					return;
+				}
+				flush(batch);
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Called once a buffered event has been written.
+	 * 
+	 * @author Derek
+	 */
+	public static interface WriteListener<T extends IDeviceEvent> {
+
+		/**
+		 * Handle an event that has been written.
+		 * 
+		 * @param event
+		 * @throws SiteWhereException
+		 */
+		public void written(T event) throws SiteWhereException;
+	}
+
+	/**
+	 * Associates a prepared event with the future returned to the caller.
+	 * 
+	 * @author Derek
+	 */
+	private static class BufferedWrite<T extends IDeviceEvent> {
+
+		/** Prepared event */
+		private DeviceEventWrite<T> write;
+
+		/** Called once the event is written or null for none */
+		private WriteListener<T> listener;
+
+		/** Completed once the event is written */
+		private WriteFuture<T> future = new WriteFuture<T>();
+
+		public BufferedWrite(DeviceEventWrite<T> write, WriteListener<T> listener) {
+			this.write = write;
+			this.listener = listener;
+		}
+
+		public void complete() {
+			if (listener != null) {
+				try {
+					listener.written(write.getEvent());
+				} catch (Throwable t) {
+					LOGGER.error("Unable to process device event after it was written.", t);
+				}
+			}
+			future.complete(write.getEvent());
+		}
+
+		public void fail(Throwable t) {
+			future.fail(t);
+		}
+
+		public DeviceEventWrite<T> getWrite() {
+			return write;
+		}
+
+		public WriteFuture<T> getFuture() {
+			return future;
+		}
+	}
+
+	/**
+	 * Future completed by a flusher thread once an event has been written.
+	 * 
+	 * @author Derek
+	 */
+	private static class WriteFuture<T> implements Future<T> {
+
+		/** Released when the write completes */
+		private CountDownLatch done = new CountDownLatch(1);
+
+		/** Event that was written */
+		private T result;
+
+		/** Error if write failed */
+		private Throwable error;
+
+		public void complete(T result) {
+			this.result = result;
+			done.countDown();
+		}
+
+		public void fail(Throwable error) {
+			this.error = error;
+			done.countDown();
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+		public boolean isCancelled() {
+			return false;
+		}
+
+		public boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		public T get() throws InterruptedException, ExecutionException {
+			done.await();
+			return getResult();
+		}
+
+		public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+				TimeoutException {
+			if (!done.await(timeout, unit)) {
+				throw new TimeoutException("Timed out waiting for device event write.");
+			}
+			return getResult();
+		}
+
+		protected T getResult() throws ExecutionException {
+			if (error != null) {
+				throw new ExecutionException(error);
+			}
+			return result;
+		}
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public long getFlushIntervalMs() {
+		return flushIntervalMs;
+	}
+
+	public void setFlushIntervalMs(long flushIntervalMs) {
+		this.flushIntervalMs = flushIntervalMs;
+	}
+
+	public int getFlusherCount() {
+		return flusherCount;
+	}
+
+	public void setFlusherCount(int flusherCount) {
+		this.flusherCount = flusherCount;
+	}
+
+	public long getEnqueueTimeoutMs() {
+		return enqueueTimeoutMs;
+	}
+
+	public void setEnqueueTimeoutMs(long enqueueTimeoutMs) {
+		this.enqueueTimeoutMs = enqueueTimeoutMs;
+	}
+
+	public long getWriteTimeoutMs() {
+		return writeTimeoutMs;
+	}
+
+	public void setWriteTimeoutMs(long writeTimeoutMs) {
+		this.writeTimeoutMs = writeTimeoutMs;
+	}
+
+	public long getShutdownTimeoutMs() {
+		return shutdownTimeoutMs;
+	}
+
+	public void setShutdownTimeoutMs(long shutdownTimeoutMs) {
+		this.shutdownTimeoutMs = shutdownTimeoutMs;
+	}
+}
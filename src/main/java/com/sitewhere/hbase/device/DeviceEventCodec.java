@@ -0,0 +1,157 @@
+/*
+ * DeviceEventCodec.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Date;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sitewhere.hbase.common.MarshalUtils;
+import com.sitewhere.hbase.uid.IdManager;
+import com.sitewhere.rest.model.device.DeviceEvent;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceAssignment;
+
+/**
+ * Encodes and decodes stored device event values. Values start with a format byte so
+ * that the decoder can be chosen per value and rows written in older formats remain
+ * readable. Legacy JSON values are recognized by the opening brace of the JSON object.
+ * 
+ * The binary format is Smile (binary JSON) with the event id, site token, assignment
+ * token and (for millisecond keys) event date removed, since they can be recovered from
+ * the row key and qualifier.
+ * 
+ * @author Derek
+ */
+public class DeviceEventCodec {
+
+	/** Format indicator for JSON values (first byte of a JSON object) */
+	public static final byte FORMAT_JSON = '{';
+
+	/** Format indicator for version 1 of the binary format */
+	public static final byte FORMAT_BINARY_V1 = 0x01;
+
+	/** Field holding the event id */
+	private static final String FIELD_ID = "id";
+
+	/** Field holding the site token */
+	private static final String FIELD_SITE_TOKEN = "siteToken";
+
+	/** Field holding the device assignment token */
+	private static final String FIELD_ASSIGNMENT_TOKEN = "deviceAssignmentToken";
+
+	/** Field holding the event date */
+	private static final String FIELD_EVENT_DATE = "eventDate";
+
+	/**
+	 * Encode an event using the configured encoding.
+	 * 
+	 * @param event
+	 * @param assignment
+	 * @param rowkey
+	 * @param qualifier
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static byte[] encode(DeviceEvent event, IDeviceAssignment assignment, byte[] rowkey,
+			byte[] qualifier) throws SiteWhereException {
+		try {
+			if (DeviceEventSettings.getInstance().getEncoding() == EventEncoding.Json) {
+				return MarshalUtils.JSON.encode(event);
+			}
+			ObjectNode tree = MarshalUtils.SMILE.getMapper().valueToTree(event);
+			tree.remove(FIELD_ID);
+			if ((event.getSiteToken() != null) && (event.getSiteToken().equals(assignment.getSiteToken()))) {
+				tree.remove(FIELD_SITE_TOKEN);
+			}
+			if ((event.getDeviceAssignmentToken() != null)
+					&& (event.getDeviceAssignmentToken().equals(assignment.getToken()))) {
+				tree.remove(FIELD_ASSIGNMENT_TOKEN);
+			}
+			Date keyDate = HBaseDeviceEvent.getDateForEventKeyValue(rowkey, qualifier);
+			if ((EventKeyLayout.forQualifier(qualifier) == EventKeyLayout.Milliseconds)
+					&& (keyDate.equals(event.getEventDate()))) {
+				tree.remove(FIELD_EVENT_DATE);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			out.write(FORMAT_BINARY_V1);
+			out.write(MarshalUtils.SMILE.encode(tree));
+			return out.toByteArray();
+		} catch (Throwable e) {
+			throw new SiteWhereException("Unable to encode device event.", e);
+		}
+	}
+
+	/**
+	 * Decode an event value in any supported format, restoring fields that were derived
+	 * from the key.
+	 * 
+	 * @param rowkey
+	 * @param qualifier
+	 * @param value
+	 * @param type
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static <D extends DeviceEvent> D decode(byte[] rowkey, byte[] qualifier, byte[] value,
+			Class<D> type) throws SiteWhereException {
+		if ((value == null) || (value.length == 0)) {
+			throw new SiteWhereException("Unable to decode empty device event value.");
+		}
+		D event;
+		try {
+			switch (value[0]) {
+			case FORMAT_BINARY_V1: {
+				event = MarshalUtils.SMILE.decode(value, 1, value.length - 1, type);
+				break;
+			}
+			case FORMAT_JSON: {
+				event = MarshalUtils.JSON.decode(value, type);
+				break;
+			}
+			default: {
+				throw new SiteWhereException("Unknown device event format: " + value[0]);
+			}
+			}
+		} catch (SiteWhereException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new SiteWhereException("Unable to decode device event.", e);
+		}
+		restoreKeyFields(event, rowkey, qualifier);
+		return event;
+	}
+
+	/**
+	 * Fill in fields that were not stored with the value.
+	 * 
+	 * @param event
+	 * @param rowkey
+	 * @param qualifier
+	 * @throws SiteWhereException
+	 */
+	protected static void restoreKeyFields(DeviceEvent event, byte[] rowkey, byte[] qualifier)
+			throws SiteWhereException {
+		if (event.getId() == null) {
+			event.setId(HBaseDeviceEvent.getEncodedEventId(rowkey, qualifier));
+		}
+		if (event.getEventDate() == null) {
+			event.setEventDate(HBaseDeviceEvent.getDateForEventKeyValue(rowkey, qualifier));
+		}
+		if (event.getSiteToken() == null) {
+			Long siteId = HBaseDeviceEvent.getSiteIdFromRowKey(rowkey);
+			event.setSiteToken(IdManager.getInstance().getSiteKeys().getName(siteId));
+		}
+		if (event.getDeviceAssignmentToken() == null) {
+			byte[] assnKey = HBaseDeviceEvent.getAssignmentKeyFromRowKey(rowkey);
+			event.setDeviceAssignmentToken(IdManager.getInstance().getAssignmentKeys().getName(assnKey));
+		}
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * DeviceEventSettings.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import com.sitewhere.hbase.common.PagingMode;
+
+/**
+ * Holds settings that control how device events are stored. Settings are configured
+ * through {@link HBaseDeviceManagement} and read by the static event persistence code.
+ * 
+ * @author Derek
+ */
+public class DeviceEventSettings {
+
+	/** Singleton instance */
+	private static DeviceEventSettings SINGLETON;
+
+	/** Qualifier layout used for new events */
+	private EventKeyLayout keyLayout = EventKeyLayout.Milliseconds;
+
+	/** Id of this node, stored in qualifier sequences so that nodes do not collide (0-15) */
+	private int nodeId = 0;
+
+	/** Number of salt buckets event rows are spread over (0 or 1 disables salting) */
+	private int saltBuckets = 0;
+
+	/** Encoding used for new event values */
+	private EventEncoding encoding = EventEncoding.Binary;
+
+	/** Indicates whether each event type is stored in its own column family */
+	private boolean familyPerType = false;
+
+	/** Indicates whether reads also check the shared family for rows not yet migrated */
+	private boolean legacyFamilyReads = true;
+
+	/** Indicates whether events are counted per assignment and type as they are written */
+	private boolean eventCounts = false;
+
+	/** Paging used when listing events for an assignment */
+	private PagingMode pagingMode = PagingMode.Exact;
+
+	/** Indicates whether new events use their event time as cell timestamp */
+	private boolean eventTimestamps = true;
+
+	/** Indicates whether all stored events carry their event time, so scans may use the criteria dates */
+	private boolean timeRangeEndBound = false;
+
+	/** Indicates whether the latest event of each type is kept on the assignment row */
+	private boolean latestEvents = false;
+
+	/** Number of time buckets listed at once when events are read oldest first */
+	private int ascendingWindowBuckets = 168;
+
+	/** Maximum number of assignment cursors open at once when events are merged */
+	private int maxOpenCursors = 256;
+
+	/** Indicates whether assignments are indexed by their most recent location */
+	private boolean locationIndex = false;
+
+	/** Indicates whether location events are indexed by site, time and position */
+	private boolean locationHistoryIndex = false;
+
+	private DeviceEventSettings() {
+	}
+
+	public static DeviceEventSettings getInstance() {
+		if (SINGLETON == null) {
+			SINGLETON = new DeviceEventSettings();
+		}
+		return SINGLETON;
+	}
+
+	public int getNodeId() {
+		return nodeId;
+	}
+
+	public void setNodeId(int nodeId) {
+		if ((nodeId < 0) || (nodeId > 15)) {
+			throw new IllegalArgumentException("Node id must be between 0 and 15.");
+		}
+		this.nodeId = nodeId;
+	}
+
+	public EventKeyLayout getKeyLayout() {
+		return keyLayout;
+	}
+
+	public void setKeyLayout(EventKeyLayout keyLayout) {
+		this.keyLayout = keyLayout;
+	}
+
+	public int getSaltBuckets() {
+		return saltBuckets;
+	}
+
+	public void setSaltBuckets(int saltBuckets) {
+		if ((saltBuckets < 0) || (saltBuckets > 256)) {
+			throw new IllegalArgumentException("Number of salt buckets must be between 0 and 256.");
+		}
+		this.saltBuckets = saltBuckets;
+	}
+
+	public EventEncoding getEncoding() {
+		return encoding;
+	}
+
+	public void setEncoding(EventEncoding encoding) {
+		this.encoding = encoding;
+	}
+
+	public boolean isFamilyPerType() {
+		return familyPerType;
+	}
+
+	public void setFamilyPerType(boolean familyPerType) {
+		this.familyPerType = familyPerType;
+	}
+
+	public boolean isLegacyFamilyReads() {
+		return legacyFamilyReads;
+	}
+
+	public void setLegacyFamilyReads(boolean legacyFamilyReads) {
+		this.legacyFamilyReads = legacyFamilyReads;
+	}
+
+	public boolean isEventCounts() {
+		return eventCounts;
+	}
+
+	public void setEventCounts(boolean eventCounts) {
+		this.eventCounts = eventCounts;
+	}
+
+	public PagingMode getPagingMode() {
+		return pagingMode;
+	}
+
+	public void setPagingMode(PagingMode pagingMode) {
+		if (pagingMode == PagingMode.Cursor) {
+			throw new IllegalArgumentException("Cursor paging is only used with resume tokens.");
+		}
+		this.pagingMode = pagingMode;
+	}
+
+	public boolean isEventTimestamps() {
+		return eventTimestamps;
+	}
+
+	public void setEventTimestamps(boolean eventTimestamps) {
+		this.eventTimestamps = eventTimestamps;
+	}
+
+	public boolean isTimeRangeEndBound() {
+		return timeRangeEndBound;
+	}
+
+	public void setTimeRangeEndBound(boolean timeRangeEndBound) {
+		this.timeRangeEndBound = timeRangeEndBound;
+	}
+
+	public boolean isLatestEvents() {
+		return latestEvents;
+	}
+
+	public void setLatestEvents(boolean latestEvents) {
+		this.latestEvents = latestEvents;
+	}
+
+	/**
+	 * Indicates whether event rows are prefixed with a salt byte.
+	 * 
+	 * @return
+	 */
+	public boolean isSalted() {
+		return saltBuckets > 1;
+	}
+
+	public int getAscendingWindowBuckets() {
+		return ascendingWindowBuckets;
+	}
+
+	public void setAscendingWindowBuckets(int ascendingWindowBuckets) {
+		this.ascendingWindowBuckets = ascendingWindowBuckets;
+	}
+
+	public int getMaxOpenCursors() {
+		return maxOpenCursors;
+	}
+
+	public void setMaxOpenCursors(int maxOpenCursors) {
+		this.maxOpenCursors = maxOpenCursors;
+	}
+
+	public boolean isLocationIndex() {
+		return locationIndex;
+	}
+
+	public void setLocationIndex(boolean locationIndex) {
+		this.locationIndex = locationIndex;
+	}
+
+	public boolean isLocationHistoryIndex() {
+		return locationHistoryIndex;
+	}
+
+	public void setLocationHistoryIndex(boolean locationHistoryIndex) {
+		this.locationHistoryIndex = locationHistoryIndex;
+	}
+}
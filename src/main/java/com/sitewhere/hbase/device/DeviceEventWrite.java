@@ -0,0 +1,89 @@
+/*
+ * DeviceEventWrite.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.sitewhere.spi.device.IDeviceEvent;
+
+/**
+ * Holds a fully prepared device event along with the HBase mutations needed to persist
+ * it. Allows event creation to be separated from the actual write so that writes may be
+ * grouped or deferred.
+ * 
+ * @author Derek
+ */
+public class DeviceEventWrite<T extends IDeviceEvent> {
+
+	/** Event being written */
+	private T event;
+
+	/** Puts to be executed, grouped by table name */
+	private Map<String, List<Put>> puts = new LinkedHashMap<String, List<Put>>();
+
+	/** Counter increments to be executed after the puts, grouped by table name */
+	private Map<String, List<Increment>> increments = new LinkedHashMap<String, List<Increment>>();
+
+	public DeviceEventWrite(T event) {
+		this.event = event;
+	}
+
+	/**
+	 * Add a put that should be executed against the given table.
+	 * 
+	 * @param tableName
+	 * @param put
+	 */
+	public void addPut(byte[] tableName, Put put) {
+		String key = Bytes.toString(tableName);
+		List<Put> existing = puts.get(key);
+		if (existing == null) {
+			existing = new ArrayList<Put>();
+			puts.put(key, existing);
+		}
+		existing.add(put);
+	}
+
+	/**
+	 * Add a counter increment that should be executed against the given table once the
+	 * puts have been written.
+	 * 
+	 * @param tableName
+	 * @param increment
+	 */
+	public void addIncrement(byte[] tableName, Increment increment) {
+		String key = Bytes.toString(tableName);
+		List<Increment> existing = increments.get(key);
+		if (existing == null) {
+			existing = new ArrayList<Increment>();
+			increments.put(key, existing);
+		}
+		existing.add(increment);
+	}
+
+	public T getEvent() {
+		return event;
+	}
+
+	public Map<String, List<Put>> getPuts() {
+		return puts;
+	}
+
+	public Map<String, List<Increment>> getIncrements() {
+		return increments;
+	}
+}
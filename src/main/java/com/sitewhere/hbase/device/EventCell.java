@@ -0,0 +1,88 @@
+/*
+ * EventCell.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import java.util.Comparator;
+import java.util.Date;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Raw cell holding a stored device event. Keeps the row key and qualifier so that fields
+ * derived from the key can be restored when the value is decoded. Cells are ordered by
+ * event date without having to decode the value.
+ * 
+ * @author Derek
+ */
+public class EventCell implements Comparable<EventCell> {
+
+	/**
+	 * Orders cells from the same row in scan order (most recent first), which is the
+	 * order used to compare against resume keys. Qualifiers start with the inverted time
+	 * offset, so cells read from more than one family sort as if stored in one.
+	 */
+	public static final Comparator<EventCell> KEY_ORDER = new Comparator<EventCell>() {
+
+		public int compare(EventCell first, EventCell second) {
+			return Bytes.compareTo(first.getQualifier(), second.getQualifier());
+		}
+	};
+
+	/** Event row key */
+	private byte[] row;
+
+	/** Event column qualifier */
+	private byte[] qualifier;
+
+	/** Stored value */
+	private byte[] value;
+
+	/** Event date decoded from key */
+	private Date date;
+
+	public EventCell(byte[] row, byte[] qualifier, byte[] value) {
+		this.row = row;
+		this.qualifier = qualifier;
+		this.value = value;
+	}
+
+	public byte[] getRow() {
+		return row;
+	}
+
+	public byte[] getQualifier() {
+		return qualifier;
+	}
+
+	public byte[] getValue() {
+		return value;
+	}
+
+	/**
+	 * Get the event date encoded in the key.
+	 * 
+	 * @return
+	 */
+	public Date getDate() {
+		if (date == null) {
+			date = HBaseDeviceEvent.getDateForEventKeyValue(row, qualifier);
+		}
+		return date;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Comparable#compareTo(java.lang.Object)
+	 */
+	public int compareTo(EventCell other) {
+		return this.getDate().compareTo(other.getDate());
+	}
+}
@@ -0,0 +1,25 @@
+/*
+ * EventEncoding.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+/**
+ * Indicates how device event values are encoded when stored. Values in any encoding can
+ * be read regardless of the encoding used for new events.
+ * 
+ * @author Derek
+ */
+public enum EventEncoding {
+
+	/** Full JSON representation */
+	Json,
+
+	/** Compact binary representation without fields derivable from the key */
+	Binary;
+}
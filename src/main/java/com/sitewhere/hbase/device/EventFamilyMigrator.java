@@ -0,0 +1,146 @@
+/*
+ * EventFamilyMigrator.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.log4j.Logger;
+
+import com.sitewhere.hbase.ISiteWhereHBase;
+import com.sitewhere.hbase.ISiteWhereHBaseClient;
+import com.sitewhere.hbase.common.HBaseUtils;
+import com.sitewhere.hbase.common.ScanProfiles;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Moves events stored in the shared column family of the events table into the family
+ * for their event type. Cells keep their row, qualifier and timestamp. Each batch is
+ * written to the new families before it is deleted from the shared family, so the
+ * migration can be stopped and run again at any point. The per-type families must exist
+ * before it is run, which is the case once per-type families are enabled and device
+ * management has started.
+ * 
+ * @author Derek
+ */
+public class EventFamilyMigrator {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(EventFamilyMigrator.class);
+
+	/** Number of rows written per batch */
+	private int batchSize = 500;
+
+	/** Indicates whether cells are removed from the shared family once copied */
+	private boolean deleteMigrated = true;
+
+	/**
+	 * Migrate all events in the shared family.
+	 * 
+	 * @param hbase
+	 * @return number of events migrated
+	 * @throws SiteWhereException
+	 */
+	public long migrate(ISiteWhereHBaseClient hbase) throws SiteWhereException {
+		HTableInterface events = null;
+		ResultScanner scanner = null;
+		long migrated = 0;
+		try {
+			events = hbase.getTableInterface(ISiteWhereHBase.EVENTS_TABLE_NAME);
+			Scan scan = new Scan();
+			scan.addFamily(ISiteWhereHBase.FAMILY_ID);
+			ScanProfiles.get(ScanProfiles.EVENT_EXPORT).apply(scan);
+			scanner = events.getScanner(scan);
+
+			List<Put> puts = new ArrayList<Put>();
+			List<Delete> deletes = new ArrayList<Delete>();
+			for (Result result : scanner) {
+				Put put = new Put(result.getRow());
+				Delete delete = new Delete(result.getRow());
+				for (KeyValue cell : result.raw()) {
+					byte[] qualifier = cell.getQualifier();
+					DeviceAssignmentRecordType type =
+							(qualifier.length > 3) ? DeviceAssignmentRecordType.getByType(qualifier[3]) : null;
+					if ((type == null) || (type == DeviceAssignmentRecordType.Primary)) {
+						continue;
+					}
+					put.add(HBaseDeviceEvent.getEventTypeFamily(type), qualifier, cell.getTimestamp(),
+							cell.getValue());
+					delete.deleteColumn(ISiteWhereHBase.FAMILY_ID, qualifier, cell.getTimestamp());
+					migrated++;
+				}
+				if (put.isEmpty()) {
+					continue;
+				}
+				puts.add(put);
+				deletes.add(delete);
+				if (puts.size() >= batchSize) {
+					writeBatch(events, puts, deletes);
+					LOGGER.info("Migrated " + migrated + " events to per-type column families.");
+				}
+			}
+			writeBatch(events, puts, deletes);
+			LOGGER.info("Migration complete. Migrated " + migrated + " events to per-type column families.");
+			return migrated;
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to migrate events to per-type column families.", e);
+		} finally {
+			if (scanner != null) {
+				scanner.close();
+			}
+			HBaseUtils.closeCleanly(events);
+		}
+	}
+
+	/**
+	 * Write copied cells, then remove the originals.
+	 * 
+	 * @param events
+	 * @param puts
+	 * @param deletes
+	 * @throws IOException
+	 */
+	protected void writeBatch(HTableInterface events, List<Put> puts, List<Delete> deletes)
+			throws IOException {
+		if (!puts.isEmpty()) {
+			events.put(puts);
+			events.flushCommits();
+		}
+		if ((deleteMigrated) && (!deletes.isEmpty())) {
+			events.delete(deletes);
+		}
+		puts.clear();
+		deletes.clear();
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public boolean isDeleteMigrated() {
+		return deleteMigrated;
+	}
+
+	public void setDeleteMigrated(boolean deleteMigrated) {
+		this.deleteMigrated = deleteMigrated;
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * EventKeyLayout.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+/**
+ * Indicates the layout of the column qualifier used to store a device event. Both
+ * layouts share the same row key and may coexist in a table. The layout of a stored
+ * event is determined from the length of its qualifier.
+ * 
+ * @author Derek
+ */
+public enum EventKeyLayout {
+
+	/** Inverted seconds offset (3 bytes) + event type (1 byte) */
+	Seconds(4),
+
+	/** Inverted milliseconds offset (3 bytes) + event type (1 byte) + inverted sequence (2 bytes) */
+	Milliseconds(6);
+
+	/** Length of qualifiers using the layout */
+	private int qualifierLength;
+
+	private EventKeyLayout(int qualifierLength) {
+		this.qualifierLength = qualifierLength;
+	}
+
+	/**
+	 * Get the length of qualifiers using the layout.
+	 * 
+	 * @return
+	 */
+	public int getQualifierLength() {
+		return qualifierLength;
+	}
+
+	/**
+	 * Get the layout used for a stored qualifier.
+	 * 
+	 * @param qualifier
+	 * @return
+	 */
+	public static EventKeyLayout forQualifier(byte[] qualifier) {
+		if (qualifier.length >= Milliseconds.getQualifierLength()) {
+			return Milliseconds;
+		}
+		return Seconds;
+	}
+}
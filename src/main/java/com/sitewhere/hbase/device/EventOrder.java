@@ -0,0 +1,24 @@
+/*
+ * EventOrder.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+/**
+ * Order in which events for an assignment are listed.
+ * 
+ * @author Derek
+ */
+public enum EventOrder {
+
+	/** Newest events first. Matches the order events are stored in */
+	NewestFirst,
+
+	/** Oldest events first. Buckets are walked from oldest to newest */
+	OldestFirst;
+}
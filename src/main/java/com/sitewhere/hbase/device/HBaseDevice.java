@@ -30,9 +30,12 @@ import org.apache.hadoop.hbase.util.Bytes;
 import com.sitewhere.core.SiteWherePersistence;
 import com.sitewhere.hbase.ISiteWhereHBase;
 import com.sitewhere.hbase.ISiteWhereHBaseClient;
+import com.sitewhere.hbase.common.CursorSearchResults;
 import com.sitewhere.hbase.common.HBaseUtils;
 import com.sitewhere.hbase.common.MarshalUtils;
 import com.sitewhere.hbase.common.Pager;
+import com.sitewhere.hbase.common.PagingMode;
+import com.sitewhere.hbase.common.ScanProfiles;
 import com.sitewhere.hbase.uid.IdManager;
 import com.sitewhere.rest.model.common.MetadataProvider;
 import com.sitewhere.rest.model.device.Device;
@@ -139,14 +142,38 @@ public class HBaseDevice {
 	 */
 	public static SearchResults<IDevice> listDevices(ISiteWhereHBaseClient hbase, boolean includeDeleted,
 			ISearchCriteria criteria) throws SiteWhereException {
-		Pager<byte[]> matches = getFilteredDevices(hbase, includeDeleted, false, criteria);
+		Pager<Result> matches =
+				getFilteredDevices(hbase, includeDeleted, false, new Pager<Result>(criteria), null);
 		List<IDevice> response = new ArrayList<IDevice>();
-		for (byte[] json : matches.getResults()) {
-			response.add(MarshalUtils.unmarshalJson(json, Device.class));
+		for (Result match : matches.getResults()) {
+			response.add(MarshalUtils.unmarshal(HBaseUtils.getJsonContent(match), Device.class));
 		}
 		return new SearchResults<IDevice>(response, matches.getTotal());
 	}
 
+	/**
+	 * List devices a page at a time, resuming after the last device of the previous page.
+	 * 
+	 * @param hbase
+	 * @param includeDeleted
+	 * @param resumeToken
+	 *            token from the previous page or null for the first page
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static CursorSearchResults<IDevice> listDevices(ISiteWhereHBaseClient hbase,
+			boolean includeDeleted, String resumeToken, ISearchCriteria criteria) throws SiteWhereException {
+		Pager<Result> pager = new Pager<Result>(criteria, PagingMode.Cursor);
+		Pager<Result> matches = getFilteredDevices(hbase, includeDeleted, false, pager,
+				HBaseUtils.getResumeRow(null, resumeToken));
+		List<IDevice> response = new ArrayList<IDevice>();
+		for (Result match : matches.getResults()) {
+			response.add(MarshalUtils.unmarshal(HBaseUtils.getJsonContent(match), Device.class));
+		}
+		return new CursorSearchResults<IDevice>(response, HBaseUtils.getResumeToken(matches));
+	}
+
 	/**
 	 * List devices that do not have a current assignment.
 	 * 
@@ -157,10 +184,10 @@ public class HBaseDevice {
 	 */
 	public static SearchResults<IDevice> listUnassignedDevices(ISiteWhereHBaseClient hbase,
 			ISearchCriteria criteria) throws SiteWhereException {
-		Pager<byte[]> matches = getFilteredDevices(hbase, false, true, criteria);
+		Pager<Result> matches = getFilteredDevices(hbase, false, true, new Pager<Result>(criteria), null);
 		List<IDevice> response = new ArrayList<IDevice>();
-		for (byte[] json : matches.getResults()) {
-			response.add(MarshalUtils.unmarshalJson(json, Device.class));
+		for (Result match : matches.getResults()) {
+			response.add(MarshalUtils.unmarshal(HBaseUtils.getJsonContent(match), Device.class));
 		}
 		return new SearchResults<IDevice>(response, matches.getTotal());
 	}
@@ -171,23 +198,28 @@ public class HBaseDevice {
 	 * @param hbase
 	 * @param includeDeleted
 	 * @param excludeAssigned
-	 * @param criteria
+	 * @param pager
+	 * @param startRow
+	 *            first row to scan or null for the start of the table
 	 * @return
 	 * @throws SiteWhereException
 	 */
-	protected static Pager<byte[]> getFilteredDevices(ISiteWhereHBaseClient hbase, boolean includeDeleted,
-			boolean excludeAssigned, ISearchCriteria criteria) throws SiteWhereException {
+	protected static Pager<Result> getFilteredDevices(ISiteWhereHBaseClient hbase, boolean includeDeleted,
+			boolean excludeAssigned, Pager<Result> pager, byte[] startRow) throws SiteWhereException {
 		HTableInterface devices = null;
 		ResultScanner scanner = null;
 		try {
 			devices = hbase.getTableInterface(ISiteWhereHBase.DEVICES_TABLE_NAME);
 			Scan scan = new Scan();
+			if (startRow != null) {
+				scan.setStartRow(startRow);
+			}
+			ScanProfiles.get(ScanProfiles.ENTITY_LIST).apply(scan, pager.getExpectedRecords());
 			scanner = devices.getScanner(scan);
 
-			Pager<byte[]> pager = new Pager<byte[]>(criteria);
 			for (Result result : scanner) {
 				boolean shouldAdd = true;
-				byte[] json = null;
+				boolean hasJson = false;
 				for (KeyValue column : result.raw()) {
 					byte[] qualifier = column.getQualifier();
 					if ((Bytes.equals(CURRENT_ASSIGNMENT, qualifier)) && (excludeAssigned)) {
@@ -197,11 +229,14 @@ public class HBaseDevice {
 						shouldAdd = false;
 					}
 					if (Bytes.equals(ISiteWhereHBase.JSON_CONTENT, qualifier)) {
-						json = column.getValue();
+						hasJson = true;
 					}
 				}
-				if ((shouldAdd) && (json != null)) {
-					pager.process(json);
+				if ((shouldAdd) && (hasJson)) {
+					pager.process(result);
+				}
+				if (pager.isDone()) {
+					break;
 				}
 			}
 			return pager;
@@ -229,7 +264,7 @@ public class HBaseDevice {
 			throw new SiteWhereSystemException(ErrorCode.InvalidHardwareId, ErrorLevel.ERROR);
 		}
 		byte[] primary = getPrimaryRowkey(value);
-		byte[] json = MarshalUtils.marshalJson(device);
+		byte[] json = MarshalUtils.marshal(device);
 
 		HTableInterface devices = null;
 		try {
@@ -273,7 +308,7 @@ public class HBaseDevice {
 			if (result.size() != 1) {
 				throw new SiteWhereException("Expected one JSON entry for device and found: " + result.size());
 			}
-			return MarshalUtils.unmarshalJson(result.value(), Device.class);
+			return MarshalUtils.unmarshal(result.value(), Device.class);
 		} catch (IOException e) {
 			throw new SiteWhereException("Unable to load device by hardware id.", e);
 		} finally {
@@ -317,7 +352,7 @@ public class HBaseDevice {
 		} else {
 			byte[] marker = { (byte) 0x01 };
 			SiteWherePersistence.setUpdatedEntityMetadata(existing);
-			byte[] updated = MarshalUtils.marshalJson(existing);
+			byte[] updated = MarshalUtils.marshal(existing);
 
 			HTableInterface devices = null;
 			try {
@@ -390,7 +425,7 @@ public class HBaseDevice {
 		// Load object to update assignment token.
 		Device updated = getDeviceByHardwareId(hbase, hardwareId);
 		updated.setAssignmentToken(assignmentToken);
-		byte[] json = MarshalUtils.marshalJson(updated);
+		byte[] json = MarshalUtils.marshal(updated);
 
 		Long deviceId = IdManager.getInstance().getDeviceKeys().getValue(hardwareId);
 		if (deviceId == null) {
@@ -431,7 +466,7 @@ public class HBaseDevice {
 
 		Device updated = getDeviceByHardwareId(hbase, hardwareId);
 		updated.setAssignmentToken(null);
-		byte[] json = MarshalUtils.marshalJson(updated);
+		byte[] json = MarshalUtils.marshal(updated);
 
 		HTableInterface devices = null;
 		try {
@@ -11,11 +11,15 @@ package com.sitewhere.hbase.device;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Increment;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -55,6 +59,15 @@ public class HBaseDeviceAssignment {
 	/** Qualifier for assignment state */
 	public static final byte[] ASSIGNMENT_STATE = Bytes.toBytes("state");
 
+	/** Prefix for qualifiers that hold the latest event by type */
+	public static final byte[] LATEST_EVENT_PREFIX = Bytes.toBytes("latest-");
+
+	/** Prefix for qualifiers that count events by type */
+	public static final byte[] EVENT_COUNT_PREFIX = Bytes.toBytes("count-");
+
+	/** Qualifier for geohash of the most recent location */
+	public static final byte[] ASSIGNMENT_GEOHASH = Bytes.toBytes("geohash");
+
 	/**
 	 * Create a new device assignment.
 	 * 
@@ -87,7 +100,7 @@ public class HBaseDeviceAssignment {
 		// Create device assignment for JSON.
 		DeviceAssignment newAssignment =
 				SiteWherePersistence.deviceAssignmentCreateLogic(request, request.getSiteToken(), uuid);
-		byte[] json = MarshalUtils.marshalJson(newAssignment);
+		byte[] json = MarshalUtils.marshal(newAssignment);
 
 		HTableInterface sites = null;
 		try {
@@ -129,12 +142,12 @@ public class HBaseDeviceAssignment {
 			sites = hbase.getTableInterface(ISiteWhereHBase.SITES_TABLE_NAME);
 			Get get = new Get(rowkey);
 			get.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.JSON_CONTENT);
+			get.addColumn(ISiteWhereHBase.FAMILY_ID, ASSIGNMENT_STATE);
 			Result result = sites.get(get);
-			if (result.size() != 1) {
-				throw new SiteWhereException("Expected one JSON entry for device assignment and found: "
-						+ result.size());
+			if (HBaseUtils.getJsonContent(result) == null) {
+				throw new SiteWhereException("Expected one JSON entry for device assignment and found none.");
 			}
-			return MarshalUtils.unmarshalJson(result.value(), DeviceAssignment.class);
+			return getDeviceAssignment(result);
 		} catch (IOException e) {
 			throw new SiteWhereException("Unable to load device assignment by token.", e);
 		} finally {
@@ -142,6 +155,25 @@ public class HBaseDeviceAssignment {
 		}
 	}
 
+	/**
+	 * Get a device assignment from its row in the sites table. State stored in its own
+	 * column takes precedence over state stored with the JSON content since it may be
+	 * written independently.
+	 * 
+	 * @param result
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static DeviceAssignment getDeviceAssignment(Result result) throws SiteWhereException {
+		DeviceAssignment assignment =
+				MarshalUtils.unmarshal(HBaseUtils.getJsonContent(result), DeviceAssignment.class);
+		byte[] state = result.getValue(ISiteWhereHBase.FAMILY_ID, ASSIGNMENT_STATE);
+		if (state != null) {
+			assignment.setState(MarshalUtils.unmarshal(state, DeviceAssignmentState.class));
+		}
+		return assignment;
+	}
+
 	/**
 	 * Update metadata associated with a device assignment.
 	 * 
@@ -159,7 +191,7 @@ public class HBaseDeviceAssignment {
 		SiteWherePersistence.setUpdatedEntityMetadata(updated);
 
 		byte[] rowkey = IdManager.getInstance().getAssignmentKeys().getValue(token);
-		byte[] json = MarshalUtils.marshalJson(updated);
+		byte[] json = MarshalUtils.marshal(updated);
 
 		HTableInterface sites = null;
 		try {
@@ -191,8 +223,8 @@ public class HBaseDeviceAssignment {
 		updated.setState(state);
 
 		byte[] rowkey = IdManager.getInstance().getAssignmentKeys().getValue(token);
-		byte[] json = MarshalUtils.marshalJson(updated);
-		byte[] stateJson = MarshalUtils.marshalJson(state);
+		byte[] json = MarshalUtils.marshal(updated);
+		byte[] stateJson = MarshalUtils.marshal(state);
 
 		HTableInterface sites = null;
 		try {
@@ -209,6 +241,107 @@ public class HBaseDeviceAssignment {
 		return updated;
 	}
 
+	/**
+	 * Store the latest state for a group of device assignments. Only the state column is
+	 * written, so the assignment JSON does not have to be read and rewritten.
+	 * 
+	 * @param hbase
+	 * @param states
+	 *            marshaled state by assignment token
+	 * @throws SiteWhereException
+	 */
+	public static void storeDeviceAssignmentStates(ISiteWhereHBaseClient hbase, Map<String, byte[]> states)
+			throws SiteWhereException {
+		List<Put> puts = new ArrayList<Put>();
+		for (Map.Entry<String, byte[]> entry : states.entrySet()) {
+			byte[] rowkey = IdManager.getInstance().getAssignmentKeys().getValue(entry.getKey());
+			if (rowkey == null) {
+				continue;
+			}
+			Put put = new Put(rowkey);
+			put.add(ISiteWhereHBase.FAMILY_ID, ASSIGNMENT_STATE, entry.getValue());
+			puts.add(put);
+		}
+		if (puts.isEmpty()) {
+			return;
+		}
+		HTableInterface sites = null;
+		try {
+			sites = hbase.getTableInterface(ISiteWhereHBase.SITES_TABLE_NAME);
+			sites.put(puts);
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to store device assignment states.", e);
+		} finally {
+			HBaseUtils.closeCleanly(sites);
+		}
+	}
+
+	/**
+	 * Get the qualifier of the column that holds the latest event of a given type for an
+	 * assignment.
+	 * 
+	 * @param eventType
+	 * @return
+	 */
+	public static byte[] getLatestEventQualifier(DeviceAssignmentRecordType eventType) {
+		return Bytes.add(LATEST_EVENT_PREFIX, new byte[] { eventType.getType() });
+	}
+
+	/**
+	 * Get the qualifier of the column that counts events of a given type for an
+	 * assignment.
+	 * 
+	 * @param eventType
+	 * @return
+	 */
+	public static byte[] getEventCountQualifier(DeviceAssignmentRecordType eventType) {
+		return Bytes.add(EVENT_COUNT_PREFIX, new byte[] { eventType.getType() });
+	}
+
+	/**
+	 * Create an increment that adds one to the event count for an assignment.
+	 * 
+	 * @param assnKey
+	 * @param eventType
+	 * @return
+	 */
+	public static Increment createEventCountIncrement(byte[] assnKey, DeviceAssignmentRecordType eventType) {
+		Increment increment = new Increment(assnKey);
+		increment.addColumn(ISiteWhereHBase.FAMILY_ID, getEventCountQualifier(eventType), 1);
+		return increment;
+	}
+
+	/**
+	 * Get the number of events of a given type stored for an assignment. Counts are only
+	 * maintained for events written while counting is enabled.
+	 * 
+	 * @param hbase
+	 * @param token
+	 * @param eventType
+	 * @return count or null if no count has been stored
+	 * @throws SiteWhereException
+	 */
+	public static Long getEventCount(ISiteWhereHBaseClient hbase, String token,
+			DeviceAssignmentRecordType eventType) throws SiteWhereException {
+		byte[] rowkey = IdManager.getInstance().getAssignmentKeys().getValue(token);
+		if (rowkey == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+		}
+		byte[] qualifier = getEventCountQualifier(eventType);
+		HTableInterface sites = null;
+		try {
+			sites = hbase.getTableInterface(ISiteWhereHBase.SITES_TABLE_NAME);
+			Get get = new Get(rowkey);
+			get.addColumn(ISiteWhereHBase.FAMILY_ID, qualifier);
+			byte[] value = sites.get(get).getValue(ISiteWhereHBase.FAMILY_ID, qualifier);
+			return (value != null) ? Bytes.toLong(value) : null;
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to load event count for device assignment.", e);
+		} finally {
+			HBaseUtils.closeCleanly(sites);
+		}
+	}
+
 	/**
 	 * Update status for a given device assignment.
 	 * 
@@ -225,7 +358,7 @@ public class HBaseDeviceAssignment {
 		SiteWherePersistence.setUpdatedEntityMetadata(updated);
 
 		byte[] rowkey = IdManager.getInstance().getAssignmentKeys().getValue(token);
-		byte[] json = MarshalUtils.marshalJson(updated);
+		byte[] json = MarshalUtils.marshal(updated);
 
 		HTableInterface sites = null;
 		try {
@@ -262,7 +395,7 @@ public class HBaseDeviceAssignment {
 
 		// Update json and status qualifier.
 		byte[] rowkey = IdManager.getInstance().getAssignmentKeys().getValue(token);
-		byte[] json = MarshalUtils.marshalJson(updated);
+		byte[] json = MarshalUtils.marshal(updated);
 
 		HTableInterface sites = null;
 		try {
@@ -316,7 +449,7 @@ public class HBaseDeviceAssignment {
 		} else {
 			byte[] marker = { (byte) 0x01 };
 			SiteWherePersistence.setUpdatedEntityMetadata(existing);
-			byte[] updated = MarshalUtils.marshalJson(existing);
+			byte[] updated = MarshalUtils.marshal(existing);
 			HTableInterface sites = null;
 			try {
 				sites = hbase.getTableInterface(ISiteWhereHBase.SITES_TABLE_NAME);
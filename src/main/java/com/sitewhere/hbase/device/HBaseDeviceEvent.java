@@ -11,33 +11,60 @@ package com.sitewhere.hbase.device;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.bind.DatatypeConverter;
 
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Increment;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.QualifierFilter;
+import org.apache.hadoop.hbase.filter.RegexStringComparator;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.log4j.Logger;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sitewhere.core.SiteWherePersistence;
+import com.sitewhere.hbase.DataUtils;
 import com.sitewhere.hbase.ISiteWhereHBase;
 import com.sitewhere.hbase.ISiteWhereHBaseClient;
+import com.sitewhere.hbase.common.CursorSearchResults;
+import com.sitewhere.hbase.common.EstimatedSearchResults;
 import com.sitewhere.hbase.common.HBaseUtils;
 import com.sitewhere.hbase.common.MarshalUtils;
+import com.sitewhere.hbase.common.MergedResultScanner;
 import com.sitewhere.hbase.common.Pager;
+import com.sitewhere.hbase.common.PagingMode;
+import com.sitewhere.hbase.common.ScanExecutor;
+import com.sitewhere.hbase.common.ScanProfiles;
 import com.sitewhere.hbase.uid.IdManager;
 import com.sitewhere.rest.model.device.DeviceAlert;
 import com.sitewhere.rest.model.device.DeviceEvent;
+import com.sitewhere.rest.model.device.DeviceEventBatchResponse;
 import com.sitewhere.rest.model.device.DeviceLocation;
 import com.sitewhere.rest.model.device.DeviceMeasurements;
 import com.sitewhere.rest.model.search.SearchResults;
@@ -46,6 +73,8 @@ import com.sitewhere.spi.SiteWhereSystemException;
 import com.sitewhere.spi.device.IDeviceAlert;
 import com.sitewhere.spi.device.IDeviceAssignment;
 import com.sitewhere.spi.device.IDeviceEvent;
+import com.sitewhere.spi.device.IDeviceEventBatch;
+import com.sitewhere.spi.device.IDeviceEventBatchResponse;
 import com.sitewhere.spi.device.IDeviceLocation;
 import com.sitewhere.spi.device.IDeviceMeasurements;
 import com.sitewhere.spi.device.request.IDeviceAlertCreateRequest;
@@ -69,6 +98,24 @@ public class HBaseDeviceEvent {
 	/** Time interval in seconds to use for buckets */
 	private static final int BUCKET_INTERVAL = 60 * 60;
 
+	/** Counter used to distinguish events stored by this node in the same millisecond */
+	private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+	/** Column family for measurements when each event type has its own family */
+	public static final byte[] FAMILY_MEASUREMENTS = Bytes.toBytes("m");
+
+	/** Column family for locations when each event type has its own family */
+	public static final byte[] FAMILY_LOCATIONS = Bytes.toBytes("l");
+
+	/** Column family for alerts when each event type has its own family */
+	public static final byte[] FAMILY_ALERTS = Bytes.toBytes("a");
+
+	/** Regex matching the qualifier bytes before the event type */
+	private static final String REGEX_EVENT_TYPE_PREFIX = "(?s)^.{3}";
+
+	/** Charset used to match qualifier bytes against a regex */
+	private static final Charset QUALIFIER_CHARSET = Charset.forName("ISO-8859-1");
+
 	/**
 	 * Create a new device measurements entry for an assignment.
 	 * 
@@ -80,34 +127,57 @@ public class HBaseDeviceEvent {
 	 */
 	public static IDeviceMeasurements createDeviceMeasurements(ISiteWhereHBaseClient hbase,
 			IDeviceAssignment assignment, IDeviceMeasurementsCreateRequest request) throws SiteWhereException {
+		DeviceEventWrite<IDeviceMeasurements> write = prepareDeviceMeasurements(assignment, request);
+		storeEventWrite(hbase, write, "Unable to create measurements.");
+		return write.getEvent();
+	}
+
+	/**
+	 * Create a device measurements entry and the mutations needed to store it without
+	 * writing anything to HBase.
+	 * 
+	 * @param assignment
+	 * @param request
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static DeviceEventWrite<IDeviceMeasurements> prepareDeviceMeasurements(
+			IDeviceAssignment assignment, IDeviceMeasurementsCreateRequest request) throws SiteWhereException {
+		return prepareDeviceMeasurements(assignment, getAssignmentKey(assignment), request);
+	}
+
+	/**
+	 * Create a device measurements entry for an assignment whose row key has already been
+	 * looked up.
+	 * 
+	 * @param assignment
+	 * @param assnKey
+	 * @param request
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected static DeviceEventWrite<IDeviceMeasurements> prepareDeviceMeasurements(
+			IDeviceAssignment assignment, byte[] assnKey, IDeviceMeasurementsCreateRequest request)
+			throws SiteWhereException {
 		long time = getEventTime(request);
-		byte[] assnKey = IdManager.getInstance().getAssignmentKeys().getValue(assignment.getToken());
-		if (assnKey == null) {
-			throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
-		}
 		byte[] rowkey = getRowKey(assnKey, time);
 		byte[] qualifier = getQualifier(DeviceAssignmentRecordType.Measurement, time);
 
-		// Create measurements object and marshal to JSON.
+		// Create measurements object and encode for storage.
 		DeviceMeasurements measurements =
 				SiteWherePersistence.deviceMeasurementsCreateLogic(request, assignment);
 		String id = getEncodedEventId(rowkey, qualifier);
 		measurements.setId(id);
-		byte[] json = MarshalUtils.marshalJson(measurements);
-
-		HTableInterface events = null;
-		try {
-			events = hbase.getTableInterface(ISiteWhereHBase.EVENTS_TABLE_NAME);
-			Put put = new Put(rowkey);
-			put.add(ISiteWhereHBase.FAMILY_ID, qualifier, json);
-			events.put(put);
-		} catch (IOException e) {
-			throw new SiteWhereException("Unable to create measurements.", e);
-		} finally {
-			HBaseUtils.closeCleanly(events);
-		}
+		byte[] value = DeviceEventCodec.encode(measurements, assignment, rowkey, qualifier);
 
-		return measurements;
+		DeviceEventWrite<IDeviceMeasurements> write = new DeviceEventWrite<IDeviceMeasurements>(measurements);
+		Put put = new Put(rowkey);
+		put.add(getEventFamily(DeviceAssignmentRecordType.Measurement), qualifier, getCellTimestamp(time),
+				value);
+		write.addPut(ISiteWhereHBase.EVENTS_TABLE_NAME, put);
+		addEventCount(write, assnKey, DeviceAssignmentRecordType.Measurement);
+		addLatestEvent(write, assnKey, DeviceAssignmentRecordType.Measurement, time, measurements);
+		return write;
 	}
 
 	/**
@@ -121,383 +191,1796 @@ public class HBaseDeviceEvent {
 	 */
 	public static SearchResults<IDeviceMeasurements> listDeviceMeasurements(ISiteWhereHBaseClient hbase,
 			String assnToken, IDateRangeSearchCriteria criteria) throws SiteWhereException {
-		Pager<byte[]> matches =
-				getEventRowsForAssignment(hbase, assnToken, DeviceAssignmentRecordType.Measurement, criteria);
-		return convertMatches(matches, DeviceMeasurements.class);
+		return listDeviceMeasurements(hbase, assnToken, criteria, EventOrder.NewestFirst);
+	}
+
+	/**
+	 * List measurements associated with an assignment based on the given criteria in the
+	 * given order.
+	 * 
+	 * @param hbase
+	 * @param assnToken
+	 * @param criteria
+	 * @param order
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static SearchResults<IDeviceMeasurements> listDeviceMeasurements(ISiteWhereHBaseClient hbase,
+			String assnToken, IDateRangeSearchCriteria criteria, EventOrder order)
+			throws SiteWhereException {
+		Pager<EventCell> matches = getEventRowsForAssignment(hbase, assnToken,
+				DeviceAssignmentRecordType.Measurement, criteria, order);
+		return convertAssignmentMatches(hbase, assnToken, DeviceAssignmentRecordType.Measurement, criteria,
+				matches, DeviceMeasurements.class);
+	}
+
+	/**
+	 * List measurements associated with an assignment a page at a time, resuming after the
+	 * last event of the previous page.
+	 * 
+	 * @param hbase
+	 * @param assnToken
+	 * @param resumeToken
+	 *            token from the previous page or null for the first page
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static CursorSearchResults<IDeviceMeasurements> listDeviceMeasurements(ISiteWhereHBaseClient hbase,
+			String assnToken, String resumeToken, IDateRangeSearchCriteria criteria)
+			throws SiteWhereException {
+		Pager<EventCell> pager = new Pager<EventCell>(criteria, PagingMode.Cursor);
+		Pager<EventCell> matches = getEventRowsForAssignment(hbase, assnToken,
+				DeviceAssignmentRecordType.Measurement, criteria, pager, resumeToken);
+		return convertCursorMatches(matches, DeviceMeasurements.class);
 	}
 
 	/**
 	 * List device measurements associated with a site.
 	 * 
 	 * @param hbase
+	 * @param executor
+	 *            executor used to scan in parallel or null to scan serially
+	 * @param siteToken
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static SearchResults<IDeviceMeasurements> listDeviceMeasurementsForSite(
+			ISiteWhereHBaseClient hbase, ScanExecutor executor, String siteToken,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		Pager<EventCell> matches = getEventRowsForSite(hbase, executor, siteToken,
+				DeviceAssignmentRecordType.Measurement, criteria);
+		return convertSiteMatches(hbase, siteToken, DeviceAssignmentRecordType.Measurement, criteria, matches,
+				DeviceMeasurements.class);
+	}
+
+	/**
+	 * Create a new device location entry for an assignment.
+	 * 
+	 * @param hbase
+	 * @param assignment
+	 * @param request
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static IDeviceLocation createDeviceLocation(ISiteWhereHBaseClient hbase,
+			IDeviceAssignment assignment, IDeviceLocationCreateRequest request) throws SiteWhereException {
+		DeviceEventWrite<IDeviceLocation> write = prepareDeviceLocation(assignment, request);
+		storeEventWrite(hbase, write, "Unable to create location.");
+		return write.getEvent();
+	}
+
+	/**
+	 * Create a device location entry and the mutations needed to store it without writing
+	 * anything to HBase.
+	 * 
+	 * @param assignment
+	 * @param request
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static DeviceEventWrite<IDeviceLocation> prepareDeviceLocation(IDeviceAssignment assignment,
+			IDeviceLocationCreateRequest request) throws SiteWhereException {
+		return prepareDeviceLocation(assignment, getAssignmentKey(assignment), request);
+	}
+
+	/**
+	 * Create a device location entry for an assignment whose row key has already been
+	 * looked up.
+	 * 
+	 * @param assignment
+	 * @param assnKey
+	 * @param request
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected static DeviceEventWrite<IDeviceLocation> prepareDeviceLocation(IDeviceAssignment assignment,
+			byte[] assnKey, IDeviceLocationCreateRequest request) throws SiteWhereException {
+		long time = getEventTime(request);
+		byte[] rowkey = getRowKey(assnKey, time);
+		byte[] qualifier = getQualifier(DeviceAssignmentRecordType.Location, time);
+
+		DeviceLocation location = SiteWherePersistence.deviceLocationCreateLogic(assignment, request);
+		String id = getEncodedEventId(rowkey, qualifier);
+		location.setId(id);
+		byte[] value = DeviceEventCodec.encode(location, assignment, rowkey, qualifier);
+
+		DeviceEventWrite<IDeviceLocation> write = new DeviceEventWrite<IDeviceLocation>(location);
+		Put put = new Put(rowkey);
+		put.add(getEventFamily(DeviceAssignmentRecordType.Location), qualifier, getCellTimestamp(time),
+				value);
+		write.addPut(ISiteWhereHBase.EVENTS_TABLE_NAME, put);
+		addEventCount(write, assnKey, DeviceAssignmentRecordType.Location);
+		addLatestEvent(write, assnKey, DeviceAssignmentRecordType.Location, time, location);
+		HBaseLocationIndex.addLocation(write, assnKey, time, location.getLatitude(), location.getLongitude());
+		HBaseLocationHistoryIndex.addLocation(write, assnKey, time, location);
+		return write;
+	}
+
+	/**
+	 * List locations associated with an assignment based on the given criteria.
+	 * 
+	 * @param hbase
+	 * @param assnToken
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static SearchResults<IDeviceLocation> listDeviceLocations(ISiteWhereHBaseClient hbase,
+			String assnToken, IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return listDeviceLocations(hbase, assnToken, criteria, EventOrder.NewestFirst);
+	}
+
+	/**
+	 * List locations associated with an assignment based on the given criteria in the
+	 * given order.
+	 * 
+	 * @param hbase
+	 * @param assnToken
+	 * @param criteria
+	 * @param order
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static SearchResults<IDeviceLocation> listDeviceLocations(ISiteWhereHBaseClient hbase,
+			String assnToken, IDateRangeSearchCriteria criteria, EventOrder order)
+			throws SiteWhereException {
+		Pager<EventCell> matches = getEventRowsForAssignment(hbase, assnToken,
+				DeviceAssignmentRecordType.Location, criteria, order);
+		return convertAssignmentMatches(hbase, assnToken, DeviceAssignmentRecordType.Location, criteria,
+				matches, DeviceLocation.class);
+	}
+
+	/**
+	 * List locations associated with an assignment a page at a time, resuming after the
+	 * last event of the previous page.
+	 * 
+	 * @param hbase
+	 * @param assnToken
+	 * @param resumeToken
+	 *            token from the previous page or null for the first page
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static CursorSearchResults<IDeviceLocation> listDeviceLocations(ISiteWhereHBaseClient hbase,
+			String assnToken, String resumeToken, IDateRangeSearchCriteria criteria)
+			throws SiteWhereException {
+		Pager<EventCell> pager = new Pager<EventCell>(criteria, PagingMode.Cursor);
+		Pager<EventCell> matches = getEventRowsForAssignment(hbase, assnToken,
+				DeviceAssignmentRecordType.Location, criteria, pager, resumeToken);
+		return convertCursorMatches(matches, DeviceLocation.class);
+	}
+
+	/**
+	 * List device locations associated with a site.
+	 * 
+	 * @param hbase
+	 * @param executor
+	 *            executor used to scan in parallel or null to scan serially
+	 * @param siteToken
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static SearchResults<IDeviceLocation> listDeviceLocationsForSite(ISiteWhereHBaseClient hbase,
+			ScanExecutor executor, String siteToken, IDateRangeSearchCriteria criteria)
+			throws SiteWhereException {
+		Pager<EventCell> matches = getEventRowsForSite(hbase, executor, siteToken,
+				DeviceAssignmentRecordType.Location, criteria);
+		return convertSiteMatches(hbase, siteToken, DeviceAssignmentRecordType.Location, criteria, matches,
+				DeviceLocation.class);
+	}
+
+	/**
+	 * List device locations for a group of assignments, merged with the most recent first.
+	 * Duplicate tokens are ignored. The total is a lower bound if more locations exist
+	 * than fit on the page.
+	 * 
+	 * @param hbase
+	 * @param executor
+	 *            executor used to scan in parallel or null to scan serially
+	 * @param assnTokens
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static SearchResults<IDeviceLocation> listDeviceLocations(ISiteWhereHBaseClient hbase,
+			ScanExecutor executor, List<String> assnTokens, IDateRangeSearchCriteria criteria)
+			throws SiteWhereException {
+		List<byte[]> assnKeys = new ArrayList<byte[]>();
+		for (String assnToken : new LinkedHashSet<String>(assnTokens)) {
+			byte[] assnKey = IdManager.getInstance().getAssignmentKeys().getValue(assnToken);
+			if (assnKey == null) {
+				throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+			}
+			assnKeys.add(assnKey);
+		}
+		Pager<EventCell> matches = getEventRowsForAssignments(hbase, executor, assnKeys,
+				DeviceAssignmentRecordType.Location, criteria);
+		SearchResults<IDeviceLocation> converted = convertMatches(matches, DeviceLocation.class);
+		if (!matches.isTruncated()) {
+			return converted;
+		}
+		return new EstimatedSearchResults<IDeviceLocation>(converted.getResults(), matches.getTotal(), true);
+	}
+
+	/**
+	 * Create a new device alert entry for an assignment.
+	 * 
+	 * @param hbase
+	 * @param assignment
+	 * @param request
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static IDeviceAlert createDeviceAlert(ISiteWhereHBaseClient hbase, IDeviceAssignment assignment,
+			IDeviceAlertCreateRequest request) throws SiteWhereException {
+		DeviceEventWrite<IDeviceAlert> write = prepareDeviceAlert(assignment, request);
+		storeEventWrite(hbase, write, "Unable to create alert.");
+		return write.getEvent();
+	}
+
+	/**
+	 * Create a device alert entry and the mutations needed to store it without writing
+	 * anything to HBase.
+	 * 
+	 * @param assignment
+	 * @param request
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static DeviceEventWrite<IDeviceAlert> prepareDeviceAlert(IDeviceAssignment assignment,
+			IDeviceAlertCreateRequest request) throws SiteWhereException {
+		return prepareDeviceAlert(assignment, getAssignmentKey(assignment), request);
+	}
+
+	/**
+	 * Create a device alert entry for an assignment whose row key has already been looked
+	 * up.
+	 * 
+	 * @param assignment
+	 * @param assnKey
+	 * @param request
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected static DeviceEventWrite<IDeviceAlert> prepareDeviceAlert(IDeviceAssignment assignment,
+			byte[] assnKey, IDeviceAlertCreateRequest request) throws SiteWhereException {
+		long time = getEventTime(request);
+		byte[] rowkey = getRowKey(assnKey, time);
+		byte[] qualifier = getQualifier(DeviceAssignmentRecordType.Alert, time);
+
+		// Create alert and encode for storage.
+		DeviceAlert alert = SiteWherePersistence.deviceAlertCreateLogic(assignment, request);
+		String id = getEncodedEventId(rowkey, qualifier);
+		alert.setId(id);
+		byte[] value = DeviceEventCodec.encode(alert, assignment, rowkey, qualifier);
+
+		DeviceEventWrite<IDeviceAlert> write = new DeviceEventWrite<IDeviceAlert>(alert);
+		Put put = new Put(rowkey);
+		put.add(getEventFamily(DeviceAssignmentRecordType.Alert), qualifier, getCellTimestamp(time),
+				value);
+		write.addPut(ISiteWhereHBase.EVENTS_TABLE_NAME, put);
+		addEventCount(write, assnKey, DeviceAssignmentRecordType.Alert);
+		addLatestEvent(write, assnKey, DeviceAssignmentRecordType.Alert, time, alert);
+		return write;
+	}
+
+	/**
+	 * List alerts associated with an assignment based on the given criteria.
+	 * 
+	 * @param hbase
+	 * @param assnToken
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static SearchResults<IDeviceAlert> listDeviceAlerts(ISiteWhereHBaseClient hbase, String assnToken,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return listDeviceAlerts(hbase, assnToken, criteria, EventOrder.NewestFirst);
+	}
+
+	/**
+	 * List alerts associated with an assignment based on the given criteria in the
+	 * given order.
+	 * 
+	 * @param hbase
+	 * @param assnToken
+	 * @param criteria
+	 * @param order
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static SearchResults<IDeviceAlert> listDeviceAlerts(ISiteWhereHBaseClient hbase,
+			String assnToken, IDateRangeSearchCriteria criteria, EventOrder order)
+			throws SiteWhereException {
+		Pager<EventCell> matches = getEventRowsForAssignment(hbase, assnToken,
+				DeviceAssignmentRecordType.Alert, criteria, order);
+		return convertAssignmentMatches(hbase, assnToken, DeviceAssignmentRecordType.Alert, criteria,
+				matches, DeviceAlert.class);
+	}
+
+	/**
+	 * List alerts associated with an assignment a page at a time, resuming after the
+	 * last event of the previous page.
+	 * 
+	 * @param hbase
+	 * @param assnToken
+	 * @param resumeToken
+	 *            token from the previous page or null for the first page
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static CursorSearchResults<IDeviceAlert> listDeviceAlerts(ISiteWhereHBaseClient hbase,
+			String assnToken, String resumeToken, IDateRangeSearchCriteria criteria)
+			throws SiteWhereException {
+		Pager<EventCell> pager = new Pager<EventCell>(criteria, PagingMode.Cursor);
+		Pager<EventCell> matches = getEventRowsForAssignment(hbase, assnToken,
+				DeviceAssignmentRecordType.Alert, criteria, pager, resumeToken);
+		return convertCursorMatches(matches, DeviceAlert.class);
+	}
+
+	/**
+	 * List device alerts associated with a site.
+	 * 
+	 * @param hbase
+	 * @param executor
+	 *            executor used to scan in parallel or null to scan serially
 	 * @param siteToken
 	 * @param criteria
 	 * @return
 	 * @throws SiteWhereException
 	 */
-	public static SearchResults<IDeviceMeasurements> listDeviceMeasurementsForSite(
-			ISiteWhereHBaseClient hbase, String siteToken, IDateRangeSearchCriteria criteria)
-			throws SiteWhereException {
-		Pager<byte[]> matches =
-				getEventRowsForSite(hbase, siteToken, DeviceAssignmentRecordType.Measurement, criteria);
-		return convertMatches(matches, DeviceMeasurements.class);
+	public static SearchResults<IDeviceAlert> listDeviceAlertsForSite(ISiteWhereHBaseClient hbase,
+			ScanExecutor executor, String siteToken, IDateRangeSearchCriteria criteria)
+			throws SiteWhereException {
+		Pager<EventCell> matches = getEventRowsForSite(hbase, executor, siteToken,
+				DeviceAssignmentRecordType.Alert, criteria);
+		return convertSiteMatches(hbase, siteToken, DeviceAssignmentRecordType.Alert, criteria, matches,
+				DeviceAlert.class);
+	}
+
+	/**
+	 * Create all events in a batch for an assignment using a single write. Events that
+	 * fall into the same bucket row are merged into a single {@link Put}.
+	 * 
+	 * @param hbase
+	 * @param assignment
+	 * @param batch
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static IDeviceEventBatchResponse createDeviceEventBatch(ISiteWhereHBaseClient hbase,
+			IDeviceAssignment assignment, IDeviceEventBatch batch) throws SiteWhereException {
+		byte[] assnKey = getAssignmentKey(assignment);
+		List<DeviceEventWrite<?>> writes = new ArrayList<DeviceEventWrite<?>>();
+		DeviceEventBatchResponse response = new DeviceEventBatchResponse();
+		for (IDeviceMeasurementsCreateRequest measurements : batch.getMeasurements()) {
+			DeviceEventWrite<IDeviceMeasurements> write =
+					prepareDeviceMeasurements(assignment, assnKey, measurements);
+			response.getCreatedMeasurements().add(write.getEvent());
+			writes.add(write);
+		}
+		for (IDeviceLocationCreateRequest location : batch.getLocations()) {
+			DeviceEventWrite<IDeviceLocation> write = prepareDeviceLocation(assignment, assnKey, location);
+			response.getCreatedLocations().add(write.getEvent());
+			writes.add(write);
+		}
+		for (IDeviceAlertCreateRequest alert : batch.getAlerts()) {
+			DeviceEventWrite<IDeviceAlert> write = prepareDeviceAlert(assignment, assnKey, alert);
+			response.getCreatedAlerts().add(write.getEvent());
+			writes.add(write);
+		}
+		if (writes.size() > 0) {
+			try {
+				storeEventWrites(hbase, writes);
+			} catch (IOException e) {
+				throw new SiteWhereException("Unable to create device event batch.", e);
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Get the row key for an assignment, throwing an exception if it can not be found.
+	 * 
+	 * @param assignment
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected static byte[] getAssignmentKey(IDeviceAssignment assignment) throws SiteWhereException {
+		byte[] assnKey = IdManager.getInstance().getAssignmentKeys().getValue(assignment.getToken());
+		if (assnKey == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+		}
+		return assnKey;
+	}
+
+	/**
+	 * Execute the mutations for a single prepared event.
+	 * 
+	 * @param hbase
+	 * @param write
+	 * @param errorMessage
+	 * @throws SiteWhereException
+	 */
+	protected static void storeEventWrite(ISiteWhereHBaseClient hbase, DeviceEventWrite<?> write,
+			String errorMessage) throws SiteWhereException {
+		List<DeviceEventWrite<?>> writes = new ArrayList<DeviceEventWrite<?>>();
+		writes.add(write);
+		try {
+			storeEventWrites(hbase, writes);
+		} catch (IOException e) {
+			throw new SiteWhereException(errorMessage, e);
+		}
+	}
+
+	/**
+	 * Execute the mutations for a group of prepared events. Puts are grouped by table so
+	 * that each table receives a single batched call and puts for the same row are merged.
+	 * 
+	 * @param hbase
+	 * @param writes
+	 * @throws IOException
+	 * @throws SiteWhereException
+	 */
+	public static void storeEventWrites(ISiteWhereHBaseClient hbase, List<DeviceEventWrite<?>> writes)
+			throws IOException, SiteWhereException {
+		Map<String, List<Put>> byTable = new LinkedHashMap<String, List<Put>>();
+		for (DeviceEventWrite<?> write : writes) {
+			for (String tableName : write.getPuts().keySet()) {
+				List<Put> puts = byTable.get(tableName);
+				if (puts == null) {
+					puts = new ArrayList<Put>();
+					byTable.put(tableName, puts);
+				}
+				puts.addAll(write.getPuts().get(tableName));
+			}
+		}
+		for (String tableName : byTable.keySet()) {
+			HTableInterface table = null;
+			try {
+				table = hbase.getTableInterface(Bytes.toBytes(tableName));
+				table.put(mergePuts(byTable.get(tableName)));
+			} finally {
+				HBaseUtils.closeCleanly(table);
+			}
+		}
+		storeEventCounts(hbase, writes);
+	}
+
+	/**
+	 * Execute the counter increments for a group of prepared events. Increments for the
+	 * same row are merged so each counter is updated once per group. Events have already
+	 * been stored at this point, so a failure is logged rather than reported as a failed
+	 * write (which could cause the events to be written again).
+	 * 
+	 * @param hbase
+	 * @param writes
+	 * @throws SiteWhereException
+	 */
+	protected static void storeEventCounts(ISiteWhereHBaseClient hbase, List<DeviceEventWrite<?>> writes)
+			throws SiteWhereException {
+		Map<String, List<Increment>> byTable = new LinkedHashMap<String, List<Increment>>();
+		for (DeviceEventWrite<?> write : writes) {
+			for (String tableName : write.getIncrements().keySet()) {
+				List<Increment> increments = byTable.get(tableName);
+				if (increments == null) {
+					increments = new ArrayList<Increment>();
+					byTable.put(tableName, increments);
+				}
+				increments.addAll(write.getIncrements().get(tableName));
+			}
+		}
+		for (String tableName : byTable.keySet()) {
+			HTableInterface table = null;
+			try {
+				table = hbase.getTableInterface(Bytes.toBytes(tableName));
+				for (Increment increment : mergeIncrements(byTable.get(tableName))) {
+					table.increment(increment);
+				}
+			} catch (IOException e) {
+				LOGGER.error("Unable to update event counts in table " + tableName + ".", e);
+			} finally {
+				HBaseUtils.closeCleanly(table);
+			}
+		}
+	}
+
+	/**
+	 * Merge increments that target the same row, summing amounts for the same column.
+	 * 
+	 * @param increments
+	 * @return
+	 */
+	protected static List<Increment> mergeIncrements(List<Increment> increments) {
+		if (increments.size() < 2) {
+			return increments;
+		}
+		Map<byte[], Increment> byRow = new TreeMap<byte[], Increment>(Bytes.BYTES_COMPARATOR);
+		for (Increment increment : increments) {
+			Increment merged = byRow.get(increment.getRow());
+			if (merged == null) {
+				merged = new Increment(increment.getRow());
+				byRow.put(increment.getRow(), merged);
+			}
+			for (Map.Entry<byte[], NavigableMap<byte[], Long>> family : increment.getFamilyMap().entrySet()) {
+				for (Map.Entry<byte[], Long> column : family.getValue().entrySet()) {
+					long amount = column.getValue();
+					NavigableMap<byte[], Long> existing = merged.getFamilyMap().get(family.getKey());
+					if ((existing != null) && (existing.containsKey(column.getKey()))) {
+						amount += existing.get(column.getKey());
+					}
+					merged.addColumn(family.getKey(), column.getKey(), amount);
+				}
+			}
+		}
+		return new ArrayList<Increment>(byRow.values());
+	}
+
+	/**
+	 * Add a put that stores an event as the latest of its type on the assignment row if
+	 * latest events are enabled. The event time is used as the cell timestamp, so reads
+	 * return the most recent event even if older events are stored later.
+	 * 
+	 * @param write
+	 * @param assnKey
+	 * @param eventType
+	 * @param time
+	 * @param event
+	 * @throws SiteWhereException
+	 */
+	protected static void addLatestEvent(DeviceEventWrite<?> write, byte[] assnKey,
+			DeviceAssignmentRecordType eventType, long time, DeviceEvent event) throws SiteWhereException {
+		if (DeviceEventSettings.getInstance().isLatestEvents()) {
+			Put put = new Put(assnKey);
+			put.add(ISiteWhereHBase.FAMILY_ID, HBaseDeviceAssignment.getLatestEventQualifier(eventType), time,
+					MarshalUtils.marshal(event));
+			write.addPut(ISiteWhereHBase.SITES_TABLE_NAME, put);
+		}
+	}
+
+	/**
+	 * Get the latest measurements for each of a list of assignments.
+	 * 
+	 * @param hbase
+	 * @param assnTokens
+	 * @return latest measurements by assignment token. Assignments without measurements are
+	 *         not included
+	 * @throws SiteWhereException
+	 */
+	public static Map<String, IDeviceMeasurements> getLatestDeviceMeasurements(ISiteWhereHBaseClient hbase,
+			List<String> assnTokens) throws SiteWhereException {
+		return getLatestEvents(hbase, assnTokens, DeviceAssignmentRecordType.Measurement,
+				DeviceMeasurements.class);
+	}
+
+	/**
+	 * Get the latest location for each of a list of assignments.
+	 * 
+	 * @param hbase
+	 * @param assnTokens
+	 * @return latest location by assignment token. Assignments without locations are not
+	 *         included
+	 * @throws SiteWhereException
+	 */
+	public static Map<String, IDeviceLocation> getLatestDeviceLocations(ISiteWhereHBaseClient hbase,
+			List<String> assnTokens) throws SiteWhereException {
+		return getLatestEvents(hbase, assnTokens, DeviceAssignmentRecordType.Location, DeviceLocation.class);
+	}
+
+	/**
+	 * Get the latest alert for each of a list of assignments.
+	 * 
+	 * @param hbase
+	 * @param assnTokens
+	 * @return latest alert by assignment token. Assignments without alerts are not included
+	 * @throws SiteWhereException
+	 */
+	public static Map<String, IDeviceAlert> getLatestDeviceAlerts(ISiteWhereHBaseClient hbase,
+			List<String> assnTokens) throws SiteWhereException {
+		return getLatestEvents(hbase, assnTokens, DeviceAssignmentRecordType.Alert, DeviceAlert.class);
+	}
+
+	/**
+	 * Get the latest event of a type for each of a list of assignments with a single
+	 * batch of gets against the sites table. Unknown assignment tokens are ignored.
+	 * 
+	 * @param hbase
+	 * @param assnTokens
+	 * @param eventType
+	 * @param type
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	@SuppressWarnings("unchecked")
+	protected static <I extends IDeviceEvent, D extends DeviceEvent> Map<String, I> getLatestEvents(
+			ISiteWhereHBaseClient hbase, List<String> assnTokens, DeviceAssignmentRecordType eventType,
+			Class<D> type) throws SiteWhereException {
+		byte[] qualifier = HBaseDeviceAssignment.getLatestEventQualifier(eventType);
+		List<String> found = new ArrayList<String>();
+		List<Get> gets = new ArrayList<Get>();
+		for (String assnToken : assnTokens) {
+			byte[] assnKey = IdManager.getInstance().getAssignmentKeys().getValue(assnToken);
+			if (assnKey == null) {
+				continue;
+			}
+			Get get = new Get(assnKey);
+			get.addColumn(ISiteWhereHBase.FAMILY_ID, qualifier);
+			found.add(assnToken);
+			gets.add(get);
+		}
+		Map<String, I> latest = new LinkedHashMap<String, I>();
+		if (gets.isEmpty()) {
+			return latest;
+		}
+		HTableInterface sites = null;
+		try {
+			sites = hbase.getTableInterface(ISiteWhereHBase.SITES_TABLE_NAME);
+			Result[] results = sites.get(gets);
+			for (int i = 0; i < results.length; i++) {
+				byte[] value = results[i].getValue(ISiteWhereHBase.FAMILY_ID, qualifier);
+				if (value != null) {
+					latest.put(found.get(i), (I) MarshalUtils.unmarshal(value, type));
+				}
+			}
+			return latest;
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to load latest events for assignments.", e);
+		} finally {
+			HBaseUtils.closeCleanly(sites);
+		}
+	}
+
+	/**
+	 * Add an increment of the event count for an assignment if counting is enabled.
+	 * 
+	 * @param write
+	 * @param assnKey
+	 * @param eventType
+	 */
+	protected static void addEventCount(DeviceEventWrite<?> write, byte[] assnKey,
+			DeviceAssignmentRecordType eventType) {
+		if (DeviceEventSettings.getInstance().isEventCounts()) {
+			write.addIncrement(ISiteWhereHBase.SITES_TABLE_NAME,
+					HBaseDeviceAssignment.createEventCountIncrement(assnKey, eventType));
+		}
+	}
+
+	/**
+	 * Merge puts that target the same row into a single put with multiple cells.
+	 * 
+	 * @param puts
+	 * @return
+	 * @throws IOException
+	 */
+	protected static List<Put> mergePuts(List<Put> puts) throws IOException {
+		if (puts.size() < 2) {
+			return puts;
+		}
+		Map<byte[], Put> byRow = new TreeMap<byte[], Put>(Bytes.BYTES_COMPARATOR);
+		for (Put put : puts) {
+			Put merged = byRow.get(put.getRow());
+			if (merged == null) {
+				merged = new Put(put.getRow());
+				byRow.put(put.getRow(), merged);
+			}
+			for (List<KeyValue> kvs : put.getFamilyMap().values()) {
+				for (KeyValue kv : kvs) {
+					merged.add(kv);
+				}
+			}
+		}
+		return new ArrayList<Put>(byRow.values());
+	}
+
+	/**
+	 * Find all event rows associated with a device assignment and return cells that match
+	 * the search criteria in the given order.
+	 * 
+	 * @param hbase
+	 * @param assnToken
+	 * @param eventType
+	 * @param criteria
+	 * @param order
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected static Pager<EventCell> getEventRowsForAssignment(ISiteWhereHBaseClient hbase, String assnToken,
+			DeviceAssignmentRecordType eventType, IDateRangeSearchCriteria criteria, EventOrder order)
+			throws SiteWhereException {
+		Pager<EventCell> pager =
+				new Pager<EventCell>(criteria, DeviceEventSettings.getInstance().getPagingMode());
+		if (order == EventOrder.OldestFirst) {
+			return getEventRowsForAssignmentAscending(hbase, assnToken, eventType, criteria, pager);
+		}
+		return getEventRowsForAssignment(hbase, assnToken, eventType, criteria, pager, null);
+	}
+
+	/**
+	 * Find event rows associated with a device assignment and add cells that match the
+	 * search criteria to the given pager. If a resume token is given, the scan starts at
+	 * the row of the last event on the previous page and skips cells up to that event.
+	 * Scanning stops once the pager needs no more cells.
+	 * 
+	 * @param hbase
+	 * @param assnToken
+	 * @param eventType
+	 * @param criteria
+	 * @param pager
+	 * @param resumeToken
+	 *            id of the last event on the previous page or null
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected static Pager<EventCell> getEventRowsForAssignment(ISiteWhereHBaseClient hbase, String assnToken,
+			DeviceAssignmentRecordType eventType, IDateRangeSearchCriteria criteria, Pager<EventCell> pager,
+			String resumeToken) throws SiteWhereException {
+		byte[] assnKey = IdManager.getInstance().getAssignmentKeys().getValue(assnToken);
+		if (assnKey == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+		}
+
+		byte[] startKey = getScanStartKey(assnKey, criteria);
+		byte[] endKey = getScanStopKey(assnKey, criteria);
+		byte[][] resumeKey = null;
+		if (resumeToken != null) {
+			resumeKey = getEventKeyFromId(resumeToken);
+			byte[] resumeRow = Bytes.tail(resumeKey[0], resumeKey[0].length - getSaltLength());
+			if (!Bytes.startsWith(resumeRow, assnKey)) {
+				throw new SiteWhereException("Resume token does not belong to assignment: " + assnToken);
+			}
+			if (Bytes.compareTo(resumeRow, startKey) > 0) {
+				startKey = resumeRow;
+			}
+		}
+
+		HTableInterface events = null;
+		ResultScanner scanner = null;
+		try {
+			events = hbase.getTableInterface(ISiteWhereHBase.EVENTS_TABLE_NAME);
+			scanner =
+					getEventScanner(events, startKey, endKey, eventType, criteria, false,
+							ScanProfiles.EVENT_PAGE);
+
+			Iterator<Result> results = scanner.iterator();
+			while ((!pager.isDone()) && (results.hasNext())) {
+				for (EventCell cell : getMatchingCells(results.next(), eventType, criteria)) {
+					if ((resumeKey != null)
+							&& (!isAfterEventKey(cell.getRow(), cell.getQualifier(), resumeKey))) {
+						continue;
+					}
+					pager.process(cell);
+					if (pager.isDone()) {
+						break;
+					}
+				}
+			}
+			return pager;
+		} catch (IOException e) {
+			throw new SiteWhereException("Error scanning event rows.", e);
+		} finally {
+			if (scanner != null) {
+				scanner.close();
+			}
+			HBaseUtils.closeCleanly(events);
+		}
+
+	}
+
+	/**
+	 * Get the cells of an event row that match the search criteria in scan order. A row
+	 * may hold cells from more than one family, which are returned grouped by family, so
+	 * they are sorted before use.
+	 * 
+	 * @param row
+	 * @param eventType
+	 * @param criteria
+	 * @return
+	 */
+	protected static List<EventCell> getMatchingCells(Result row, DeviceAssignmentRecordType eventType,
+			IDateRangeSearchCriteria criteria) {
+		List<EventCell> cells = new ArrayList<EventCell>();
+		for (KeyValue cell : row.raw()) {
+			if (isMatchingEvent(cell.getRow(), cell.getQualifier(), eventType, criteria)) {
+				cells.add(new EventCell(cell.getRow(), cell.getQualifier(), cell.getValue()));
+			}
+		}
+		if (cells.size() > 1) {
+			Collections.sort(cells, EventCell.KEY_ORDER);
+		}
+		return cells;
+	}
+
+	/**
+	 * Find event rows associated with a device assignment and add cells that match the
+	 * search criteria to the given pager, oldest first. Rows are stored newest first, so
+	 * time buckets are walked from oldest to newest a window at a time. A keys-only scan
+	 * lists the buckets in each window that hold events, then each bucket is read and
+	 * sorted on its own. Memory use is bounded by the window and bucket sizes rather than
+	 * by the number of events in the range. If either end of the date range is open, it
+	 * is found with an extra keys-only scan of the assignment rows.
+	 * 
+	 * @param hbase
+	 * @param assnToken
+	 * @param eventType
+	 * @param criteria
+	 * @param pager
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected static Pager<EventCell> getEventRowsForAssignmentAscending(ISiteWhereHBaseClient hbase,
+			String assnToken, DeviceAssignmentRecordType eventType, IDateRangeSearchCriteria criteria,
+			Pager<EventCell> pager) throws SiteWhereException {
+		byte[] assnKey = IdManager.getInstance().getAssignmentKeys().getValue(assnToken);
+		if (assnKey == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+		}
+		byte[] startKey = getScanStartKey(assnKey, criteria);
+		byte[] stopKey = getScanStopKey(assnKey, criteria);
+		long bucketLength = BUCKET_INTERVAL * 1000L;
+		long windowLength = DeviceEventSettings.getInstance().getAscendingWindowBuckets() * bucketLength;
+
+		HTableInterface events = null;
+		try {
+			events = hbase.getTableInterface(ISiteWhereHBase.EVENTS_TABLE_NAME);
+			long[] bounds = getBucketBounds(events, startKey, stopKey, eventType, criteria);
+			if (bounds == null) {
+				return pager;
+			}
+			long window = bounds[0];
+			while ((window <= bounds[1]) && (!pager.isDone())) {
+				long windowEnd = Math.min(window + windowLength - bucketLength, bounds[1]);
+				List<byte[]> rows = getBucketRows(events, getBucketKey(assnKey, windowEnd),
+						Bytes.add(getBucketKey(assnKey, window), new byte[] { 0x00 }), eventType, criteria);
+				for (int i = rows.size() - 1; (i >= 0) && (!pager.isDone()); i--) {
+					addBucketEvents(events, rows.get(i), eventType, criteria, pager);
+				}
+				window += windowLength;
+			}
+			return pager;
+		} catch (IOException e) {
+			throw new SiteWhereException("Error scanning event rows.", e);
+		} finally {
+			HBaseUtils.closeCleanly(events);
+		}
+	}
+
+	/**
+	 * Get the start times of the oldest and newest buckets to walk for an assignment. Ends
+	 * of the date range that are not given are taken from the stored rows.
+	 * 
+	 * @param events
+	 * @param startKey
+	 * @param stopKey
+	 * @param eventType
+	 * @param criteria
+	 * @return oldest and newest bucket start times or null if no rows exist
+	 * @throws IOException
+	 */
+	protected static long[] getBucketBounds(HTableInterface events, byte[] startKey, byte[] stopKey,
+			DeviceAssignmentRecordType eventType, IDateRangeSearchCriteria criteria) throws IOException {
+		Long oldest = null;
+		Long newest = null;
+		if (criteria.getStartDate() != null) {
+			oldest = getBucketStart(criteria.getStartDate().getTime());
+		}
+		if (criteria.getEndDate() != null) {
+			newest = getBucketStart(criteria.getEndDate().getTime());
+		}
+		if ((oldest == null) || (newest == null)) {
+			ResultScanner scanner = getBucketScanner(events, startKey, stopKey, eventType, criteria);
+			byte[] first = null;
+			byte[] last = null;
+			try {
+				for (Result result : scanner) {
+					if (first == null) {
+						first = result.getRow();
+						if (oldest != null) {
+							break;
+						}
+					}
+					last = result.getRow();
+				}
+			} finally {
+				scanner.close();
+			}
+			if (first == null) {
+				return null;
+			}
+			if (newest == null) {
+				newest = getBucketStart(first);
+			}
+			if (oldest == null) {
+				oldest = getBucketStart(last);
+			}
+		}
+		return new long[] { oldest, newest };
+	}
+
+	/**
+	 * List the rows in an unsalted range that hold events of the given type. Only the
+	 * first key of each row is returned by the region servers.
+	 * 
+	 * @param events
+	 * @param startKey
+	 * @param stopKey
+	 * @param eventType
+	 * @param criteria
+	 * @return physical row keys, newest bucket first
+	 * @throws IOException
+	 */
+	protected static List<byte[]> getBucketRows(HTableInterface events, byte[] startKey, byte[] stopKey,
+			DeviceAssignmentRecordType eventType, IDateRangeSearchCriteria criteria) throws IOException {
+		List<byte[]> rows = new ArrayList<byte[]>();
+		ResultScanner scanner = getBucketScanner(events, startKey, stopKey, eventType, criteria);
+		try {
+			for (Result result : scanner) {
+				rows.add(result.getRow());
+			}
+		} finally {
+			scanner.close();
+		}
+		return rows;
+	}
+
+	/**
+	 * Read the events in a single bucket row and add those that match the criteria to the
+	 * pager, oldest first.
+	 * 
+	 * @param events
+	 * @param row
+	 *            physical row key
+	 * @param eventType
+	 * @param criteria
+	 * @param pager
+	 * @throws IOException
+	 */
+	protected static void addBucketEvents(HTableInterface events, byte[] row,
+			DeviceAssignmentRecordType eventType, IDateRangeSearchCriteria criteria, Pager<EventCell> pager)
+			throws IOException {
+		List<EventCell> cells = new ArrayList<EventCell>();
+		byte[][] range = new byte[][] { row, Bytes.add(row, new byte[] { 0x00 }) };
+		ResultScanner scanner =
+				events.getScanner(createEventScan(range, eventType, criteria, false, ScanProfiles.EVENT_PAGE));
+		try {
+			for (Result result : scanner) {
+				for (KeyValue cell : result.raw()) {
+					if (isMatchingEvent(cell.getRow(), cell.getQualifier(), eventType, criteria)) {
+						cells.add(new EventCell(cell.getRow(), cell.getQualifier(), cell.getValue()));
+					}
+				}
+			}
+		} finally {
+			scanner.close();
+		}
+		Collections.sort(cells);
+		for (EventCell cell : cells) {
+			if (!pager.process(cell)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Indicates whether a cell comes after the given event key in scan order. Rows are
+	 * compared without their salt since scans over salted rows are merged in unsalted
+	 * order.
+	 * 
+	 * @param row
+	 * @param qualifier
+	 * @param eventKey
+	 *            row and qualifier of an event
+	 * @return
+	 */
+	protected static boolean isAfterEventKey(byte[] row, byte[] qualifier, byte[][] eventKey) {
+		int salt = getSaltLength();
+		int compare =
+				Bytes.compareTo(row, salt, row.length - salt, eventKey[0], salt, eventKey[0].length - salt);
+		if (compare != 0) {
+			return compare > 0;
+		}
+		return Bytes.compareTo(qualifier, eventKey[1]) > 0;
+	}
+
+	/**
+	 * Get the first (unsalted) row to scan for assignment events that match the given
+	 * criteria. Because time values are inverted, the start row is derived from the end
+	 * date.
+	 * 
+	 * @param assnKey
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static byte[] getScanStartKey(byte[] assnKey, IDateRangeSearchCriteria criteria)
+			throws SiteWhereException {
+		if (criteria.getEndDate() != null) {
+			return getBucketKey(assnKey, criteria.getEndDate().getTime());
+		}
+		return getAbsoluteStartKey(assnKey);
+	}
+
+	/**
+	 * Get the (exclusive, unsalted) stop row for scanning assignment events that match the
+	 * given criteria. The bucket containing the start date is included in the scan.
+	 * 
+	 * @param assnKey
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static byte[] getScanStopKey(byte[] assnKey, IDateRangeSearchCriteria criteria)
+			throws SiteWhereException {
+		if (criteria.getStartDate() != null) {
+			return Bytes.add(getBucketKey(assnKey, criteria.getStartDate().getTime()), new byte[] { 0x00 });
+		}
+		return getAbsoluteEndKey(assnKey);
+	}
+
+	/**
+	 * Indicates whether the cell with the given row and qualifier holds an event of the
+	 * given type that falls within the date range of the criteria.
+	 * 
+	 * @param row
+	 * @param qual
+	 * @param eventType
+	 * @param criteria
+	 * @return
+	 */
+	public static boolean isMatchingEvent(byte[] row, byte[] qual, DeviceAssignmentRecordType eventType,
+			IDateRangeSearchCriteria criteria) {
+		if ((qual.length <= 3) || (qual[3] != eventType.getType())) {
+			return false;
+		}
+		Date eventDate = getDateForEventKeyValue(row, qual);
+		if ((criteria.getStartDate() != null) && (eventDate.before(criteria.getStartDate()))) {
+			return false;
+		}
+		if ((criteria.getEndDate() != null) && (eventDate.after(criteria.getEndDate()))) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes the event date encoded in the rowkey and qualifier for events. Handles
+	 * qualifiers in either {@link EventKeyLayout}.
+	 * 
+	 * @param kv
+	 * @return
+	 */
+	protected static Date getDateForEventKeyValue(byte[] key, byte[] qualifier) {
+		int bucket = key.length - 4;
+		byte[] work = new byte[8];
+		work[4] = (byte) ~key[bucket];
+		work[5] = (byte) ~key[bucket + 1];
+		work[6] = (byte) ~key[bucket + 2];
+		work[7] = (byte) ~key[bucket + 3];
+		long base = Bytes.toLong(work);
+		work = new byte[8];
+		work[5] = (byte) ~qualifier[0];
+		work[6] = (byte) ~qualifier[1];
+		work[7] = (byte) ~qualifier[2];
+		long offset = Bytes.toLong(work);
+		if (EventKeyLayout.forQualifier(qualifier) == EventKeyLayout.Milliseconds) {
+			return new Date((base * 1000) + offset);
+		}
+		return new Date((base + offset) * 1000);
+	}
+
+	/**
+	 * Find events associated with a site that match the search criteria.
+	 * 
+	 * @param hbase
+	 * @param executor
+	 *            executor used to open cursors in parallel or null to open them serially
+	 * @param siteToken
+	 * @param eventType
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected static Pager<EventCell> getEventRowsForSite(ISiteWhereHBaseClient hbase, ScanExecutor executor,
+			String siteToken, DeviceAssignmentRecordType eventType, IDateRangeSearchCriteria criteria)
+			throws SiteWhereException {
+		Long siteId = IdManager.getInstance().getSiteKeys().getValue(siteToken);
+		if (siteId == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidSiteToken, ErrorLevel.ERROR);
+		}
+		List<byte[]> assnKeys = new ArrayList<byte[]>();
+		for (Result assignment : HBaseSite.getAssignmentRows(hbase, siteId,
+				HBaseDeviceAssignment.ASSIGNMENT_STATUS)) {
+			assnKeys.add(assignment.getRow());
+		}
+		return getEventRowsForAssignments(hbase, executor, assnKeys, eventType, criteria);
+	}
+
+	/**
+	 * Find events for a group of assignments that match the search criteria. Each
+	 * assignment has a cursor over its events (which are stored newest-first) and the
+	 * cursors are merged through a priority queue. Merging stops once the requested page
+	 * and one more event have been found. Cursors scan keys only, since the date is
+	 * encoded in the key, and values are read for the events on the page once the merge is
+	 * complete.
+	 * 
+	 * Each open cursor holds the rows fetched by its last call to the region server (see
+	 * {@link ScanProfiles#EVENT_CURSOR}) along with a scanner on the server. To bound
+	 * both, at most {@link DeviceEventSettings#getMaxOpenCursors()} cursors are open at
+	 * once. Larger groups are merged in chunks of that size and only the newest keys
+	 * needed for the page are kept between chunks.
+	 * 
+	 * @param hbase
+	 * @param executor
+	 *            executor used to open cursors in parallel or null to open them serially
+	 * @param assnKeys
+	 * @param eventType
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected static Pager<EventCell> getEventRowsForAssignments(ISiteWhereHBaseClient hbase,
+			ScanExecutor executor, List<byte[]> assnKeys, DeviceAssignmentRecordType eventType,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		Pager<EventCell> pager = new Pager<EventCell>(criteria, PagingMode.Limited);
+		int needed = (int) Math.min(pager.getExpectedRecords(), Integer.MAX_VALUE);
+		int chunkSize = Math.max(1, DeviceEventSettings.getInstance().getMaxOpenCursors());
+		List<EventCell> newest = new ArrayList<EventCell>();
+		for (int start = 0; start < assnKeys.size(); start += chunkSize) {
+			List<byte[]> chunk = assnKeys.subList(start, Math.min(assnKeys.size(), start + chunkSize));
+			newest.addAll(getNewestEventKeys(hbase, executor, chunk, eventType, criteria, needed));
+			if (start > 0) {
+				Collections.sort(newest, Collections.reverseOrder());
+				if (newest.size() > needed) {
+					newest = new ArrayList<EventCell>(newest.subList(0, needed));
+				}
+			}
+		}
+		for (EventCell cell : newest) {
+			if (!pager.process(cell)) {
+				break;
+			}
+		}
+
+		HTableInterface events = null;
+		try {
+			events = hbase.getTableInterface(ISiteWhereHBase.EVENTS_TABLE_NAME);
+			pager.setResults(loadEventValues(events, eventType, pager.getResults()));
+			return pager;
+		} catch (IOException e) {
+			throw new SiteWhereException("Error reading event values.", e);
+		} finally {
+			HBaseUtils.closeCleanly(events);
+		}
+	}
+
+	/**
+	 * Merge keys-only cursors over the events of a group of assignments and return the
+	 * keys of the newest matching events, most recent first.
+	 * 
+	 * If an executor is given, cursors are grouped by the region that holds the start of
+	 * their range and each group is opened on the executor, so the initial reads are
+	 * spread over the region servers rather than issued one at a time.
+	 * 
+	 * @param hbase
+	 * @param executor
+	 *            executor used to open cursors in parallel or null to open them serially
+	 * @param assnKeys
+	 * @param eventType
+	 * @param criteria
+	 * @param count
+	 *            maximum number of keys returned
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected static List<EventCell> getNewestEventKeys(final ISiteWhereHBaseClient hbase,
+			ScanExecutor executor, List<byte[]> assnKeys, final DeviceAssignmentRecordType eventType,
+			final IDateRangeSearchCriteria criteria, int count) throws SiteWhereException {
+		List<List<byte[]>> groups = groupByRegion(hbase, executor, assnKeys, criteria);
+
+		final List<AssignmentEventCursor> cursors = new ArrayList<AssignmentEventCursor>();
+		final List<HTableInterface> tables = new ArrayList<HTableInterface>();
+		try {
+			List<Callable<List<AssignmentEventCursor>>> tasks =
+					new ArrayList<Callable<List<AssignmentEventCursor>>>();
+			for (final List<byte[]> group : groups) {
+				tasks.add(new Callable<List<AssignmentEventCursor>>() {
+
+					public List<AssignmentEventCursor> call() throws Exception {
+						HTableInterface events = hbase.getTableInterface(ISiteWhereHBase.EVENTS_TABLE_NAME);
+						synchronized (tables) {
+							tables.add(events);
+						}
+						List<AssignmentEventCursor> opened = new ArrayList<AssignmentEventCursor>();
+						for (byte[] assnKey : group) {
+							ResultScanner scanner =
+									getEventScanner(events, getScanStartKey(assnKey, criteria),
+											getScanStopKey(assnKey, criteria), eventType, criteria, true,
+											ScanProfiles.EVENT_CURSOR);
+							AssignmentEventCursor cursor =
+									new AssignmentEventCursor(scanner, eventType, criteria);
+							synchronized (cursors) {
+								cursors.add(cursor);
+							}
+							if (cursor.advance()) {
+								opened.add(cursor);
+							}
+						}
+						return opened;
+					}
+				});
+			}
+			List<List<AssignmentEventCursor>> opened =
+					(executor != null) ? executor.invokeAll(tasks) : ScanExecutor.runSerially(tasks);
+
+			PriorityQueue<AssignmentEventCursor> heads =
+					new PriorityQueue<AssignmentEventCursor>(Math.max(1, assnKeys.size()));
+			for (List<AssignmentEventCursor> group : opened) {
+				heads.addAll(group);
+			}
+			List<EventCell> newest = new ArrayList<EventCell>();
+			while ((newest.size() < count) && (!heads.isEmpty())) {
+				AssignmentEventCursor cursor = heads.poll();
+				newest.add(cursor.getCurrent());
+				if (cursor.advance()) {
+					heads.add(cursor);
+				}
+			}
+			return newest;
+		} catch (IOException e) {
+			throw new SiteWhereException("Error scanning event rows.", e);
+		} finally {
+			synchronized (cursors) {
+				for (AssignmentEventCursor cursor : cursors) {
+					cursor.close();
+				}
+			}
+			synchronized (tables) {
+				for (HTableInterface table : tables) {
+					HBaseUtils.closeCleanly(table);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read the values for cells found by a keys-only scan using a single batch of gets.
+	 * Cells whose values no longer exist are left out.
+	 * 
+	 * @param events
+	 * @param eventType
+	 * @param cells
+	 * @return cells with values in the same order
+	 * @throws IOException
+	 */
+	protected static List<EventCell> loadEventValues(HTableInterface events,
+			DeviceAssignmentRecordType eventType, List<EventCell> cells) throws IOException {
+		if (cells.isEmpty()) {
+			return cells;
+		}
+		byte[][] families = getReadFamilies(eventType);
+		List<Get> gets = new ArrayList<Get>(cells.size());
+		for (EventCell cell : cells) {
+			Get get = new Get(cell.getRow());
+			for (byte[] family : families) {
+				get.addColumn(family, cell.getQualifier());
+			}
+			gets.add(get);
+		}
+		Result[] results = events.get(gets);
+		List<EventCell> loaded = new ArrayList<EventCell>(cells.size());
+		for (int i = 0; i < cells.size(); i++) {
+			EventCell cell = cells.get(i);
+			byte[] value = null;
+			for (byte[] family : families) {
+				value = results[i].getValue(family, cell.getQualifier());
+				if (value != null) {
+					break;
+				}
+			}
+			if (value == null) {
+				LOGGER.warn("Event was removed before its value could be read.");
+				continue;
+			}
+			loaded.add(new EventCell(cell.getRow(), cell.getQualifier(), value));
+		}
+		return loaded;
+	}
+
+	/**
+	 * Group assignment keys by the events table region that holds the start of their scan
+	 * range. Without an executor all keys are returned in a single group since the region
+	 * lookup would not help.
+	 * 
+	 * @param hbase
+	 * @param executor
+	 * @param assnKeys
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected static List<List<byte[]>> groupByRegion(ISiteWhereHBaseClient hbase, ScanExecutor executor,
+			List<byte[]> assnKeys, IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		List<List<byte[]>> groups = new ArrayList<List<byte[]>>();
+		if ((executor == null) || (assnKeys.size() < 2)) {
+			groups.add(assnKeys);
+			return groups;
+		}
+		byte[][] startKeys = HBaseUtils.getRegionStartKeys(hbase, ISiteWhereHBase.EVENTS_TABLE_NAME);
+		Map<Integer, List<byte[]>> byRegion = new TreeMap<Integer, List<byte[]>>();
+		for (byte[] assnKey : assnKeys) {
+			List<byte[][]> ranges =
+					getSaltedRanges(getScanStartKey(assnKey, criteria), getScanStopKey(assnKey, criteria));
+			Integer region = HBaseUtils.getRegionIndex(startKeys, ranges.get(0)[0]);
+			List<byte[]> group = byRegion.get(region);
+			if (group == null) {
+				group = new ArrayList<byte[]>();
+				byRegion.put(region, group);
+			}
+			group.add(assnKey);
+		}
+		groups.addAll(byRegion.values());
+		return groups;
+	}
+
+	/**
+	 * Get the total number of events of a given type stored for assignments in a site,
+	 * based on the maintained event counts.
+	 * 
+	 * @param hbase
+	 * @param siteToken
+	 * @param eventType
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected static long getEventCountForSite(ISiteWhereHBaseClient hbase, String siteToken,
+			DeviceAssignmentRecordType eventType) throws SiteWhereException {
+		Long siteId = IdManager.getInstance().getSiteKeys().getValue(siteToken);
+		if (siteId == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidSiteToken, ErrorLevel.ERROR);
+		}
+		byte[] qualifier = HBaseDeviceAssignment.getEventCountQualifier(eventType);
+		long total = 0;
+		for (Result row : HBaseSite.getAssignmentRows(hbase, siteId, qualifier)) {
+			total += Bytes.toLong(row.getValue(ISiteWhereHBase.FAMILY_ID, qualifier));
+		}
+		return total;
+	}
+
+	/**
+	 * Open a scanner over an unsalted range of event rows. If salting is enabled, one
+	 * scan is issued for each salt bucket and the results are merged so that rows are
+	 * returned in the same order as for an unsalted table.
+	 * 
+	 * @param events
+	 * @param startKey
+	 * @param stopKey
+	 * @param eventType
+	 *            type of event being read
+	 * @param criteria
+	 *            criteria that limit the time range of the scan
+	 * @param keysOnly
+	 *            indicates whether cell values are left out of the results
+	 * @param profile
+	 *            name of the scan profile applied to each scan
+	 * @return
+	 * @throws IOException
+	 */
+	protected static ResultScanner getEventScanner(HTableInterface events, byte[] startKey, byte[] stopKey,
+			DeviceAssignmentRecordType eventType, IDateRangeSearchCriteria criteria, boolean keysOnly,
+			String profile) throws IOException {
+		List<Scan> scans = new ArrayList<Scan>();
+		for (byte[][] range : getSaltedRanges(startKey, stopKey)) {
+			scans.add(createEventScan(range, eventType, criteria, keysOnly, profile));
+		}
+		return getMergedScanner(events, scans);
+	}
+
+	/**
+	 * Get a scanner that returns only the first key of each event row in an unsalted
+	 * range that holds events of the given type. Rows are returned in the same order as
+	 * for an unsalted table.
+	 * 
+	 * @param events
+	 * @param startKey
+	 * @param stopKey
+	 * @param eventType
+	 * @param criteria
+	 * @return
+	 * @throws IOException
+	 */
+	protected static ResultScanner getBucketScanner(HTableInterface events, byte[] startKey, byte[] stopKey,
+			DeviceAssignmentRecordType eventType, IDateRangeSearchCriteria criteria) throws IOException {
+		List<Scan> scans = new ArrayList<Scan>();
+		for (byte[][] range : getSaltedRanges(startKey, stopKey)) {
+			Scan scan = createEventScan(range, eventType, criteria, true, ScanProfiles.EVENT_EXPORT);
+			scan.setFilter(new FilterList(FilterList.Operator.MUST_PASS_ALL, getEventTypeFilter(eventType),
+					new FirstKeyOnlyFilter(), new KeyOnlyFilter()));
+			scans.add(scan);
+		}
+		return getMergedScanner(events, scans);
+	}
+
+	/**
+	 * Open a scanner for each scan and merge the results in unsalted row order.
+	 * 
+	 * @param events
+	 * @param scans
+	 *            one scan per salt bucket
+	 * @return
+	 * @throws IOException
+	 */
+	protected static ResultScanner getMergedScanner(HTableInterface events, List<Scan> scans)
+			throws IOException {
+		if (scans.size() == 1) {
+			return events.getScanner(scans.get(0));
+		}
+		List<ResultScanner> scanners = new ArrayList<ResultScanner>();
+		try {
+			for (Scan scan : scans) {
+				scanners.add(events.getScanner(scan));
+			}
+		} catch (IOException e) {
+			for (ResultScanner scanner : scanners) {
+				scanner.close();
+			}
+			throw e;
+		}
+		return new MergedResultScanner(scanners, getSaltLength());
+	}
+
+	/**
+	 * Create a scan over a physical range of event rows that only reads the families that
+	 * may hold events of the given type and filters out cells of other types on the
+	 * region servers. A keys-only scan also strips cell values on the region servers. The
+	 * time range of the scan is limited based on the criteria so that store files outside
+	 * of it are skipped.
+	 * 
+	 * @param range
+	 * @param eventType
+	 * @param criteria
+	 * @param keysOnly
+	 * @param profile
+	 *            name of the scan profile applied to the scan
+	 * @return
+	 * @throws IOException
+	 */
+	protected static Scan createEventScan(byte[][] range, DeviceAssignmentRecordType eventType,
+			IDateRangeSearchCriteria criteria, boolean keysOnly, String profile) throws IOException {
+		Scan scan = new Scan(range[0], range[1]);
+		long[] timeRange = getCellTimeRange(criteria);
+		if (timeRange != null) {
+			scan.setTimeRange(timeRange[0], timeRange[1]);
+		}
+		for (byte[] family : getReadFamilies(eventType)) {
+			scan.addFamily(family);
+		}
+		ScanProfiles.get(profile).apply(scan);
+		if (keysOnly) {
+			scan.setFilter(new FilterList(FilterList.Operator.MUST_PASS_ALL, getEventTypeFilter(eventType),
+					new KeyOnlyFilter()));
+		} else {
+			scan.setFilter(getEventTypeFilter(eventType));
+		}
+		return scan;
+	}
+
+	/**
+	 * Get the cell timestamp used when storing an event.
+	 * 
+	 * @param time
+	 *            event time
+	 * @return
+	 */
+	public static long getCellTimestamp(long time) {
+		if (DeviceEventSettings.getInstance().isEventTimestamps()) {
+			return time;
+		}
+		return HConstants.LATEST_TIMESTAMP;
+	}
+
+	/**
+	 * Get the range of cell timestamps that may hold events matching the criteria. Cells
+	 * stored without the event time as timestamp carry the region server time at which
+	 * they were written, which may be earlier than the event time if the device clock is
+	 * ahead or the servers' clocks differ. The criteria dates are therefore only used as
+	 * bounds if all stored events are known to carry their event time.
+	 * 
+	 * @param criteria
+	 * @return minimum (inclusive) and maximum (exclusive) timestamps or null if the time
+	 *         range is not limited
+	 */
+	public static long[] getCellTimeRange(IDateRangeSearchCriteria criteria) {
+		if (!DeviceEventSettings.getInstance().isTimeRangeEndBound()) {
+			return null;
+		}
+		long min = 0;
+		long max = Long.MAX_VALUE;
+		if (criteria.getStartDate() != null) {
+			min = criteria.getStartDate().getTime();
+		}
+		if (criteria.getEndDate() != null) {
+			max = criteria.getEndDate().getTime() + 1;
+		}
+		if ((min == 0) && (max == Long.MAX_VALUE)) {
+			return null;
+		}
+		return new long[] { min, max };
+	}
+
+	/**
+	 * Get the column family new events of the given type are written to.
+	 * 
+	 * @param eventType
+	 * @return
+	 */
+	public static byte[] getEventFamily(DeviceAssignmentRecordType eventType) {
+		if (!DeviceEventSettings.getInstance().isFamilyPerType()) {
+			return ISiteWhereHBase.FAMILY_ID;
+		}
+		return getEventTypeFamily(eventType);
 	}
 
 	/**
-	 * Create a new device location entry for an assignment.
+	 * Get the column families that may hold events of the given type. While rows are
+	 * being migrated to per-type families the shared family is read as well.
 	 * 
-	 * @param hbase
-	 * @param assignment
-	 * @param request
+	 * @param eventType
 	 * @return
-	 * @throws SiteWhereException
 	 */
-	public static IDeviceLocation createDeviceLocation(ISiteWhereHBaseClient hbase,
-			IDeviceAssignment assignment, IDeviceLocationCreateRequest request) throws SiteWhereException {
-		long time = getEventTime(request);
-		byte[] assnKey = IdManager.getInstance().getAssignmentKeys().getValue(assignment.getToken());
-		if (assnKey == null) {
-			throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+	public static byte[][] getReadFamilies(DeviceAssignmentRecordType eventType) {
+		DeviceEventSettings settings = DeviceEventSettings.getInstance();
+		if (!settings.isFamilyPerType()) {
+			return new byte[][] { ISiteWhereHBase.FAMILY_ID };
 		}
-		byte[] rowkey = getRowKey(assnKey, time);
-		byte[] qualifier = getQualifier(DeviceAssignmentRecordType.Location, time);
-
-		DeviceLocation location = SiteWherePersistence.deviceLocationCreateLogic(assignment, request);
-		String id = getEncodedEventId(rowkey, qualifier);
-		location.setId(id);
-		byte[] json = MarshalUtils.marshalJson(location);
-
-		HTableInterface events = null;
-		try {
-			events = hbase.getTableInterface(ISiteWhereHBase.EVENTS_TABLE_NAME);
-			Put put = new Put(rowkey);
-			put.add(ISiteWhereHBase.FAMILY_ID, qualifier, json);
-			events.put(put);
-		} catch (IOException e) {
-			throw new SiteWhereException("Unable to create location.", e);
-		} finally {
-			HBaseUtils.closeCleanly(events);
+		if (settings.isLegacyFamilyReads()) {
+			return new byte[][] { getEventTypeFamily(eventType), ISiteWhereHBase.FAMILY_ID };
 		}
-
-		return location;
+		return new byte[][] { getEventTypeFamily(eventType) };
 	}
 
 	/**
-	 * List locations associated with an assignment based on the given criteria.
+	 * Get the dedicated column family for an event type.
 	 * 
-	 * @param hbase
-	 * @param assnToken
-	 * @param criteria
+	 * @param eventType
 	 * @return
-	 * @throws SiteWhereException
 	 */
-	public static SearchResults<IDeviceLocation> listDeviceLocations(ISiteWhereHBaseClient hbase,
-			String assnToken, IDateRangeSearchCriteria criteria) throws SiteWhereException {
-		Pager<byte[]> matches =
-				getEventRowsForAssignment(hbase, assnToken, DeviceAssignmentRecordType.Location, criteria);
-		return convertMatches(matches, DeviceLocation.class);
+	public static byte[] getEventTypeFamily(DeviceAssignmentRecordType eventType) {
+		switch (eventType) {
+		case Measurement: {
+			return FAMILY_MEASUREMENTS;
+		}
+		case Location: {
+			return FAMILY_LOCATIONS;
+		}
+		case Alert: {
+			return FAMILY_ALERTS;
+		}
+		default: {
+			throw new IllegalArgumentException("No column family for record type: " + eventType);
+		}
+		}
 	}
 
 	/**
-	 * List device locations associated with a site.
+	 * Get a filter that only passes cells holding events of the given type. The type is
+	 * stored in the fourth byte of the qualifier in all key layouts. The qualifier is
+	 * matched as ISO-8859-1 so that each byte maps to exactly one character.
 	 * 
-	 * @param hbase
-	 * @param siteToken
-	 * @param criteria
+	 * @param eventType
 	 * @return
-	 * @throws SiteWhereException
 	 */
-	public static SearchResults<IDeviceLocation> listDeviceLocationsForSite(ISiteWhereHBaseClient hbase,
-			String siteToken, IDateRangeSearchCriteria criteria) throws SiteWhereException {
-		Pager<byte[]> matches =
-				getEventRowsForSite(hbase, siteToken, DeviceAssignmentRecordType.Location, criteria);
-		return convertMatches(matches, DeviceLocation.class);
+	public static Filter getEventTypeFilter(DeviceAssignmentRecordType eventType) {
+		RegexStringComparator comparator =
+				new RegexStringComparator(REGEX_EVENT_TYPE_PREFIX + DataUtils.regexHex(eventType.getType()));
+		comparator.setCharset(QUALIFIER_CHARSET);
+		return new QualifierFilter(CompareOp.EQUAL, comparator);
 	}
 
 	/**
-	 * Create a new device alert entry for an assignment.
+	 * Get the physical row ranges that hold events for an unsalted range of event rows.
+	 * There is one range per salt bucket if salting is enabled.
 	 * 
-	 * @param hbase
-	 * @param assignment
-	 * @param request
-	 * @return
-	 * @throws SiteWhereException
+	 * @param startKey
+	 * @param stopKey
+	 * @return list of start/stop row pairs
 	 */
-	public static IDeviceAlert createDeviceAlert(ISiteWhereHBaseClient hbase, IDeviceAssignment assignment,
-			IDeviceAlertCreateRequest request) throws SiteWhereException {
-		long time = getEventTime(request);
-		byte[] assnKey = IdManager.getInstance().getAssignmentKeys().getValue(assignment.getToken());
-		if (assnKey == null) {
-			throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+	public static List<byte[][]> getSaltedRanges(byte[] startKey, byte[] stopKey) {
+		List<byte[][]> ranges = new ArrayList<byte[][]>();
+		DeviceEventSettings settings = DeviceEventSettings.getInstance();
+		if (!settings.isSalted()) {
+			ranges.add(new byte[][] { startKey, stopKey });
+			return ranges;
 		}
-		byte[] rowkey = getRowKey(assnKey, time);
-		byte[] qualifier = getQualifier(DeviceAssignmentRecordType.Alert, time);
-
-		// Create alert and marshal to JSON.
-		DeviceAlert alert = SiteWherePersistence.deviceAlertCreateLogic(assignment, request);
-		String id = getEncodedEventId(rowkey, qualifier);
-		alert.setId(id);
-		byte[] json = MarshalUtils.marshalJson(alert);
-
-		HTableInterface events = null;
-		try {
-			events = hbase.getTableInterface(ISiteWhereHBase.EVENTS_TABLE_NAME);
-			Put put = new Put(rowkey);
-			put.add(ISiteWhereHBase.FAMILY_ID, qualifier, json);
-			events.put(put);
-		} catch (IOException e) {
-			throw new SiteWhereException("Unable to create alert.", e);
-		} finally {
-			HBaseUtils.closeCleanly(events);
+		for (int salt = 0; salt < settings.getSaltBuckets(); salt++) {
+			byte[] prefix = new byte[] { (byte) salt };
+			ranges.add(new byte[][] { Bytes.add(prefix, startKey), Bytes.add(prefix, stopKey) });
 		}
-
-		return alert;
+		return ranges;
 	}
 
 	/**
-	 * List alerts associated with an assignment based on the given criteria.
+	 * Get the number of salt bytes at the start of event row keys.
 	 * 
-	 * @param hbase
-	 * @param assnToken
-	 * @param criteria
 	 * @return
-	 * @throws SiteWhereException
 	 */
-	public static SearchResults<IDeviceAlert> listDeviceAlerts(ISiteWhereHBaseClient hbase, String assnToken,
-			IDateRangeSearchCriteria criteria) throws SiteWhereException {
-		Pager<byte[]> matches =
-				getEventRowsForAssignment(hbase, assnToken, DeviceAssignmentRecordType.Alert, criteria);
-		return convertMatches(matches, DeviceAlert.class);
+	public static int getSaltLength() {
+		return DeviceEventSettings.getInstance().isSalted() ? 1 : 0;
 	}
 
 	/**
-	 * List device alerts associated with a site.
+	 * Get split points for an unsalted events table. Rows start with the site identifier
+	 * followed by the assignment identifier, so the regions are spread evenly across the
+	 * ids of the assignments expected in each site. Assignment ids are allocated downward
+	 * from the largest value, so those are the highest ids of each site. Sites beyond the
+	 * expected number share the last region.
 	 * 
-	 * @param hbase
-	 * @param siteToken
-	 * @param criteria
+	 * @param regions
+	 * @param sites
+	 *            expected number of sites
+	 * @param assignmentsPerSite
+	 *            expected number of assignments in each site
+	 * @return split keys or null if the table should not be split
+	 */
+	public static byte[][] getSplitKeys(int regions, long sites, long assignmentsPerSite) {
+		long idSpace = 1L << (8 * HBaseDeviceAssignment.ASSIGNMENT_IDENTIFIER_LENGTH);
+		long perSite = Math.min(assignmentsPerSite, idSpace);
+		long total = Math.max(1, sites) * perSite;
+		if ((regions <= 1) || (total < regions)) {
+			return null;
+		}
+		long firstId = idSpace - perSite;
+		byte[][] splits = new byte[regions - 1][];
+		for (int i = 1; i < regions; i++) {
+			long key = (total * i) / regions;
+			byte[] site = HBaseSite.getAssignmentRowKey(1 + (key / perSite));
+			byte[] assignment = HBaseDeviceAssignment.getAssignmentIdentifier(firstId + (key % perSite));
+			splits[i - 1] = Bytes.add(site, assignment);
+		}
+		return splits;
+	}
+
+	/**
+	 * Add the salt prefix to an event row key if salting is enabled. The salt is derived
+	 * from the assignment and time bucket so that all events for an assignment in a given
+	 * bucket share a row, while rows for a busy site are spread across all buckets.
+	 * 
+	 * @param rowkey
 	 * @return
-	 * @throws SiteWhereException
 	 */
-	public static SearchResults<IDeviceAlert> listDeviceAlertsForSite(ISiteWhereHBaseClient hbase,
-			String siteToken, IDateRangeSearchCriteria criteria) throws SiteWhereException {
-		Pager<byte[]> matches =
-				getEventRowsForSite(hbase, siteToken, DeviceAssignmentRecordType.Alert, criteria);
-		return convertMatches(matches, DeviceAlert.class);
+	protected static byte[] addSalt(byte[] rowkey) {
+		DeviceEventSettings settings = DeviceEventSettings.getInstance();
+		if (!settings.isSalted()) {
+			return rowkey;
+		}
+		int salt = (Arrays.hashCode(rowkey) & 0x7fffffff) % settings.getSaltBuckets();
+		return Bytes.add(new byte[] { (byte) salt }, rowkey);
 	}
 
 	/**
-	 * Find all event rows associated with a device assignment and return cells that match
-	 * the search criteria.
+	 * Converts matching rows for an assignment to {@link SearchResults}. If the scan
+	 * stopped once the page was filled, the total is taken from the maintained event count
+	 * when no date range applies. Otherwise the total is the number of matches seen and is
+	 * marked as estimated.
 	 * 
 	 * @param hbase
 	 * @param assnToken
 	 * @param eventType
 	 * @param criteria
+	 * @param matches
+	 * @param type
 	 * @return
 	 * @throws SiteWhereException
 	 */
-	protected static Pager<byte[]> getEventRowsForAssignment(ISiteWhereHBaseClient hbase, String assnToken,
-			DeviceAssignmentRecordType eventType, IDateRangeSearchCriteria criteria)
-			throws SiteWhereException {
-		byte[] assnKey = IdManager.getInstance().getAssignmentKeys().getValue(assnToken);
-		if (assnKey == null) {
-			throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+	protected static <I extends IDeviceEvent, D extends DeviceEvent> SearchResults<I>
+			convertAssignmentMatches(ISiteWhereHBaseClient hbase, String assnToken,
+					DeviceAssignmentRecordType eventType, IDateRangeSearchCriteria criteria,
+					Pager<EventCell> matches, Class<D> type) throws SiteWhereException {
+		SearchResults<I> converted = convertMatches(matches, type);
+		if (!matches.isTruncated()) {
+			return converted;
 		}
-
-		// Note: Because time values are inverted, start and end keys are reversed.
-		byte[] startKey = null, endKey = null;
-		if (criteria.getStartDate() != null) {
-			startKey = getRowKey(assnKey, criteria.getEndDate().getTime());
-		} else {
-			startKey = getAbsoluteStartKey(assnKey);
-		}
-		if (criteria.getEndDate() != null) {
-			endKey = getRowKey(assnKey, criteria.getStartDate().getTime());
-		} else {
-			endKey = getAbsoluteEndKey(assnKey);
-		}
-
-		HTableInterface events = null;
-		ResultScanner scanner = null;
-		try {
-			events = hbase.getTableInterface(ISiteWhereHBase.EVENTS_TABLE_NAME);
-			Scan scan = new Scan();
-			scan.setStartRow(startKey);
-			scan.setStopRow(endKey);
-			scanner = events.getScanner(scan);
-
-			Pager<byte[]> pager = new Pager<byte[]>(criteria);
-			Iterator<Result> results = scanner.iterator();
-			while (results.hasNext()) {
-				Result current = results.next();
-				Map<byte[], byte[]> cells = current.getFamilyMap(ISiteWhereHBase.FAMILY_ID);
-				for (byte[] qual : cells.keySet()) {
-					byte[] value = cells.get(qual);
-					if ((qual.length > 3) && (qual[3] == eventType.getType())) {
-						Date eventDate = getDateForEventKeyValue(current.getRow(), qual);
-						if ((criteria.getStartDate() != null) && (eventDate.before(criteria.getStartDate()))) {
-							continue;
-						}
-						if ((criteria.getEndDate() != null) && (eventDate.after(criteria.getEndDate()))) {
-							continue;
-						}
-						pager.process(value);
-					}
-				}
-			}
-			return pager;
-		} catch (IOException e) {
-			throw new SiteWhereException("Error scanning event rows.", e);
-		} finally {
-			if (scanner != null) {
-				scanner.close();
+		if ((criteria.getStartDate() == null) && (criteria.getEndDate() == null)
+				&& (DeviceEventSettings.getInstance().isEventCounts())) {
+			Long count = HBaseDeviceAssignment.getEventCount(hbase, assnToken, eventType);
+			if ((count != null) && (count >= matches.getTotal())) {
+				return new EstimatedSearchResults<I>(converted.getResults(), count, false);
 			}
-			HBaseUtils.closeCleanly(events);
 		}
-
-	}
-
-	/**
-	 * Decodes the event date encoded in the rowkey and qualifier for events.
-	 * 
-	 * @param kv
-	 * @return
-	 */
-	protected static Date getDateForEventKeyValue(byte[] key, byte[] qualifier) {
-		byte[] work = new byte[8];
-		work[4] = (byte) ~key[7];
-		work[5] = (byte) ~key[8];
-		work[6] = (byte) ~key[9];
-		work[7] = (byte) ~key[10];
-		long base = Bytes.toLong(work);
-		work = new byte[8];
-		work[5] = (byte) ~qualifier[0];
-		work[6] = (byte) ~qualifier[1];
-		work[7] = (byte) ~qualifier[2];
-		long offset = Bytes.toLong(work);
-		return new Date((base + offset) * 1000);
+		return new EstimatedSearchResults<I>(converted.getResults(), matches.getTotal(), true);
 	}
 
 	/**
-	 * Find all event rows associated with a site and return values that match the search
-	 * criteria. TODO: This is not optimized at all and will take forever in cases where
-	 * there are ton of assignments and events. It has to go through every record
-	 * associated with the site. It works for now though.
+	 * Converts matching rows for a site to {@link SearchResults}. Works like
+	 * {@link #convertAssignmentMatches} with the maintained counts of all assignments in
+	 * the site added together.
 	 * 
 	 * @param hbase
 	 * @param siteToken
 	 * @param eventType
 	 * @param criteria
+	 * @param matches
+	 * @param type
 	 * @return
 	 * @throws SiteWhereException
 	 */
-	protected static Pager<byte[]> getEventRowsForSite(ISiteWhereHBaseClient hbase, String siteToken,
-			DeviceAssignmentRecordType eventType, IDateRangeSearchCriteria criteria)
+	protected static <I extends IDeviceEvent, D extends DeviceEvent> SearchResults<I> convertSiteMatches(
+			ISiteWhereHBaseClient hbase, String siteToken, DeviceAssignmentRecordType eventType,
+			IDateRangeSearchCriteria criteria, Pager<EventCell> matches, Class<D> type)
 			throws SiteWhereException {
-		Long siteId = IdManager.getInstance().getSiteKeys().getValue(siteToken);
-		if (siteId == null) {
-			throw new SiteWhereSystemException(ErrorCode.InvalidSiteToken, ErrorLevel.ERROR);
+		SearchResults<I> converted = convertMatches(matches, type);
+		if (!matches.isTruncated()) {
+			return converted;
 		}
-		byte[] startPrefix = HBaseSite.getAssignmentRowKey(siteId);
-		byte[] afterPrefix = HBaseSite.getAfterAssignmentRowKey(siteId);
-
-		HTableInterface events = null;
-		ResultScanner scanner = null;
-		try {
-			events = hbase.getTableInterface(ISiteWhereHBase.EVENTS_TABLE_NAME);
-			Scan scan = new Scan();
-			scan.setStartRow(startPrefix);
-			scan.setStopRow(afterPrefix);
-			scanner = events.getScanner(scan);
-
-			List<DatedByteArray> matches = new ArrayList<DatedByteArray>();
-			Iterator<Result> results = scanner.iterator();
-			while (results.hasNext()) {
-				Result current = results.next();
-				byte[] key = current.getRow();
-				if (key.length > 7) {
-					Map<byte[], byte[]> cells = current.getFamilyMap(ISiteWhereHBase.FAMILY_ID);
-					for (byte[] qual : cells.keySet()) {
-						byte[] value = cells.get(qual);
-						if ((qual.length > 3) && (qual[3] == eventType.getType())) {
-							Date eventDate = getDateForEventKeyValue(key, qual);
-							if ((criteria.getStartDate() != null)
-									&& (eventDate.before(criteria.getStartDate()))) {
-								continue;
-							}
-							if ((criteria.getEndDate() != null) && (eventDate.after(criteria.getEndDate()))) {
-								continue;
-							}
-							matches.add(new DatedByteArray(eventDate, value));
-						}
-					}
-				}
-			}
-			Collections.sort(matches, Collections.reverseOrder());
-			Pager<byte[]> pager = new Pager<byte[]>(criteria);
-			for (DatedByteArray match : matches) {
-				pager.process(match.getJson());
-			}
-			return pager;
-		} catch (IOException e) {
-			throw new SiteWhereException("Error scanning event rows.", e);
-		} finally {
-			if (scanner != null) {
-				scanner.close();
+		if ((criteria.getStartDate() == null) && (criteria.getEndDate() == null)
+				&& (DeviceEventSettings.getInstance().isEventCounts())) {
+			long count = getEventCountForSite(hbase, siteToken, eventType);
+			if (count >= matches.getTotal()) {
+				return new EstimatedSearchResults<I>(converted.getResults(), count, false);
 			}
-			HBaseUtils.closeCleanly(events);
 		}
+		return new EstimatedSearchResults<I>(converted.getResults(), matches.getTotal(), true);
 	}
 
 	/**
-	 * Used for ordering events without having to unmarshal all of the byte arrays to do
-	 * it.
+	 * Converts matching rows to {@link CursorSearchResults} for web service response. The
+	 * resume token is the id of the last event if the page was filled.
 	 * 
-	 * @author Derek
+	 * @param matches
+	 * @param type
+	 * @return
 	 */
-	private static class DatedByteArray implements Comparable<DatedByteArray> {
-
-		private Date date;
-
-		private byte[] json;
-
-		public DatedByteArray(Date date, byte[] json) {
-			this.date = date;
-			this.json = json;
-		}
-
-		protected Date getDate() {
-			return date;
-		}
-
-		protected byte[] getJson() {
-			return json;
-		}
-
-		public int compareTo(DatedByteArray other) {
-			return this.getDate().compareTo(other.getDate());
+	protected static <I extends IDeviceEvent, D extends DeviceEvent> CursorSearchResults<I>
+			convertCursorMatches(Pager<EventCell> matches, Class<D> type) {
+		SearchResults<I> converted = convertMatches(matches, type);
+		String resumeToken = null;
+		if ((matches.isDone()) && (!matches.getResults().isEmpty())) {
+			EventCell last = matches.getResults().get(matches.getResults().size() - 1);
+			resumeToken = getEncodedEventId(last.getRow(), last.getQualifier());
 		}
+		return new CursorSearchResults<I>(converted.getResults(), resumeToken);
 	}
 
 	/**
 	 * Converts matching rows to {@link SearchResults} for web service response.
 	 * 
 	 * @param matches
-	 * @param jsonType
+	 * @param type
 	 * @return
 	 */
 	@SuppressWarnings("unchecked")
 	protected static <I extends IDeviceEvent, D extends DeviceEvent> SearchResults<I> convertMatches(
-			Pager<byte[]> matches, Class<D> jsonType) {
-		ObjectMapper mapper = new ObjectMapper();
+			Pager<EventCell> matches, Class<D> type) {
 		List<I> results = new ArrayList<I>();
-		for (byte[] jsonBytes : matches.getResults()) {
+		for (EventCell cell : matches.getResults()) {
 			try {
-				D event = mapper.readValue(jsonBytes, jsonType);
+				D event = DeviceEventCodec.decode(cell.getRow(), cell.getQualifier(), cell.getValue(), type);
 				results.add((I) event);
 			} catch (Throwable e) {
-				LOGGER.error("Unable to read JSON value into event object.", e);
+				LOGGER.error("Unable to decode stored value into event object.", e);
 			}
 		}
 		return new SearchResults<I>(results, matches.getTotal());
@@ -548,15 +2031,54 @@ public class HBaseDeviceEvent {
 	}
 
 	/**
-	 * Get row key for a given event type and time.
+	 * Get the start time of the bucket that holds events at the given time.
 	 * 
-	 * @param assnToken
-	 * @param eventType
+	 * @param time
+	 * @return
+	 */
+	protected static long getBucketStart(long time) {
+		time = time / 1000;
+		return (time - (time % BUCKET_INTERVAL)) * 1000;
+	}
+
+	/**
+	 * Get the start time of the bucket for an event row key.
+	 * 
+	 * @param rowkey
+	 * @return
+	 */
+	protected static long getBucketStart(byte[] rowkey) {
+		int bucket = rowkey.length - 4;
+		byte[] work = new byte[8];
+		work[4] = (byte) ~rowkey[bucket];
+		work[5] = (byte) ~rowkey[bucket + 1];
+		work[6] = (byte) ~rowkey[bucket + 2];
+		work[7] = (byte) ~rowkey[bucket + 3];
+		return Bytes.toLong(work) * 1000;
+	}
+
+	/**
+	 * Get row key for an event stored for an assignment at the given time. The key
+	 * includes the salt prefix if salting is enabled.
+	 * 
+	 * @param assnKey
 	 * @param time
 	 * @return
 	 * @throws SiteWhereException
 	 */
 	public static byte[] getRowKey(byte[] assnKey, long time) throws SiteWhereException {
+		return addSalt(getBucketKey(assnKey, time));
+	}
+
+	/**
+	 * Get the unsalted key for the bucket that holds events for an assignment at the
+	 * given time.
+	 * 
+	 * @param assnKey
+	 * @param time
+	 * @return
+	 */
+	protected static byte[] getBucketKey(byte[] assnKey, long time) {
 		time = time / 1000;
 		long bucket = time - (time % BUCKET_INTERVAL);
 		byte[] bucketBytes = Bytes.toBytes(bucket);
@@ -570,21 +2092,54 @@ public class HBaseDeviceEvent {
 	}
 
 	/**
-	 * Get column qualifier for storing the event.
+	 * Get column qualifier for storing the event using the configured key layout.
 	 * 
 	 * @param type
 	 * @param time
 	 * @return
 	 */
 	public static byte[] getQualifier(DeviceAssignmentRecordType eventType, long time) {
-		time = time / 1000;
-		long offset = time % BUCKET_INTERVAL;
+		return getQualifier(eventType, time, DeviceEventSettings.getInstance().getKeyLayout());
+	}
+
+	/**
+	 * Get column qualifier for storing the event using the given key layout. The
+	 * millisecond layout appends an inverted 16 bit sequence so that events of the same
+	 * type recorded in the same millisecond do not overwrite each other. The top 4 bits
+	 * hold the configured node id ({@link DeviceEventSettings#getNodeId()}) and the rest
+	 * come from a counter shared by all writes on this node.
+	 * 
+	 * This only keeps qualifiers unique if each node writing events has its own node id
+	 * and a node stores fewer than 4096 events between two events of the same type for
+	 * the same assignment and millisecond, after which the counter wraps. Events in the
+	 * same millisecond are ordered by node id and then by counter, so their order flips
+	 * when the counter wraps. A retried write gets a new sequence, so retries are not
+	 * idempotent and may store an event twice.
+	 * 
+	 * @param eventType
+	 * @param time
+	 * @param layout
+	 * @return
+	 */
+	public static byte[] getQualifier(DeviceAssignmentRecordType eventType, long time, EventKeyLayout layout) {
+		long offset;
+		if (layout == EventKeyLayout.Milliseconds) {
+			offset = time % (BUCKET_INTERVAL * 1000L);
+		} else {
+			offset = (time / 1000) % BUCKET_INTERVAL;
+		}
 		byte[] offsetBytes = Bytes.toBytes(offset);
-		ByteBuffer buffer = ByteBuffer.allocate(4);
+		ByteBuffer buffer = ByteBuffer.allocate(layout.getQualifierLength());
 		buffer.put((byte) ~offsetBytes[5]);
 		buffer.put((byte) ~offsetBytes[6]);
 		buffer.put((byte) ~offsetBytes[7]);
 		buffer.put(eventType.getType());
+		if (layout == EventKeyLayout.Milliseconds) {
+			int nodeId = DeviceEventSettings.getInstance().getNodeId();
+			int sequence = (nodeId << 12) | (SEQUENCE.getAndIncrement() & 0xfff);
+			buffer.put((byte) ~(sequence >> 8));
+			buffer.put((byte) ~sequence);
+		}
 		return buffer.array();
 	}
 
@@ -601,4 +2156,70 @@ public class HBaseDeviceEvent {
 		buffer.put(qualifier);
 		return DatatypeConverter.printBase64Binary(buffer.array());
 	}
+
+	/**
+	 * Decodes a unique event id into its row key and column qualifier. Ids for events in
+	 * either {@link EventKeyLayout} are supported.
+	 * 
+	 * @param id
+	 * @return array containing the row key followed by the qualifier
+	 * @throws SiteWhereException
+	 */
+	public static byte[][] getEventKeyFromId(String id) throws SiteWhereException {
+		byte[] decoded;
+		try {
+			decoded = DatatypeConverter.parseBase64Binary(id);
+		} catch (IllegalArgumentException e) {
+			throw new SiteWhereException("Invalid event id: " + id, e);
+		}
+		int rowLength = getEventRowKeyLength();
+		int qualLength = decoded.length - rowLength;
+		if ((qualLength != EventKeyLayout.Seconds.getQualifierLength())
+				&& (qualLength != EventKeyLayout.Milliseconds.getQualifierLength())) {
+			throw new SiteWhereException("Invalid event id: " + id);
+		}
+		byte[] rowkey = new byte[rowLength];
+		byte[] qualifier = new byte[qualLength];
+		System.arraycopy(decoded, 0, rowkey, 0, rowLength);
+		System.arraycopy(decoded, rowLength, qualifier, 0, qualifier.length);
+		return new byte[][] { rowkey, qualifier };
+	}
+
+	/**
+	 * Get the length of event row keys.
+	 * 
+	 * @return
+	 */
+	public static int getEventRowKeyLength() {
+		return getSaltLength() + HBaseSite.SITE_IDENTIFIER_LENGTH + 1
+				+ HBaseDeviceAssignment.ASSIGNMENT_IDENTIFIER_LENGTH + 4;
+	}
+
+	/**
+	 * Get the id of the site an event row belongs to.
+	 * 
+	 * @param rowkey
+	 * @return
+	 */
+	public static Long getSiteIdFromRowKey(byte[] rowkey) {
+		int start = getSaltLength();
+		long siteId = 0;
+		for (int i = start; i < start + HBaseSite.SITE_IDENTIFIER_LENGTH; i++) {
+			siteId = (siteId << 8) | (rowkey[i] & 0xff);
+		}
+		return siteId;
+	}
+
+	/**
+	 * Get the key of the assignment an event row belongs to.
+	 * 
+	 * @param rowkey
+	 * @return
+	 */
+	public static byte[] getAssignmentKeyFromRowKey(byte[] rowkey) {
+		int length = HBaseSite.SITE_IDENTIFIER_LENGTH + 1 + HBaseDeviceAssignment.ASSIGNMENT_IDENTIFIER_LENGTH;
+		byte[] assnKey = new byte[length];
+		System.arraycopy(rowkey, getSaltLength(), assnKey, 0, length);
+		return assnKey;
+	}
 }
\ No newline at end of file
@@ -9,16 +9,27 @@
  */
 package com.sitewhere.hbase.device;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
 
-import org.apache.hadoop.hbase.regionserver.StoreFile.BloomType;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.log4j.Logger;
 
 import com.sitewhere.hbase.ISiteWhereHBase;
 import com.sitewhere.hbase.ISiteWhereHBaseClient;
+import com.sitewhere.hbase.common.CursorSearchResults;
+import com.sitewhere.hbase.common.MarshalUtils;
+import com.sitewhere.hbase.common.PagingMode;
+import com.sitewhere.hbase.common.ScanExecutor;
+import com.sitewhere.hbase.common.ScanProfile;
+import com.sitewhere.hbase.common.ScanProfiles;
 import com.sitewhere.hbase.common.SiteWhereTables;
+import com.sitewhere.hbase.common.TableProfile;
+import com.sitewhere.hbase.encoder.IPayloadMarshaler;
 import com.sitewhere.hbase.uid.IdManager;
-import com.sitewhere.rest.model.device.DeviceEventBatchResponse;
 import com.sitewhere.rest.model.search.SearchResults;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.common.IMetadataProvider;
@@ -56,6 +67,51 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	/** Used to communicate with HBase */
 	private ISiteWhereHBaseClient client;
 
+	/** Optional buffer that writes events asynchronously in batches */
+	private DeviceEventBuffer eventBuffer;
+
+	/** Optional in-memory aggregator that writes assignment state periodically */
+	private DeviceAssignmentStateAggregator assignmentStateAggregator;
+
+	/** Optional in-memory aggregator that maintains measurement rollups */
+	private MeasurementRollupAggregator rollupAggregator;
+
+	/** Optional engine that reports assignments entering or leaving zones */
+	private ZoneGeofenceEngine zoneGeofenceEngine;
+
+	/** Optional executor used to run site-wide event scans in parallel */
+	private ScanExecutor scanExecutor;
+
+	/** Schema settings for the unique id table */
+	private TableProfile uidTableProfile = TableProfile.lookupTable();
+
+	/** Schema settings for the sites table */
+	private TableProfile sitesTableProfile = TableProfile.entityTable();
+
+	/** Schema settings for the events table. Key space is the number of assignments expected per site */
+	private TableProfile eventsTableProfile = TableProfile.eventTable(8, 4096);
+
+	/** Schema settings for the measurements family when event types have their own families */
+	private TableProfile measurementsFamilyProfile = TableProfile.eventTable();
+
+	/** Schema settings for the locations family when event types have their own families */
+	private TableProfile locationsFamilyProfile = TableProfile.eventTable();
+
+	/** Schema settings for the alerts family when event types have their own families */
+	private TableProfile alertsFamilyProfile = TableProfile.eventTable();
+
+	/** Schema settings for the devices table */
+	private TableProfile devicesTableProfile = TableProfile.entityTable();
+
+	/** Schema settings for the measurement rollups table */
+	private TableProfile rollupsTableProfile = TableProfile.eventTable();
+
+	/** Settings for location index table. Key space is the number of leading geohash characters */
+	private TableProfile geoTableProfile = TableProfile.entityTable(8, 32);
+
+	/** Settings for location history index table */
+	private TableProfile locationHistoryTableProfile = TableProfile.eventTable();
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -70,6 +126,34 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 		LOGGER.info("Loading id management...");
 		IdManager.getInstance().load(client);
 
+		LOGGER.info("Preparing " + MarshalUtils.getMarshaler().getName() + " payload marshaler...");
+		MarshalUtils.prepare();
+
+		if (eventBuffer != null) {
+			LOGGER.info("Starting device event buffer...");
+			eventBuffer.start(client);
+		}
+
+		if (assignmentStateAggregator != null) {
+			LOGGER.info("Starting device assignment state aggregator...");
+			assignmentStateAggregator.start(client);
+		}
+
+		if (rollupAggregator != null) {
+			LOGGER.info("Starting measurement rollup aggregator...");
+			rollupAggregator.start(client);
+		}
+
+		if (zoneGeofenceEngine != null) {
+			LOGGER.info("Starting zone geofence engine...");
+			zoneGeofenceEngine.start(client);
+		}
+
+		if (scanExecutor != null) {
+			LOGGER.info("Starting scan executor...");
+			scanExecutor.start();
+		}
+
 		LOGGER.info("HBase device management started.");
 	}
 
@@ -79,10 +163,64 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 * @throws SiteWhereException
 	 */
 	protected void ensureTablesExist() throws SiteWhereException {
-		SiteWhereTables.assureTable(client, ISiteWhereHBase.UID_TABLE_NAME, BloomType.ROW);
-		SiteWhereTables.assureTable(client, ISiteWhereHBase.SITES_TABLE_NAME, BloomType.ROW);
-		SiteWhereTables.assureTable(client, ISiteWhereHBase.EVENTS_TABLE_NAME, BloomType.ROW);
-		SiteWhereTables.assureTable(client, ISiteWhereHBase.DEVICES_TABLE_NAME, BloomType.ROW);
+		SiteWhereTables.assureTable(client, ISiteWhereHBase.UID_TABLE_NAME, uidTableProfile, null);
+		SiteWhereTables.assureTable(client, ISiteWhereHBase.SITES_TABLE_NAME, sitesTableProfile,
+				SiteWhereTables.getSplitKeys(sitesTableProfile.getRegions(), HBaseSite.SITE_IDENTIFIER_LENGTH,
+						sitesTableProfile.getKeySpace()));
+		SiteWhereTables.assureTable(client, ISiteWhereHBase.EVENTS_TABLE_NAME, getEventFamilies(),
+				getEventSplitKeys());
+		SiteWhereTables.assureTable(client, ISiteWhereHBase.DEVICES_TABLE_NAME, devicesTableProfile,
+				SiteWhereTables.getSplitKeys(devicesTableProfile.getRegions(),
+						HBaseDevice.DEVICE_IDENTIFIER_LENGTH, devicesTableProfile.getKeySpace()));
+		if (rollupAggregator != null) {
+			SiteWhereTables.assureTable(client, ISiteWhereHBase.ROLLUPS_TABLE_NAME, rollupsTableProfile,
+					SiteWhereTables.getSplitKeys(rollupsTableProfile.getRegions(),
+							HBaseSite.SITE_IDENTIFIER_LENGTH, rollupsTableProfile.getKeySpace()));
+		}
+		if (DeviceEventSettings.getInstance().isLocationIndex()) {
+			SiteWhereTables.assureTable(client, ISiteWhereHBase.GEO_TABLE_NAME, geoTableProfile,
+					HBaseLocationIndex.getSplitKeys(geoTableProfile.getRegions(),
+							geoTableProfile.getKeySpace()));
+		}
+		if (DeviceEventSettings.getInstance().isLocationHistoryIndex()) {
+			SiteWhereTables.assureTable(client, ISiteWhereHBase.LOCATION_HISTORY_TABLE_NAME,
+					locationHistoryTableProfile, SiteWhereTables.getSplitKeys(
+							locationHistoryTableProfile.getRegions(), HBaseSite.SITE_IDENTIFIER_LENGTH,
+							locationHistoryTableProfile.getKeySpace()));
+		}
+	}
+
+	/**
+	 * Get the column families for the events table. The shared family is always present
+	 * so that rows written before per-type families were enabled can still be read.
+	 * 
+	 * @return
+	 */
+	protected Map<byte[], TableProfile> getEventFamilies() {
+		Map<byte[], TableProfile> families = new TreeMap<byte[], TableProfile>(Bytes.BYTES_COMPARATOR);
+		families.put(ISiteWhereHBase.FAMILY_ID, eventsTableProfile);
+		if (DeviceEventSettings.getInstance().isFamilyPerType()) {
+			families.put(HBaseDeviceEvent.FAMILY_MEASUREMENTS, measurementsFamilyProfile);
+			families.put(HBaseDeviceEvent.FAMILY_LOCATIONS, locationsFamilyProfile);
+			families.put(HBaseDeviceEvent.FAMILY_ALERTS, alertsFamilyProfile);
+		}
+		return families;
+	}
+
+	/**
+	 * Get split points for the events table. Salted tables are split on salt buckets,
+	 * otherwise the table is split on site and assignment identifiers, using the key space
+	 * of the sites table as the expected number of sites.
+	 * 
+	 * @return
+	 */
+	protected byte[][] getEventSplitKeys() {
+		DeviceEventSettings settings = DeviceEventSettings.getInstance();
+		if (settings.isSalted()) {
+			return SiteWhereTables.getSplitKeys(settings.getSaltBuckets(), 1, settings.getSaltBuckets());
+		}
+		return HBaseDeviceEvent.getSplitKeys(eventsTableProfile.getRegions(), sitesTableProfile.getKeySpace(),
+				eventsTableProfile.getKeySpace());
 	}
 
 	/*
@@ -91,6 +229,24 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 * @see com.sitewhere.spi.ISiteWhereLifecycle#stop()
 	 */
 	public void stop() throws SiteWhereException {
+		if (eventBuffer != null) {
+			LOGGER.info("Flushing device event buffer...");
+			eventBuffer.stop();
+		}
+		if (assignmentStateAggregator != null) {
+			LOGGER.info("Flushing device assignment state...");
+			assignmentStateAggregator.stop();
+		}
+		if (rollupAggregator != null) {
+			LOGGER.info("Flushing measurement rollups...");
+			rollupAggregator.stop();
+		}
+		if (zoneGeofenceEngine != null) {
+			zoneGeofenceEngine.stop();
+		}
+		if (scanExecutor != null) {
+			scanExecutor.stop();
+		}
 		LOGGER.info("HBase device management stopped.");
 	}
 
@@ -137,7 +293,7 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 		if (token == null) {
 			return null;
 		}
-		return HBaseDeviceAssignment.getDeviceAssignment(client, token);
+		return applyAssignmentState(HBaseDeviceAssignment.getDeviceAssignment(client, token));
 	}
 
 	/*
@@ -151,6 +307,22 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 		return HBaseDevice.listDevices(client, includeDeleted, criteria);
 	}
 
+	/**
+	 * List devices a page at a time using a resume token from the previous page rather
+	 * than a page number.
+	 * 
+	 * @param includeDeleted
+	 * @param resumeToken
+	 *            token from the previous page or null for the first page
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public CursorSearchResults<IDevice> listDevices(boolean includeDeleted, String resumeToken,
+			ISearchCriteria criteria) throws SiteWhereException {
+		return HBaseDevice.listDevices(client, includeDeleted, resumeToken, criteria);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -192,7 +364,7 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 * .String)
 	 */
 	public IDeviceAssignment getDeviceAssignmentByToken(String token) throws SiteWhereException {
-		return HBaseDeviceAssignment.getDeviceAssignment(client, token);
+		return applyAssignmentState(HBaseDeviceAssignment.getDeviceAssignment(client, token));
 	}
 
 	/*
@@ -203,7 +375,14 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 * boolean)
 	 */
 	public IDeviceAssignment deleteDeviceAssignment(String token, boolean force) throws SiteWhereException {
-		return HBaseDeviceAssignment.deleteDeviceAssignment(client, token, force);
+		if ((force) && (assignmentStateAggregator != null)) {
+			assignmentStateAggregator.remove(token);
+		}
+		if (zoneGeofenceEngine != null) {
+			zoneGeofenceEngine.remove(token);
+		}
+		IDeviceAssignment deleted = HBaseDeviceAssignment.deleteDeviceAssignment(client, token, force);
+		return (force) ? deleted : refreshAssignmentState(deleted);
 	}
 
 	/*
@@ -237,7 +416,8 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 */
 	public IDeviceAssignment updateDeviceAssignmentMetadata(String token, IMetadataProvider metadata)
 			throws SiteWhereException {
-		return HBaseDeviceAssignment.updateDeviceAssignmentMetadata(client, token, metadata);
+		return refreshAssignmentState(
+				HBaseDeviceAssignment.updateDeviceAssignmentMetadata(client, token, metadata));
 	}
 
 	/*
@@ -249,7 +429,8 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 */
 	public IDeviceAssignment updateDeviceAssignmentStatus(String token, DeviceAssignmentStatus status)
 			throws SiteWhereException {
-		return HBaseDeviceAssignment.updateDeviceAssignmentStatus(client, token, status);
+		return refreshAssignmentState(
+				HBaseDeviceAssignment.updateDeviceAssignmentStatus(client, token, status));
 	}
 
 	/*
@@ -261,9 +442,54 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 */
 	public IDeviceAssignment updateDeviceAssignmentState(String token, IDeviceEventBatch batch)
 			throws SiteWhereException {
+		if (assignmentStateAggregator != null) {
+			return assignmentStateAggregator.update(token, batch);
+		}
 		return HBaseDeviceAssignment.updateDeviceAssignmentState(client, token, batch);
 	}
 
+	/**
+	 * Apply state held by the aggregator (if configured) to an assignment read from HBase.
+	 * 
+	 * @param assignment
+	 * @return
+	 */
+	protected IDeviceAssignment applyAssignmentState(IDeviceAssignment assignment) {
+		if ((assignment != null) && (assignmentStateAggregator != null)) {
+			assignmentStateAggregator.applyState(assignment);
+		}
+		return assignment;
+	}
+
+	/**
+	 * Replace the assignment cached by the aggregator (if configured) after it has been
+	 * updated in HBase and apply the state held by the aggregator.
+	 * 
+	 * @param assignment
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected IDeviceAssignment refreshAssignmentState(IDeviceAssignment assignment)
+			throws SiteWhereException {
+		if ((assignment != null) && (assignmentStateAggregator != null)) {
+			return assignmentStateAggregator.refresh(assignment);
+		}
+		return assignment;
+	}
+
+	/**
+	 * Apply state held by the aggregator (if configured) to assignments read from HBase.
+	 * 
+	 * @param results
+	 * @return
+	 */
+	protected <S extends SearchResults<IDeviceAssignment>> S applyAssignmentState(S results) {
+		if (assignmentStateAggregator != null) {
+			assignmentStateAggregator.applyState(results.getResults());
+		}
+		return results;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -273,16 +499,14 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 */
 	public IDeviceEventBatchResponse addDeviceEventBatch(String assignmentToken, IDeviceEventBatch batch)
 			throws SiteWhereException {
-		DeviceEventBatchResponse response = new DeviceEventBatchResponse();
 		IDeviceAssignment assignment = getDeviceAssignmentByToken(assignmentToken);
-		for (IDeviceMeasurementsCreateRequest measurements : batch.getMeasurements()) {
-			response.getCreatedMeasurements().add(addDeviceMeasurements(assignment, measurements));
-		}
-		for (IDeviceLocationCreateRequest location : batch.getLocations()) {
-			response.getCreatedLocations().add(addDeviceLocation(assignment, location));
+		IDeviceEventBatchResponse response =
+				HBaseDeviceEvent.createDeviceEventBatch(client, assignment, batch);
+		for (IDeviceMeasurements measurements : response.getCreatedMeasurements()) {
+			addRollups(measurements);
 		}
-		for (IDeviceAlertCreateRequest alert : batch.getAlerts()) {
-			response.getCreatedAlerts().add(addDeviceAlert(assignment, alert));
+		for (IDeviceLocation location : response.getCreatedLocations()) {
+			checkZones(assignment, location, false);
 		}
 		return response;
 	}
@@ -294,7 +518,10 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 * com.sitewhere.spi.device.IDeviceManagement#endDeviceAssignment(java.lang.String)
 	 */
 	public IDeviceAssignment endDeviceAssignment(String token) throws SiteWhereException {
-		return HBaseDeviceAssignment.endDeviceAssignment(client, token);
+		if (zoneGeofenceEngine != null) {
+			zoneGeofenceEngine.remove(token);
+		}
+		return refreshAssignmentState(HBaseDeviceAssignment.endDeviceAssignment(client, token));
 	}
 
 	/*
@@ -306,7 +533,8 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 */
 	public SearchResults<IDeviceAssignment> getDeviceAssignmentHistory(String hardwareId,
 			ISearchCriteria criteria) throws SiteWhereException {
-		return HBaseDevice.getDeviceAssignmentHistory(client, hardwareId, criteria);
+		return applyAssignmentState(
+				HBaseDevice.getDeviceAssignmentHistory(client, hardwareId, criteria));
 	}
 
 	/*
@@ -318,7 +546,25 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 */
 	public SearchResults<IDeviceAssignment> getDeviceAssignmentsForSite(String siteToken,
 			ISearchCriteria criteria) throws SiteWhereException {
-		return HBaseSite.listDeviceAssignmentsForSite(client, siteToken, criteria);
+		return applyAssignmentState(
+				HBaseSite.listDeviceAssignmentsForSite(client, siteToken, criteria));
+	}
+
+	/**
+	 * List device assignments for a site a page at a time using a resume token from the
+	 * previous page rather than a page number.
+	 * 
+	 * @param siteToken
+	 * @param resumeToken
+	 *            token from the previous page or null for the first page
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public CursorSearchResults<IDeviceAssignment> getDeviceAssignmentsForSite(String siteToken,
+			String resumeToken, ISearchCriteria criteria) throws SiteWhereException {
+		return applyAssignmentState(
+				HBaseSite.listDeviceAssignmentsForSite(client, siteToken, resumeToken, criteria));
 	}
 
 	/*
@@ -329,7 +575,11 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 */
 	public SearchResults<IDeviceAssignment> getDeviceAssignmentsNear(double latitude, double longitude,
 			double maxDistance, ISearchCriteria criteria) throws SiteWhereException {
-		throw new SiteWhereException("Geospatial queries not avaliable on HBase version yet.");
+		if (!DeviceEventSettings.getInstance().isLocationIndex()) {
+			throw new SiteWhereException("Location index is not enabled.");
+		}
+		return applyAssignmentState(HBaseLocationIndex.getDeviceAssignmentsNear(client, latitude, longitude,
+				maxDistance, criteria));
 	}
 
 	/*
@@ -342,7 +592,101 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 */
 	public IDeviceMeasurements addDeviceMeasurements(IDeviceAssignment assignment,
 			IDeviceMeasurementsCreateRequest measurements) throws SiteWhereException {
-		return HBaseDeviceEvent.createDeviceMeasurements(client, assignment, measurements);
+		if (eventBuffer != null) {
+			return addRollups(eventBuffer.write(HBaseDeviceEvent.prepareDeviceMeasurements(assignment,
+					measurements)));
+		}
+		return addRollups(HBaseDeviceEvent.createDeviceMeasurements(client, assignment, measurements));
+	}
+
+	/**
+	 * Add device measurements and return a future that completes when they have been
+	 * written. Rollups are updated once the write succeeds. If no event buffer is
+	 * configured, the write happens synchronously.
+	 * 
+	 * @param assignment
+	 * @param measurements
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public Future<IDeviceMeasurements> addDeviceMeasurementsAsync(IDeviceAssignment assignment,
+			IDeviceMeasurementsCreateRequest measurements) throws SiteWhereException {
+		if (eventBuffer != null) {
+			DeviceEventWrite<IDeviceMeasurements> write =
+					HBaseDeviceEvent.prepareDeviceMeasurements(assignment, measurements);
+			return eventBuffer.add(write, new DeviceEventBuffer.WriteListener<IDeviceMeasurements>() {
+
+				public void written(IDeviceMeasurements event) throws SiteWhereException {
+					addRollups(event);
+				}
+			});
+		}
+		return DeviceEventBuffer.completed(addRollups(HBaseDeviceEvent.createDeviceMeasurements(client,
+				assignment, measurements)));
+	}
+
+	/**
+	 * Add measurements to the rollups held by the aggregator (if configured).
+	 * 
+	 * @param measurements
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected IDeviceMeasurements addRollups(IDeviceMeasurements measurements) throws SiteWhereException {
+		if (rollupAggregator != null) {
+			rollupAggregator.add(measurements);
+		}
+		return measurements;
+	}
+
+	/**
+	 * List rollups of a measurement for an assignment at the given resolution. Values
+	 * received since the last aggregator flush are not included.
+	 * 
+	 * @param assignmentToken
+	 * @param name
+	 *            measurement name
+	 * @param interval
+	 * @param startDate
+	 *            start of the series or null for the first recorded period
+	 * @param endDate
+	 *            end of the series or null for the last recorded period
+	 * @return rollups in ascending period order
+	 * @throws SiteWhereException
+	 */
+	public List<MeasurementRollup> listMeasurementRollups(String assignmentToken, String name,
+			RollupInterval interval, Date startDate, Date endDate) throws SiteWhereException {
+		if (rollupAggregator == null) {
+			throw new SiteWhereException("Measurement rollups are not enabled.");
+		}
+		return HBaseMeasurementRollup.listMeasurementRollups(client, assignmentToken, name, interval,
+				startDate, endDate);
+	}
+
+	/**
+	 * List locations for a site within a bounding box during a time range, most recent
+	 * first. Only locations stored while the location history index was enabled are
+	 * included.
+	 * 
+	 * @param siteToken
+	 * @param minLatitude
+	 * @param minLongitude
+	 * @param maxLatitude
+	 * @param maxLongitude
+	 *            may be less than the minimum if the box crosses the antimeridian
+	 * @param criteria
+	 *            criteria with a required start date and an optional end date
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public SearchResults<IDeviceLocation> listDeviceLocationsInArea(String siteToken, double minLatitude,
+			double minLongitude, double maxLatitude, double maxLongitude, IDateRangeSearchCriteria criteria)
+			throws SiteWhereException {
+		if (!DeviceEventSettings.getInstance().isLocationHistoryIndex()) {
+			throw new SiteWhereException("Location history index is not enabled.");
+		}
+		return HBaseLocationHistoryIndex.listDeviceLocationsInArea(client, scanExecutor, siteToken,
+				minLatitude, minLongitude, maxLatitude, maxLongitude, criteria);
 	}
 
 	/*
@@ -357,6 +701,37 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 		return HBaseDeviceEvent.listDeviceMeasurements(client, token, criteria);
 	}
 
+	/**
+	 * List measurements for an assignment in the given order. Listing oldest first walks
+	 * stored time buckets from oldest to newest without reading the whole range.
+	 * 
+	 * @param assignmentToken
+	 * @param criteria
+	 * @param order
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public SearchResults<IDeviceMeasurements> listDeviceMeasurements(String assignmentToken,
+			IDateRangeSearchCriteria criteria, EventOrder order) throws SiteWhereException {
+		return HBaseDeviceEvent.listDeviceMeasurements(client, assignmentToken, criteria, order);
+	}
+
+	/**
+	 * List measurements for an assignment a page at a time using a resume token from the
+	 * previous page rather than a page number.
+	 * 
+	 * @param assignmentToken
+	 * @param resumeToken
+	 *            token from the previous page or null for the first page
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public CursorSearchResults<IDeviceMeasurements> listDeviceMeasurements(String assignmentToken,
+			String resumeToken, IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return HBaseDeviceEvent.listDeviceMeasurements(client, assignmentToken, resumeToken, criteria);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -366,7 +741,7 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 */
 	public SearchResults<IDeviceMeasurements> listDeviceMeasurementsForSite(String siteToken,
 			IDateRangeSearchCriteria criteria) throws SiteWhereException {
-		return HBaseDeviceEvent.listDeviceMeasurementsForSite(client, siteToken, criteria);
+		return HBaseDeviceEvent.listDeviceMeasurementsForSite(client, scanExecutor, siteToken, criteria);
 	}
 
 	/*
@@ -379,7 +754,64 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 */
 	public IDeviceLocation addDeviceLocation(IDeviceAssignment assignment,
 			IDeviceLocationCreateRequest request) throws SiteWhereException {
-		return HBaseDeviceEvent.createDeviceLocation(client, assignment, request);
+		if (eventBuffer != null) {
+			return checkZones(assignment,
+					eventBuffer.write(HBaseDeviceEvent.prepareDeviceLocation(assignment, request)), false);
+		}
+		return checkZones(assignment, HBaseDeviceEvent.createDeviceLocation(client, assignment, request),
+				false);
+	}
+
+	/**
+	 * Add a device location and return a future that completes when it has been written.
+	 * Zones are checked once the write succeeds. If no event buffer is configured, the
+	 * write happens synchronously.
+	 * 
+	 * @param assignment
+	 * @param request
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public Future<IDeviceLocation> addDeviceLocationAsync(final IDeviceAssignment assignment,
+			IDeviceLocationCreateRequest request) throws SiteWhereException {
+		if (eventBuffer != null) {
+			DeviceEventWrite<IDeviceLocation> write =
+					HBaseDeviceEvent.prepareDeviceLocation(assignment, request);
+			return eventBuffer.add(write, new DeviceEventBuffer.WriteListener<IDeviceLocation>() {
+
+				public void written(IDeviceLocation event) throws SiteWhereException {
+					checkZones(assignment, event, true);
+				}
+			});
+		}
+		return DeviceEventBuffer.completed(checkZones(assignment, HBaseDeviceEvent.createDeviceLocation(
+				client, assignment, request), false));
+	}
+
+	/**
+	 * Test a location that has been stored against zones for the site (if an engine is
+	 * configured) and add alerts for zones the assignment has entered or left.
+	 * 
+	 * @param assignment
+	 * @param location
+	 * @param async
+	 *            indicates alerts are buffered without waiting for them to be written, as
+	 *            required when called from a flusher thread
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected IDeviceLocation checkZones(IDeviceAssignment assignment, IDeviceLocation location, boolean async)
+			throws SiteWhereException {
+		if (zoneGeofenceEngine != null) {
+			for (IDeviceAlertCreateRequest alert : zoneGeofenceEngine.evaluate(assignment, location)) {
+				if (async) {
+					addDeviceAlertAsync(assignment, alert);
+				} else {
+					addDeviceAlert(assignment, alert);
+				}
+			}
+		}
+		return location;
 	}
 
 	/*
@@ -394,6 +826,37 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 		return HBaseDeviceEvent.listDeviceLocations(client, assignmentToken, criteria);
 	}
 
+	/**
+	 * List locations for an assignment in the given order. Listing oldest first walks
+	 * stored time buckets from oldest to newest without reading the whole range.
+	 * 
+	 * @param assignmentToken
+	 * @param criteria
+	 * @param order
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public SearchResults<IDeviceLocation> listDeviceLocations(String assignmentToken,
+			IDateRangeSearchCriteria criteria, EventOrder order) throws SiteWhereException {
+		return HBaseDeviceEvent.listDeviceLocations(client, assignmentToken, criteria, order);
+	}
+
+	/**
+	 * List locations for an assignment a page at a time using a resume token from the
+	 * previous page rather than a page number.
+	 * 
+	 * @param assignmentToken
+	 * @param resumeToken
+	 *            token from the previous page or null for the first page
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public CursorSearchResults<IDeviceLocation> listDeviceLocations(String assignmentToken, String resumeToken,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return HBaseDeviceEvent.listDeviceLocations(client, assignmentToken, resumeToken, criteria);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -403,7 +866,7 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 */
 	public SearchResults<IDeviceLocation> listDeviceLocationsForSite(String siteToken,
 			IDateRangeSearchCriteria criteria) throws SiteWhereException {
-		return HBaseDeviceEvent.listDeviceLocationsForSite(client, siteToken, criteria);
+		return HBaseDeviceEvent.listDeviceLocationsForSite(client, scanExecutor, siteToken, criteria);
 	}
 
 	/*
@@ -414,7 +877,7 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 */
 	public SearchResults<IDeviceLocation> listDeviceLocations(List<String> assignmentTokens,
 			IDateRangeSearchCriteria criteria) throws SiteWhereException {
-		throw new SiteWhereException("Not implemented yet for HBase device management.");
+		return HBaseDeviceEvent.listDeviceLocations(client, scanExecutor, assignmentTokens, criteria);
 	}
 
 	/*
@@ -426,9 +889,29 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 */
 	public IDeviceAlert addDeviceAlert(IDeviceAssignment assignment, IDeviceAlertCreateRequest request)
 			throws SiteWhereException {
+		if (eventBuffer != null) {
+			return eventBuffer.write(HBaseDeviceEvent.prepareDeviceAlert(assignment, request));
+		}
 		return HBaseDeviceEvent.createDeviceAlert(client, assignment, request);
 	}
 
+	/**
+	 * Add a device alert and return a future that completes when it has been written. If
+	 * no event buffer is configured, the write happens synchronously.
+	 * 
+	 * @param assignment
+	 * @param request
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public Future<IDeviceAlert> addDeviceAlertAsync(IDeviceAssignment assignment,
+			IDeviceAlertCreateRequest request) throws SiteWhereException {
+		if (eventBuffer != null) {
+			return eventBuffer.add(HBaseDeviceEvent.prepareDeviceAlert(assignment, request));
+		}
+		return DeviceEventBuffer.completed(HBaseDeviceEvent.createDeviceAlert(client, assignment, request));
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -440,6 +923,37 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 		return HBaseDeviceEvent.listDeviceAlerts(client, assignmentToken, criteria);
 	}
 
+	/**
+	 * List alerts for an assignment in the given order. Listing oldest first walks
+	 * stored time buckets from oldest to newest without reading the whole range.
+	 * 
+	 * @param assignmentToken
+	 * @param criteria
+	 * @param order
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public SearchResults<IDeviceAlert> listDeviceAlerts(String assignmentToken,
+			IDateRangeSearchCriteria criteria, EventOrder order) throws SiteWhereException {
+		return HBaseDeviceEvent.listDeviceAlerts(client, assignmentToken, criteria, order);
+	}
+
+	/**
+	 * List alerts for an assignment a page at a time using a resume token from the
+	 * previous page rather than a page number.
+	 * 
+	 * @param assignmentToken
+	 * @param resumeToken
+	 *            token from the previous page or null for the first page
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public CursorSearchResults<IDeviceAlert> listDeviceAlerts(String assignmentToken, String resumeToken,
+			IDateRangeSearchCriteria criteria) throws SiteWhereException {
+		return HBaseDeviceEvent.listDeviceAlerts(client, assignmentToken, resumeToken, criteria);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -449,7 +963,43 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 */
 	public SearchResults<IDeviceAlert> listDeviceAlertsForSite(String siteToken,
 			IDateRangeSearchCriteria criteria) throws SiteWhereException {
-		return HBaseDeviceEvent.listDeviceAlertsForSite(client, siteToken, criteria);
+		return HBaseDeviceEvent.listDeviceAlertsForSite(client, scanExecutor, siteToken, criteria);
+	}
+
+	/**
+	 * Get the latest measurements for each of a list of assignments.
+	 * 
+	 * @param assignmentTokens
+	 * @return latest measurements by assignment token
+	 * @throws SiteWhereException
+	 */
+	public Map<String, IDeviceMeasurements> getLatestDeviceMeasurements(List<String> assignmentTokens)
+			throws SiteWhereException {
+		return HBaseDeviceEvent.getLatestDeviceMeasurements(client, assignmentTokens);
+	}
+
+	/**
+	 * Get the latest location for each of a list of assignments.
+	 * 
+	 * @param assignmentTokens
+	 * @return latest location by assignment token
+	 * @throws SiteWhereException
+	 */
+	public Map<String, IDeviceLocation> getLatestDeviceLocations(List<String> assignmentTokens)
+			throws SiteWhereException {
+		return HBaseDeviceEvent.getLatestDeviceLocations(client, assignmentTokens);
+	}
+
+	/**
+	 * Get the latest alert for each of a list of assignments.
+	 * 
+	 * @param assignmentTokens
+	 * @return latest alert by assignment token
+	 * @throws SiteWhereException
+	 */
+	public Map<String, IDeviceAlert> getLatestDeviceAlerts(List<String> assignmentTokens)
+			throws SiteWhereException {
+		return HBaseDeviceEvent.getLatestDeviceAlerts(client, assignmentTokens);
 	}
 
 	/*
@@ -502,6 +1052,21 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 		return HBaseSite.listSites(client, criteria);
 	}
 
+	/**
+	 * List sites a page at a time using a resume token from the previous page rather than
+	 * a page number.
+	 * 
+	 * @param resumeToken
+	 *            token from the previous page or null for the first page
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public CursorSearchResults<ISite> listSites(String resumeToken, ISearchCriteria criteria)
+			throws SiteWhereException {
+		return HBaseSite.listSites(client, resumeToken, criteria);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -510,7 +1075,7 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 * ISite, com.sitewhere.spi.device.request.IZoneCreateRequest)
 	 */
 	public IZone createZone(ISite site, IZoneCreateRequest request) throws SiteWhereException {
-		return HBaseZone.createZone(client, site, request);
+		return zoneChanged(HBaseZone.createZone(client, site, request));
 	}
 
 	/*
@@ -520,7 +1085,7 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 * com.sitewhere.spi.device.request.IZoneCreateRequest)
 	 */
 	public IZone updateZone(String token, IZoneCreateRequest request) throws SiteWhereException {
-		return HBaseZone.updateZone(client, token, request);
+		return zoneChanged(HBaseZone.updateZone(client, token, request));
 	}
 
 	/*
@@ -543,6 +1108,22 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 		return HBaseSite.listZonesForSite(client, siteToken, criteria);
 	}
 
+	/**
+	 * List zones for a site a page at a time using a resume token from the previous page
+	 * rather than a page number.
+	 * 
+	 * @param siteToken
+	 * @param resumeToken
+	 *            token from the previous page or null for the first page
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public CursorSearchResults<IZone> listZones(String siteToken, String resumeToken, ISearchCriteria criteria)
+			throws SiteWhereException {
+		return HBaseSite.listZonesForSite(client, siteToken, resumeToken, criteria);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -550,7 +1131,20 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	 * boolean)
 	 */
 	public IZone deleteZone(String zoneToken, boolean force) throws SiteWhereException {
-		return HBaseZone.deleteZone(client, zoneToken, force);
+		return zoneChanged(HBaseZone.deleteZone(client, zoneToken, force));
+	}
+
+	/**
+	 * Indicate to the geofence engine (if configured) that zones for a site have changed.
+	 * 
+	 * @param zone
+	 * @return
+	 */
+	protected IZone zoneChanged(IZone zone) {
+		if ((zoneGeofenceEngine != null) && (zone != null)) {
+			zoneGeofenceEngine.invalidate(zone.getSiteToken());
+		}
+		return zone;
 	}
 
 	public ISiteWhereHBaseClient getClient() {
@@ -560,4 +1154,260 @@ public class HBaseDeviceManagement implements IDeviceManagement {
 	public void setClient(ISiteWhereHBaseClient client) {
 		this.client = client;
 	}
+
+	public DeviceEventBuffer getEventBuffer() {
+		return eventBuffer;
+	}
+
+	public void setEventBuffer(DeviceEventBuffer eventBuffer) {
+		this.eventBuffer = eventBuffer;
+	}
+
+	public DeviceAssignmentStateAggregator getAssignmentStateAggregator() {
+		return assignmentStateAggregator;
+	}
+
+	public void setAssignmentStateAggregator(DeviceAssignmentStateAggregator assignmentStateAggregator) {
+		this.assignmentStateAggregator = assignmentStateAggregator;
+	}
+
+	public Map<String, ScanProfile> getScanProfiles() {
+		return ScanProfiles.getInstance().getProfiles();
+	}
+
+	public void setScanProfiles(Map<String, ScanProfile> scanProfiles) {
+		ScanProfiles.getInstance().putProfiles(scanProfiles);
+	}
+
+	public MeasurementRollupAggregator getRollupAggregator() {
+		return rollupAggregator;
+	}
+
+	public void setRollupAggregator(MeasurementRollupAggregator rollupAggregator) {
+		this.rollupAggregator = rollupAggregator;
+	}
+
+	public ZoneGeofenceEngine getZoneGeofenceEngine() {
+		return zoneGeofenceEngine;
+	}
+
+	public void setZoneGeofenceEngine(ZoneGeofenceEngine zoneGeofenceEngine) {
+		this.zoneGeofenceEngine = zoneGeofenceEngine;
+	}
+
+	public ScanExecutor getScanExecutor() {
+		return scanExecutor;
+	}
+
+	public void setScanExecutor(ScanExecutor scanExecutor) {
+		this.scanExecutor = scanExecutor;
+	}
+
+	public EventKeyLayout getEventKeyLayout() {
+		return DeviceEventSettings.getInstance().getKeyLayout();
+	}
+
+	public void setEventKeyLayout(EventKeyLayout eventKeyLayout) {
+		DeviceEventSettings.getInstance().setKeyLayout(eventKeyLayout);
+	}
+
+	public int getEventSaltBuckets() {
+		return DeviceEventSettings.getInstance().getSaltBuckets();
+	}
+
+	public void setEventSaltBuckets(int eventSaltBuckets) {
+		DeviceEventSettings.getInstance().setSaltBuckets(eventSaltBuckets);
+	}
+
+	public EventEncoding getEventEncoding() {
+		return DeviceEventSettings.getInstance().getEncoding();
+	}
+
+	public void setEventEncoding(EventEncoding eventEncoding) {
+		DeviceEventSettings.getInstance().setEncoding(eventEncoding);
+	}
+
+	public IPayloadMarshaler getPayloadMarshaler() {
+		return MarshalUtils.getMarshaler();
+	}
+
+	public void setPayloadMarshaler(IPayloadMarshaler payloadMarshaler) {
+		MarshalUtils.setMarshaler(payloadMarshaler);
+	}
+
+	public TableProfile getUidTableProfile() {
+		return uidTableProfile;
+	}
+
+	public void setUidTableProfile(TableProfile uidTableProfile) {
+		this.uidTableProfile = uidTableProfile;
+	}
+
+	public TableProfile getSitesTableProfile() {
+		return sitesTableProfile;
+	}
+
+	public void setSitesTableProfile(TableProfile sitesTableProfile) {
+		this.sitesTableProfile = sitesTableProfile;
+	}
+
+	public TableProfile getRollupsTableProfile() {
+		return rollupsTableProfile;
+	}
+
+	public void setRollupsTableProfile(TableProfile rollupsTableProfile) {
+		this.rollupsTableProfile = rollupsTableProfile;
+	}
+
+	public TableProfile getGeoTableProfile() {
+		return geoTableProfile;
+	}
+
+	public void setGeoTableProfile(TableProfile geoTableProfile) {
+		this.geoTableProfile = geoTableProfile;
+	}
+
+	public TableProfile getLocationHistoryTableProfile() {
+		return locationHistoryTableProfile;
+	}
+
+	public void setLocationHistoryTableProfile(TableProfile locationHistoryTableProfile) {
+		this.locationHistoryTableProfile = locationHistoryTableProfile;
+	}
+
+	public TableProfile getEventsTableProfile() {
+		return eventsTableProfile;
+	}
+
+	public void setEventsTableProfile(TableProfile eventsTableProfile) {
+		this.eventsTableProfile = eventsTableProfile;
+	}
+
+	public boolean isEventFamilyPerType() {
+		return DeviceEventSettings.getInstance().isFamilyPerType();
+	}
+
+	public void setEventFamilyPerType(boolean eventFamilyPerType) {
+		DeviceEventSettings.getInstance().setFamilyPerType(eventFamilyPerType);
+	}
+
+	public boolean isLegacyEventFamilyReads() {
+		return DeviceEventSettings.getInstance().isLegacyFamilyReads();
+	}
+
+	public void setLegacyEventFamilyReads(boolean legacyEventFamilyReads) {
+		DeviceEventSettings.getInstance().setLegacyFamilyReads(legacyEventFamilyReads);
+	}
+
+	public boolean isEventCounts() {
+		return DeviceEventSettings.getInstance().isEventCounts();
+	}
+
+	public void setEventCounts(boolean eventCounts) {
+		DeviceEventSettings.getInstance().setEventCounts(eventCounts);
+	}
+
+	public boolean isEventTimestamps() {
+		return DeviceEventSettings.getInstance().isEventTimestamps();
+	}
+
+	public void setEventTimestamps(boolean eventTimestamps) {
+		DeviceEventSettings.getInstance().setEventTimestamps(eventTimestamps);
+	}
+
+	public boolean isEventTimeRangeEndBound() {
+		return DeviceEventSettings.getInstance().isTimeRangeEndBound();
+	}
+
+	public void setEventTimeRangeEndBound(boolean eventTimeRangeEndBound) {
+		DeviceEventSettings.getInstance().setTimeRangeEndBound(eventTimeRangeEndBound);
+	}
+
+	public int getEventAscendingWindowBuckets() {
+		return DeviceEventSettings.getInstance().getAscendingWindowBuckets();
+	}
+
+	public void setEventAscendingWindowBuckets(int eventAscendingWindowBuckets) {
+		DeviceEventSettings.getInstance().setAscendingWindowBuckets(eventAscendingWindowBuckets);
+	}
+
+	public int getEventNodeId() {
+		return DeviceEventSettings.getInstance().getNodeId();
+	}
+
+	public void setEventNodeId(int eventNodeId) {
+		DeviceEventSettings.getInstance().setNodeId(eventNodeId);
+	}
+
+	public int getEventMaxOpenCursors() {
+		return DeviceEventSettings.getInstance().getMaxOpenCursors();
+	}
+
+	public void setEventMaxOpenCursors(int eventMaxOpenCursors) {
+		DeviceEventSettings.getInstance().setMaxOpenCursors(eventMaxOpenCursors);
+	}
+
+	public boolean isLatestEvents() {
+		return DeviceEventSettings.getInstance().isLatestEvents();
+	}
+
+	public void setLatestEvents(boolean latestEvents) {
+		DeviceEventSettings.getInstance().setLatestEvents(latestEvents);
+	}
+
+	public boolean isLocationIndex() {
+		return DeviceEventSettings.getInstance().isLocationIndex();
+	}
+
+	public void setLocationIndex(boolean locationIndex) {
+		DeviceEventSettings.getInstance().setLocationIndex(locationIndex);
+	}
+
+	public boolean isLocationHistoryIndex() {
+		return DeviceEventSettings.getInstance().isLocationHistoryIndex();
+	}
+
+	public void setLocationHistoryIndex(boolean locationHistoryIndex) {
+		DeviceEventSettings.getInstance().setLocationHistoryIndex(locationHistoryIndex);
+	}
+
+	public PagingMode getEventPagingMode() {
+		return DeviceEventSettings.getInstance().getPagingMode();
+	}
+
+	public void setEventPagingMode(PagingMode eventPagingMode) {
+		DeviceEventSettings.getInstance().setPagingMode(eventPagingMode);
+	}
+
+	public TableProfile getMeasurementsFamilyProfile() {
+		return measurementsFamilyProfile;
+	}
+
+	public void setMeasurementsFamilyProfile(TableProfile measurementsFamilyProfile) {
+		this.measurementsFamilyProfile = measurementsFamilyProfile;
+	}
+
+	public TableProfile getLocationsFamilyProfile() {
+		return locationsFamilyProfile;
+	}
+
+	public void setLocationsFamilyProfile(TableProfile locationsFamilyProfile) {
+		this.locationsFamilyProfile = locationsFamilyProfile;
+	}
+
+	public TableProfile getAlertsFamilyProfile() {
+		return alertsFamilyProfile;
+	}
+
+	public void setAlertsFamilyProfile(TableProfile alertsFamilyProfile) {
+		this.alertsFamilyProfile = alertsFamilyProfile;
+	}
+
+	public TableProfile getDevicesTableProfile() {
+		return devicesTableProfile;
+	}
+
+	public void setDevicesTableProfile(TableProfile devicesTableProfile) {
+		this.devicesTableProfile = devicesTableProfile;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,350 @@
+/*
+ * HBaseLocationHistoryIndex.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.sitewhere.hbase.ISiteWhereHBase;
+import com.sitewhere.hbase.ISiteWhereHBaseClient;
+import com.sitewhere.hbase.common.EstimatedSearchResults;
+import com.sitewhere.hbase.common.GeoHash;
+import com.sitewhere.hbase.common.HBaseUtils;
+import com.sitewhere.hbase.common.MarshalUtils;
+import com.sitewhere.hbase.common.Pager;
+import com.sitewhere.hbase.common.PagingMode;
+import com.sitewhere.hbase.common.ScanExecutor;
+import com.sitewhere.hbase.common.ScanProfiles;
+import com.sitewhere.hbase.uid.IdManager;
+import com.sitewhere.rest.model.device.DeviceLocation;
+import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.SiteWhereSystemException;
+import com.sitewhere.spi.device.IDeviceLocation;
+import com.sitewhere.spi.error.ErrorCode;
+import com.sitewhere.spi.error.ErrorLevel;
+import com.sitewhere.spi.search.IDateRangeSearchCriteria;
+
+/**
+ * HBase specifics for the index of location events by site, time and position. The row
+ * key is the site identifier, a day bucket, the geohash of the location, the event time
+ * and the assignment key, so the locations of a site in a cell during a day are a
+ * contiguous range of rows. Each row holds the latitude and longitude along with the
+ * event itself, so queries are answered from the index without reading the events table.
+ * 
+ * @author Derek
+ */
+public class HBaseLocationHistoryIndex {
+
+	/** Length of a time bucket in milliseconds */
+	public static final long BUCKET_INTERVAL = 24 * 60 * 60 * 1000L;
+
+	/** Maximum number of range scans (buckets times cells) for a query */
+	public static final int MAX_QUERY_SCANS = 512;
+
+	/**
+	 * Add a put that indexes a location event if the location history index is enabled.
+	 * 
+	 * @param write
+	 * @param assnKey
+	 * @param time
+	 * @param location
+	 * @throws SiteWhereException
+	 */
+	public static void addLocation(DeviceEventWrite<?> write, byte[] assnKey, long time,
+			DeviceLocation location) throws SiteWhereException {
+		if ((!DeviceEventSettings.getInstance().isLocationHistoryIndex()) || (location.getLatitude() == null)
+				|| (location.getLongitude() == null) || (time < 0)) {
+			return;
+		}
+		byte[] site = Bytes.head(assnKey, HBaseSite.SITE_IDENTIFIER_LENGTH);
+		String geohash =
+				GeoHash.encode(location.getLatitude(), location.getLongitude(),
+						HBaseLocationIndex.INDEX_PRECISION);
+		byte[] rowkey =
+				Bytes.add(getCellPrefix(site, getBucket(time), geohash), Bytes.toBytes(time), assnKey);
+
+		Put put = new Put(rowkey);
+		put.add(ISiteWhereHBase.FAMILY_ID, HBaseLocationIndex.LATITUDE,
+				Bytes.toBytes(location.getLatitude().doubleValue()));
+		put.add(ISiteWhereHBase.FAMILY_ID, HBaseLocationIndex.LONGITUDE,
+				Bytes.toBytes(location.getLongitude().doubleValue()));
+		put.add(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.JSON_CONTENT, MarshalUtils.marshal(location));
+		write.addPut(ISiteWhereHBase.LOCATION_HISTORY_TABLE_NAME, put);
+	}
+
+	/**
+	 * List locations for a site within a bounding box during a time range, most recent
+	 * first. If the minimum longitude is greater than the maximum, the box crosses the
+	 * antimeridian. Day buckets are scanned newest first with one range scan per covering
+	 * cell, and the cells of a bucket are scanned in parallel if an executor is given.
+	 * Coarser cells are used for long time ranges so that no more than
+	 * {@link #MAX_QUERY_SCANS} scans are made, and longer ranges are rejected. Scanning
+	 * stops after the bucket in which the page and one more match have been found, so the
+	 * total is a lower bound in that case. Only the time and row key of each match are
+	 * held until the page is known, and the events on the page are then read in a single
+	 * request.
+	 * 
+	 * @param hbase
+	 * @param executor
+	 *            executor used to scan cells in parallel or null to scan serially
+	 * @param siteToken
+	 * @param minLatitude
+	 * @param minLongitude
+	 * @param maxLatitude
+	 * @param maxLongitude
+	 * @param criteria
+	 *            criteria with a required start date and an optional end date
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static SearchResults<IDeviceLocation> listDeviceLocationsInArea(final ISiteWhereHBaseClient hbase,
+			ScanExecutor executor, String siteToken, final double minLatitude, final double minLongitude,
+			final double maxLatitude, final double maxLongitude, IDateRangeSearchCriteria criteria)
+			throws SiteWhereException {
+		Long siteId = IdManager.getInstance().getSiteKeys().getValue(siteToken);
+		if (siteId == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidSiteToken, ErrorLevel.ERROR);
+		}
+		if (criteria.getStartDate() == null) {
+			throw new SiteWhereException("Start date is required when listing locations in an area.");
+		}
+		final byte[] site = HBaseSite.getSiteIdentifier(siteId);
+		final long start = criteria.getStartDate().getTime();
+		final long end =
+				(criteria.getEndDate() != null) ? criteria.getEndDate().getTime() : System.currentTimeMillis();
+		int firstBucket = getBucket(Math.max(0, start));
+		int lastBucket = getBucket(Math.max(0, end));
+		int buckets = lastBucket - firstBucket + 1;
+		if ((end < start) || (buckets <= 0)) {
+			return new SearchResults<IDeviceLocation>(new ArrayList<IDeviceLocation>(), 0);
+		}
+		int maxCells = MAX_QUERY_SCANS / buckets;
+		if (maxCells < 1) {
+			throw new SiteWhereException("Time range for locations in an area may not span more than "
+					+ MAX_QUERY_SCANS + " days.");
+		}
+
+		Set<String> cells = new LinkedHashSet<String>();
+		if (minLongitude <= maxLongitude) {
+			cells.addAll(GeoHash.getCoveringHashes(minLatitude, maxLatitude, minLongitude, maxLongitude,
+					HBaseLocationIndex.INDEX_PRECISION, maxCells));
+		} else {
+			cells.addAll(GeoHash.getCoveringHashes(minLatitude, maxLatitude, minLongitude, 180.0,
+					HBaseLocationIndex.INDEX_PRECISION, maxCells / 2));
+			cells.addAll(GeoHash.getCoveringHashes(minLatitude, maxLatitude, -180.0, maxLongitude,
+					HBaseLocationIndex.INDEX_PRECISION, maxCells / 2));
+		}
+
+		Pager<Match> pager = new Pager<Match>(criteria, PagingMode.Limited);
+		for (int bucket = lastBucket; (bucket >= firstBucket) && (!pager.isDone()); bucket--) {
+			List<Callable<List<Match>>> tasks = new ArrayList<Callable<List<Match>>>();
+			for (String cell : cells) {
+				final byte[] prefix = getCellPrefix(site, bucket, cell);
+				tasks.add(new Callable<List<Match>>() {
+
+					public List<Match> call() throws Exception {
+						List<Match> matches = new ArrayList<Match>();
+						HTableInterface locations = null;
+						ResultScanner scanner = null;
+						try {
+							locations = hbase.getTableInterface(ISiteWhereHBase.LOCATION_HISTORY_TABLE_NAME);
+							scanner = locations.getScanner(createCellScan(prefix));
+							for (Result result : scanner) {
+								Match match =
+										getMatch(result, start, end, minLatitude, minLongitude, maxLatitude,
+												maxLongitude);
+								if (match != null) {
+									matches.add(match);
+								}
+							}
+							return matches;
+						} catch (IOException e) {
+							throw new SiteWhereException("Unable to scan location history index.", e);
+						} finally {
+							if (scanner != null) {
+								scanner.close();
+							}
+							HBaseUtils.closeCleanly(locations);
+						}
+					}
+				});
+			}
+			List<List<Match>> found =
+					(executor != null) ? executor.invokeAll(tasks) : ScanExecutor.runSerially(tasks);
+			List<Match> matches = new ArrayList<Match>();
+			for (List<Match> cell : found) {
+				matches.addAll(cell);
+			}
+			Collections.sort(matches);
+			for (Match match : matches) {
+				if (!pager.process(match)) {
+					break;
+				}
+			}
+		}
+		List<IDeviceLocation> results = getLocations(hbase, pager.getResults());
+		return new EstimatedSearchResults<IDeviceLocation>(results, pager.getTotal(), pager.isTruncated());
+	}
+
+	/**
+	 * Read the events for a page of matches from the index.
+	 * 
+	 * @param hbase
+	 * @param matches
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected static List<IDeviceLocation> getLocations(ISiteWhereHBaseClient hbase, List<Match> matches)
+			throws SiteWhereException {
+		List<IDeviceLocation> locations = new ArrayList<IDeviceLocation>();
+		if (matches.isEmpty()) {
+			return locations;
+		}
+		List<Get> gets = new ArrayList<Get>();
+		for (Match match : matches) {
+			Get get = new Get(match.getRow());
+			get.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.JSON_CONTENT);
+			gets.add(get);
+		}
+		HTableInterface table = null;
+		try {
+			table = hbase.getTableInterface(ISiteWhereHBase.LOCATION_HISTORY_TABLE_NAME);
+			for (Result result : table.get(gets)) {
+				byte[] content = HBaseUtils.getJsonContent(result);
+				if (content != null) {
+					locations.add(MarshalUtils.unmarshal(content, DeviceLocation.class));
+				}
+			}
+			return locations;
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to read locations from location history index.", e);
+		} finally {
+			HBaseUtils.closeCleanly(table);
+		}
+	}
+
+	/**
+	 * Get the match for an index row or null if it is outside of the time range or box.
+	 * Rows are only partially filtered by the scan since cells and buckets may extend
+	 * beyond the query.
+	 * 
+	 * @param result
+	 * @param start
+	 * @param end
+	 * @param minLatitude
+	 * @param minLongitude
+	 * @param maxLatitude
+	 * @param maxLongitude
+	 * @return
+	 */
+	protected static Match getMatch(Result result, long start, long end, double minLatitude,
+			double minLongitude, double maxLatitude, double maxLongitude) {
+		byte[] row = result.getRow();
+		long time =
+				Bytes.toLong(row, HBaseSite.SITE_IDENTIFIER_LENGTH + Bytes.SIZEOF_INT
+						+ HBaseLocationIndex.INDEX_PRECISION);
+		if ((time < start) || (time > end)) {
+			return null;
+		}
+		byte[] lat = result.getValue(ISiteWhereHBase.FAMILY_ID, HBaseLocationIndex.LATITUDE);
+		byte[] lng = result.getValue(ISiteWhereHBase.FAMILY_ID, HBaseLocationIndex.LONGITUDE);
+		if ((lat == null) || (lng == null)) {
+			return null;
+		}
+		double latitude = Bytes.toDouble(lat);
+		double longitude = Bytes.toDouble(lng);
+		if ((latitude < minLatitude) || (latitude > maxLatitude)) {
+			return null;
+		}
+		boolean inLongitude =
+				(minLongitude <= maxLongitude) ? ((longitude >= minLongitude) && (longitude <= maxLongitude))
+						: ((longitude >= minLongitude) || (longitude <= maxLongitude));
+		return inLongitude ? new Match(time, row) : null;
+	}
+
+	/**
+	 * Create a scan for the position of all index rows with the given prefix.
+	 * 
+	 * @param prefix
+	 * @return
+	 */
+	protected static Scan createCellScan(byte[] prefix) {
+		Scan scan = new Scan();
+		scan.setStartRow(prefix);
+		scan.setStopRow(HBaseUtils.getPrefixStopRow(prefix));
+		scan.addColumn(ISiteWhereHBase.FAMILY_ID, HBaseLocationIndex.LATITUDE);
+		scan.addColumn(ISiteWhereHBase.FAMILY_ID, HBaseLocationIndex.LONGITUDE);
+		ScanProfiles.get(ScanProfiles.EVENT_EXPORT).apply(scan);
+		return scan;
+	}
+
+	/**
+	 * Get the row key prefix for a site, bucket and geohash cell.
+	 * 
+	 * @param site
+	 * @param bucket
+	 * @param geohash
+	 * @return
+	 */
+	protected static byte[] getCellPrefix(byte[] site, int bucket, String geohash) {
+		return Bytes.add(site, Bytes.toBytes(bucket), Bytes.toBytes(geohash));
+	}
+
+	/**
+	 * Get the bucket that contains the given time.
+	 * 
+	 * @param time
+	 * @return
+	 */
+	protected static int getBucket(long time) {
+		return (int) (time / BUCKET_INTERVAL);
+	}
+
+	/**
+	 * Location found in the index.
+	 * 
+	 * @author Derek
+	 */
+	private static class Match implements Comparable<Match> {
+
+		/** Event time */
+		private long time;
+
+		/** Index row key */
+		private byte[] row;
+
+		public Match(long time, byte[] row) {
+			this.time = time;
+			this.row = row;
+		}
+
+		public byte[] getRow() {
+			return row;
+		}
+
+		public int compareTo(Match other) {
+			return (time > other.time) ? -1 : ((time < other.time) ? 1 : 0);
+		}
+	}
+}
@@ -0,0 +1,326 @@
+/*
+ * HBaseLocationIndex.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.log4j.Logger;
+
+import com.sitewhere.hbase.ISiteWhereHBase;
+import com.sitewhere.hbase.ISiteWhereHBaseClient;
+import com.sitewhere.hbase.common.GeoHash;
+import com.sitewhere.hbase.common.HBaseUtils;
+import com.sitewhere.hbase.common.Pager;
+import com.sitewhere.hbase.common.ScanProfiles;
+import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.DeviceAssignmentStatus;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.search.ISearchCriteria;
+
+/**
+ * HBase specifics for the index of assignments by their most recent location. Each row
+ * in the geo table is keyed by the geohash of a location followed by the assignment key
+ * and holds the latitude and longitude, so assignments in a cell are found with a prefix
+ * scan. The geohash of the most recent location is also stored on the assignment row.
+ * Rows are not removed when an assignment moves. Instead, a row is only used if its
+ * geohash matches the one on the assignment row and rows found to be stale are deleted
+ * when queries encounter them.
+ * 
+ * @author Derek
+ */
+public class HBaseLocationIndex {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(HBaseLocationIndex.class);
+
+	/** Number of geohash characters in index keys (cells of roughly 38m x 19m) */
+	public static final int INDEX_PRECISION = 8;
+
+	/** Maximum number of cells scanned for a query. Larger areas scan the whole table */
+	public static final int MAX_QUERY_CELLS = 16;
+
+	/** Column qualifier for latitude */
+	public static final byte[] LATITUDE = Bytes.toBytes("lat");
+
+	/** Column qualifier for longitude */
+	public static final byte[] LONGITUDE = Bytes.toBytes("lng");
+
+	/** Column qualifier for assignment status */
+	private static final byte[] ASSIGNMENT_STATUS = HBaseDeviceAssignment.ASSIGNMENT_STATUS;
+
+	/** Status column value of active assignments */
+	private static final byte[] ACTIVE = Bytes.toBytes(DeviceAssignmentStatus.Active.name());
+
+	/**
+	 * Add puts that index the location of an assignment if the location index is enabled.
+	 * The event time is used as the cell timestamp, so the most recent location wins even
+	 * if older locations are stored later.
+	 * 
+	 * @param write
+	 * @param assnKey
+	 * @param time
+	 * @param latitude
+	 * @param longitude
+	 */
+	public static void addLocation(DeviceEventWrite<?> write, byte[] assnKey, long time, Double latitude,
+			Double longitude) {
+		if ((!DeviceEventSettings.getInstance().isLocationIndex()) || (latitude == null)
+				|| (longitude == null)) {
+			return;
+		}
+		byte[] geohash = Bytes.toBytes(GeoHash.encode(latitude, longitude, INDEX_PRECISION));
+
+		Put index = new Put(Bytes.add(geohash, assnKey));
+		index.add(ISiteWhereHBase.FAMILY_ID, LATITUDE, time, Bytes.toBytes(latitude.doubleValue()));
+		index.add(ISiteWhereHBase.FAMILY_ID, LONGITUDE, time, Bytes.toBytes(longitude.doubleValue()));
+		write.addPut(ISiteWhereHBase.GEO_TABLE_NAME, index);
+
+		Put assignment = new Put(assnKey);
+		assignment.add(ISiteWhereHBase.FAMILY_ID, HBaseDeviceAssignment.ASSIGNMENT_GEOHASH, time, geohash);
+		write.addPut(ISiteWhereHBase.SITES_TABLE_NAME, assignment);
+	}
+
+	/**
+	 * Get active assignments whose most recent location is within a distance of a point,
+	 * nearest first. Cells covering the bounding box of the circle are scanned and
+	 * candidates are filtered by their exact distance before the assignments are read. If
+	 * the box needs more than {@link #MAX_QUERY_CELLS} cells even at the coarsest
+	 * precision, the whole index is scanned instead.
+	 * 
+	 * @param hbase
+	 * @param latitude
+	 * @param longitude
+	 * @param maxDistance
+	 *            distance in kilometers
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static SearchResults<IDeviceAssignment> getDeviceAssignmentsNear(ISiteWhereHBaseClient hbase,
+			double latitude, double longitude, double maxDistance, ISearchCriteria criteria)
+			throws SiteWhereException {
+		double[] box = GeoHash.getBoundingBox(latitude, longitude, maxDistance);
+		Set<String> cells =
+				GeoHash.getCoveringHashes(box[0], box[1], box[2], box[3], INDEX_PRECISION, MAX_QUERY_CELLS);
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		HTableInterface geo = null;
+		try {
+			geo = hbase.getTableInterface(ISiteWhereHBase.GEO_TABLE_NAME);
+			for (String cell : cells) {
+				ResultScanner scanner = geo.getScanner(createCellScan(cell));
+				try {
+					for (Result result : scanner) {
+						byte[] lat = result.getValue(ISiteWhereHBase.FAMILY_ID, LATITUDE);
+						byte[] lng = result.getValue(ISiteWhereHBase.FAMILY_ID, LONGITUDE);
+						if ((lat == null) || (lng == null)) {
+							continue;
+						}
+						double distance =
+								GeoHash.getDistanceKm(latitude, longitude, Bytes.toDouble(lat),
+										Bytes.toDouble(lng));
+						if (distance <= maxDistance) {
+							candidates.add(new Candidate(result.getRow(), distance));
+						}
+					}
+				} finally {
+					scanner.close();
+				}
+			}
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to scan location index.", e);
+		} finally {
+			HBaseUtils.closeCleanly(geo);
+		}
+		Collections.sort(candidates);
+		return getAssignments(hbase, candidates, criteria);
+	}
+
+	/**
+	 * Create a scan for all index rows in a cell. An empty cell covers the whole index.
+	 * 
+	 * @param cell
+	 * @return
+	 */
+	protected static Scan createCellScan(String cell) {
+		Scan scan = new Scan();
+		if (cell.length() > 0) {
+			byte[] start = Bytes.toBytes(cell);
+			scan.setStartRow(start);
+			scan.setStopRow(HBaseUtils.getPrefixStopRow(start));
+		}
+		scan.addFamily(ISiteWhereHBase.FAMILY_ID);
+		ScanProfiles.get(ScanProfiles.EVENT_EXPORT).apply(scan);
+		return scan;
+	}
+
+	/**
+	 * Read the assignments for candidates and page through those that are current and
+	 * active. Index rows whose geohash no longer matches the assignment are deleted,
+	 * limited to cells written before the current geohash so a concurrent update is not
+	 * lost.
+	 * 
+	 * @param hbase
+	 * @param candidates
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected static SearchResults<IDeviceAssignment> getAssignments(ISiteWhereHBaseClient hbase,
+			List<Candidate> candidates, ISearchCriteria criteria) throws SiteWhereException {
+		Pager<IDeviceAssignment> pager = new Pager<IDeviceAssignment>(criteria);
+		if (candidates.isEmpty()) {
+			return new SearchResults<IDeviceAssignment>(pager.getResults(), pager.getTotal());
+		}
+		List<Get> gets = new ArrayList<Get>();
+		for (Candidate candidate : candidates) {
+			Get get = new Get(candidate.getAssnKey());
+			get.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.JSON_CONTENT);
+			get.addColumn(ISiteWhereHBase.FAMILY_ID, HBaseDeviceAssignment.ASSIGNMENT_STATE);
+			get.addColumn(ISiteWhereHBase.FAMILY_ID, HBaseDeviceAssignment.ASSIGNMENT_GEOHASH);
+			get.addColumn(ISiteWhereHBase.FAMILY_ID, ASSIGNMENT_STATUS);
+			get.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED);
+			gets.add(get);
+		}
+		List<Delete> stale = new ArrayList<Delete>();
+		HTableInterface sites = null;
+		try {
+			sites = hbase.getTableInterface(ISiteWhereHBase.SITES_TABLE_NAME);
+			Result[] results = sites.get(gets);
+			for (int i = 0; i < results.length; i++) {
+				Candidate candidate = candidates.get(i);
+				if (HBaseUtils.getJsonContent(results[i]) == null) {
+					stale.add(new Delete(candidate.getRow()));
+					continue;
+				}
+				KeyValue current =
+						results[i].getColumnLatest(ISiteWhereHBase.FAMILY_ID,
+								HBaseDeviceAssignment.ASSIGNMENT_GEOHASH);
+				if (current == null) {
+					continue;
+				}
+				if (!Bytes.equals(current.getValue(), candidate.getGeohash())) {
+					Delete delete = new Delete(candidate.getRow());
+					delete.deleteFamily(ISiteWhereHBase.FAMILY_ID, current.getTimestamp() - 1);
+					stale.add(delete);
+					continue;
+				}
+				if (results[i].getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED) != null) {
+					continue;
+				}
+				byte[] status = results[i].getValue(ISiteWhereHBase.FAMILY_ID, ASSIGNMENT_STATUS);
+				if (!Bytes.equals(status, ACTIVE)) {
+					continue;
+				}
+				pager.process(HBaseDeviceAssignment.getDeviceAssignment(results[i]));
+			}
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to load assignments for location index.", e);
+		} finally {
+			HBaseUtils.closeCleanly(sites);
+		}
+		removeStale(hbase, stale);
+		return new SearchResults<IDeviceAssignment>(pager.getResults(), pager.getTotal());
+	}
+
+	/**
+	 * Get split points for the geo table. Rows start with a geohash, so the table is split
+	 * evenly across the values of its leading character.
+	 * 
+	 * @param regions
+	 * @param keySpace
+	 *            number of leading characters to split across (at most 32)
+	 * @return split keys or null if the table should not be split
+	 */
+	public static byte[][] getSplitKeys(int regions, long keySpace) {
+		int characters = (int) Math.min(keySpace, 32);
+		if ((regions <= 1) || (characters < regions)) {
+			return null;
+		}
+		byte[][] splits = new byte[regions - 1][];
+		for (int i = 1; i < regions; i++) {
+			splits[i - 1] = Bytes.toBytes(String.valueOf(GeoHash.getCharacter((characters * i) / regions)));
+		}
+		return splits;
+	}
+
+	/**
+	 * Delete stale index rows. Failures are logged since the rows are ignored by queries
+	 * either way.
+	 * 
+	 * @param hbase
+	 * @param stale
+	 * @throws SiteWhereException
+	 */
+	protected static void removeStale(ISiteWhereHBaseClient hbase, List<Delete> stale)
+			throws SiteWhereException {
+		if (stale.isEmpty()) {
+			return;
+		}
+		HTableInterface geo = null;
+		try {
+			geo = hbase.getTableInterface(ISiteWhereHBase.GEO_TABLE_NAME);
+			geo.delete(stale);
+			LOGGER.debug("Removed " + stale.size() + " stale location index rows.");
+		} catch (IOException e) {
+			LOGGER.warn("Unable to remove stale location index rows.", e);
+		} finally {
+			HBaseUtils.closeCleanly(geo);
+		}
+	}
+
+	/**
+	 * Index row within the search distance.
+	 * 
+	 * @author Derek
+	 */
+	private static class Candidate implements Comparable<Candidate> {
+
+		/** Index row key */
+		private byte[] row;
+
+		/** Distance from the search point in kilometers */
+		private double distance;
+
+		public Candidate(byte[] row, double distance) {
+			this.row = row;
+			this.distance = distance;
+		}
+
+		public byte[] getRow() {
+			return row;
+		}
+
+		public byte[] getGeohash() {
+			return Bytes.head(row, INDEX_PRECISION);
+		}
+
+		public byte[] getAssnKey() {
+			return Bytes.tail(row, row.length - INDEX_PRECISION);
+		}
+
+		public int compareTo(Candidate other) {
+			return Double.compare(distance, other.distance);
+		}
+	}
+}
@@ -0,0 +1,273 @@
+/*
+ * HBaseMeasurementRollup.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.sitewhere.hbase.ISiteWhereHBase;
+import com.sitewhere.hbase.ISiteWhereHBaseClient;
+import com.sitewhere.hbase.common.HBaseUtils;
+import com.sitewhere.hbase.common.ScanProfiles;
+import com.sitewhere.hbase.uid.IdManager;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.SiteWhereSystemException;
+import com.sitewhere.spi.error.ErrorCode;
+import com.sitewhere.spi.error.ErrorLevel;
+
+/**
+ * HBase specifics for measurement rollups. Each row holds the rollup for one assignment,
+ * measurement name, interval and period. The row key is the assignment key, interval
+ * type, measurement name, a zero byte and the period start so that a series for a
+ * measurement is a contiguous range of rows in time order.
+ * 
+ * @author Derek
+ */
+public class HBaseMeasurementRollup {
+
+	/** Column qualifier for number of values */
+	public static final byte[] COUNT = Bytes.toBytes("count");
+
+	/** Column qualifier for sum of values written as a double before sums were incremented */
+	public static final byte[] SUM = Bytes.toBytes("sum");
+
+	/** Column qualifier for sum of values as a fixed-point long */
+	public static final byte[] FIXED_SUM = Bytes.toBytes("fsum");
+
+	/** Scale of the fixed-point sum (six decimal places) */
+	public static final double FIXED_SUM_SCALE = 1000000d;
+
+	/** Column qualifier for smallest value */
+	public static final byte[] MIN = Bytes.toBytes("min");
+
+	/** Column qualifier for largest value */
+	public static final byte[] MAX = Bytes.toBytes("max");
+
+	/** Number of times a minimum or maximum is checked and written before giving up */
+	private static final int MAX_LIMIT_ATTEMPTS = 10;
+
+	/** Separates the measurement name from the period start */
+	private static final byte[] NAME_TERMINATOR = new byte[] { 0x00 };
+
+	/**
+	 * Get the key prefix shared by all periods of a measurement series.
+	 * 
+	 * @param assnKey
+	 * @param name
+	 * @param interval
+	 * @return
+	 */
+	public static byte[] getSeriesPrefix(byte[] assnKey, String name, RollupInterval interval) {
+		byte[] series = Bytes.add(assnKey, new byte[] { interval.getType() }, Bytes.toBytes(name));
+		return Bytes.add(series, NAME_TERMINATOR);
+	}
+
+	/**
+	 * Get the row key for a single rollup period.
+	 * 
+	 * @param assnKey
+	 * @param name
+	 * @param interval
+	 * @param periodStart
+	 * @return
+	 */
+	public static byte[] getRowKey(byte[] assnKey, String name, RollupInterval interval, long periodStart) {
+		return Bytes.add(getSeriesPrefix(assnKey, name, interval), Bytes.toBytes(periodStart));
+	}
+
+	/**
+	 * Add rollups to the values stored for the same periods. Count and sum are added with
+	 * an {@link Increment} and the minimum and maximum are merged with
+	 * {@link HTableInterface#checkAndPut}, so several aggregators may write the same
+	 * periods without overwriting each other. The limits are merged before the increment
+	 * so that a rollup which fails part way may be retried without counting values twice,
+	 * except when the increment itself fails after being applied. Rollups are removed
+	 * from the map as they are stored, so on failure the map holds those still to be
+	 * written.
+	 * 
+	 * @param hbase
+	 * @param rollups
+	 *            rollups by row key holding values received since the last write
+	 * @throws SiteWhereException
+	 */
+	public static void storeRollups(ISiteWhereHBaseClient hbase, Map<byte[], MeasurementRollup> rollups)
+			throws SiteWhereException {
+		if (rollups.isEmpty()) {
+			return;
+		}
+		HTableInterface table = null;
+		try {
+			table = hbase.getTableInterface(ISiteWhereHBase.ROLLUPS_TABLE_NAME);
+			List<Get> gets = new ArrayList<Get>(rollups.size());
+			for (byte[] rowkey : rollups.keySet()) {
+				Get get = new Get(rowkey);
+				get.addColumn(ISiteWhereHBase.FAMILY_ID, MIN);
+				get.addColumn(ISiteWhereHBase.FAMILY_ID, MAX);
+				gets.add(get);
+			}
+			Result[] limits = table.get(gets);
+			int index = 0;
+			Iterator<Map.Entry<byte[], MeasurementRollup>> it = rollups.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<byte[], MeasurementRollup> entry = it.next();
+				Result stored = limits[index++];
+				MeasurementRollup rollup = entry.getValue();
+				if (rollup.getCount() > 0) {
+					mergeLimit(table, entry.getKey(), MIN, rollup.getMin(),
+							stored.getValue(ISiteWhereHBase.FAMILY_ID, MIN));
+					mergeLimit(table, entry.getKey(), MAX, rollup.getMax(),
+							stored.getValue(ISiteWhereHBase.FAMILY_ID, MAX));
+					Increment increment = new Increment(entry.getKey());
+					increment.addColumn(ISiteWhereHBase.FAMILY_ID, COUNT, rollup.getCount());
+					increment.addColumn(ISiteWhereHBase.FAMILY_ID, FIXED_SUM,
+							Math.round(rollup.getSum() * FIXED_SUM_SCALE));
+					table.increment(increment);
+				}
+				it.remove();
+			}
+		} catch (IOException e) {
+			throw new SiteWhereException("Unable to store measurement rollups.", e);
+		} finally {
+			HBaseUtils.closeCleanly(table);
+		}
+	}
+
+	/**
+	 * Replace the stored minimum or maximum of a period if the given value goes beyond it.
+	 * The value is written with a check against the stored value and is read again and
+	 * compared if another writer changed it first.
+	 * 
+	 * @param table
+	 * @param rowkey
+	 * @param qualifier
+	 *            {@link #MIN} or {@link #MAX}
+	 * @param value
+	 * @param stored
+	 *            stored value or null if none has been stored
+	 * @throws IOException
+	 * @throws SiteWhereException
+	 */
+	protected static void mergeLimit(HTableInterface table, byte[] rowkey, byte[] qualifier, double value,
+			byte[] stored) throws IOException, SiteWhereException {
+		boolean minimum = Bytes.equals(qualifier, MIN);
+		for (int attempt = 0; attempt < MAX_LIMIT_ATTEMPTS; attempt++) {
+			if (stored != null) {
+				double current = Bytes.toDouble(stored);
+				if ((minimum) ? (current <= value) : (current >= value)) {
+					return;
+				}
+			}
+			Put put = new Put(rowkey);
+			put.add(ISiteWhereHBase.FAMILY_ID, qualifier, Bytes.toBytes(value));
+			if (table.checkAndPut(rowkey, ISiteWhereHBase.FAMILY_ID, qualifier, stored, put)) {
+				return;
+			}
+			Get get = new Get(rowkey);
+			get.addColumn(ISiteWhereHBase.FAMILY_ID, qualifier);
+			stored = table.get(get).getValue(ISiteWhereHBase.FAMILY_ID, qualifier);
+		}
+		throw new SiteWhereException("Unable to update measurement rollup "
+				+ ((minimum) ? "minimum" : "maximum") + " after " + MAX_LIMIT_ATTEMPTS + " attempts.");
+	}
+
+	/**
+	 * List the rollups for a measurement at the given resolution with a single range scan.
+	 * Periods without values are not included.
+	 * 
+	 * @param hbase
+	 * @param assnToken
+	 * @param name
+	 * @param interval
+	 * @param startDate
+	 *            start of the series or null for the first recorded period
+	 * @param endDate
+	 *            end of the series or null for the last recorded period
+	 * @return rollups in ascending period order
+	 * @throws SiteWhereException
+	 */
+	public static List<MeasurementRollup> listMeasurementRollups(ISiteWhereHBaseClient hbase,
+			String assnToken, String name, RollupInterval interval, Date startDate, Date endDate)
+			throws SiteWhereException {
+		byte[] assnKey = IdManager.getInstance().getAssignmentKeys().getValue(assnToken);
+		if (assnKey == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+		}
+		long start = (startDate != null) ? interval.getPeriodStart(startDate.getTime()) : 0;
+		long end = (endDate != null) ? interval.getPeriodStart(endDate.getTime()) : Long.MAX_VALUE - 1;
+
+		HTableInterface rollups = null;
+		ResultScanner scanner = null;
+		try {
+			rollups = hbase.getTableInterface(ISiteWhereHBase.ROLLUPS_TABLE_NAME);
+			Scan scan = new Scan();
+			scan.setStartRow(getRowKey(assnKey, name, interval, start));
+			scan.setStopRow(getRowKey(assnKey, name, interval, end + 1));
+			scan.addFamily(ISiteWhereHBase.FAMILY_ID);
+			ScanProfiles.get(ScanProfiles.EVENT_EXPORT).apply(scan);
+			scanner = rollups.getScanner(scan);
+
+			List<MeasurementRollup> results = new ArrayList<MeasurementRollup>();
+			for (Result result : scanner) {
+				results.add(parseRollup(result, name, interval));
+			}
+			return results;
+		} catch (IOException e) {
+			throw new SiteWhereException("Error scanning measurement rollups.", e);
+		} finally {
+			if (scanner != null) {
+				scanner.close();
+			}
+			HBaseUtils.closeCleanly(rollups);
+		}
+	}
+
+	/**
+	 * Create a rollup from a stored row.
+	 * 
+	 * @param result
+	 * @param name
+	 * @param interval
+	 * @return
+	 */
+	protected static MeasurementRollup parseRollup(Result result, String name, RollupInterval interval) {
+		byte[] row = result.getRow();
+		long periodStart = Bytes.toLong(row, row.length - Bytes.SIZEOF_LONG);
+		MeasurementRollup rollup = new MeasurementRollup(name, interval, new Date(periodStart));
+		byte[] count = result.getValue(ISiteWhereHBase.FAMILY_ID, COUNT);
+		byte[] sum = result.getValue(ISiteWhereHBase.FAMILY_ID, SUM);
+		byte[] fixedSum = result.getValue(ISiteWhereHBase.FAMILY_ID, FIXED_SUM);
+		byte[] min = result.getValue(ISiteWhereHBase.FAMILY_ID, MIN);
+		byte[] max = result.getValue(ISiteWhereHBase.FAMILY_ID, MAX);
+		if ((count != null) && (min != null) && (max != null)) {
+			rollup.setCount(Bytes.toLong(count));
+			double total = (sum != null) ? Bytes.toDouble(sum) : 0;
+			if (fixedSum != null) {
+				total += Bytes.toLong(fixedSum) / FIXED_SUM_SCALE;
+			}
+			rollup.setSum(total);
+			rollup.setMin(Bytes.toDouble(min));
+			rollup.setMax(Bytes.toDouble(max));
+		}
+		return rollup;
+	}
+}
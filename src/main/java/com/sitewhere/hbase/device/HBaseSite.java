@@ -33,11 +33,13 @@ import org.apache.hadoop.hbase.util.Bytes;
 import com.sitewhere.core.SiteWherePersistence;
 import com.sitewhere.hbase.ISiteWhereHBase;
 import com.sitewhere.hbase.ISiteWhereHBaseClient;
+import com.sitewhere.hbase.common.CursorSearchResults;
 import com.sitewhere.hbase.common.HBaseUtils;
 import com.sitewhere.hbase.common.MarshalUtils;
 import com.sitewhere.hbase.common.Pager;
+import com.sitewhere.hbase.common.PagingMode;
+import com.sitewhere.hbase.common.ScanProfiles;
 import com.sitewhere.hbase.uid.IdManager;
-import com.sitewhere.rest.model.device.DeviceAssignment;
 import com.sitewhere.rest.model.device.Site;
 import com.sitewhere.rest.model.device.Zone;
 import com.sitewhere.rest.model.search.SearchResults;
@@ -89,7 +91,7 @@ public class HBaseSite {
 		Site site = SiteWherePersistence.siteCreateLogic(request, uuid);
 
 		// Create primary site record.
-		byte[] json = MarshalUtils.marshalJson(site);
+		byte[] json = MarshalUtils.marshal(site);
 		byte[] maxLong = Bytes.toBytes(Long.MAX_VALUE);
 
 		HTableInterface sites = null;
@@ -131,7 +133,7 @@ public class HBaseSite {
 			if (result.size() != 1) {
 				throw new SiteWhereException("Expected one JSON entry for site and found: " + result.size());
 			}
-			return MarshalUtils.unmarshalJson(result.value(), Site.class);
+			return MarshalUtils.unmarshal(result.value(), Site.class);
 		} catch (IOException e) {
 			throw new SiteWhereException("Unable to load site by token.", e);
 		} finally {
@@ -160,7 +162,7 @@ public class HBaseSite {
 
 		Long siteId = IdManager.getInstance().getSiteKeys().getValue(token);
 		byte[] rowkey = getPrimaryRowkey(siteId);
-		byte[] json = MarshalUtils.marshalJson(updated);
+		byte[] json = MarshalUtils.marshal(updated);
 
 		HTableInterface sites = null;
 		try {
@@ -187,14 +189,37 @@ public class HBaseSite {
 	public static SearchResults<ISite> listSites(ISiteWhereHBaseClient hbase, ISearchCriteria criteria)
 			throws SiteWhereException {
 		RegexStringComparator comparator = new RegexStringComparator(REGEX_SITE);
-		Pager<byte[]> pager = getFilteredSiteRows(hbase, false, criteria, comparator, null, null);
+		Pager<Result> pager = getFilteredSiteRows(hbase, false, criteria, comparator, null, null);
 		List<ISite> response = new ArrayList<ISite>();
-		for (byte[] match : pager.getResults()) {
-			response.add(MarshalUtils.unmarshalJson(match, Site.class));
+		for (Result match : pager.getResults()) {
+			response.add(MarshalUtils.unmarshal(HBaseUtils.getJsonContent(match), Site.class));
 		}
 		return new SearchResults<ISite>(response, pager.getTotal());
 	}
 
+	/**
+	 * List sites a page at a time, resuming after the last site of the previous page.
+	 * 
+	 * @param hbase
+	 * @param resumeToken
+	 *            token from the previous page or null for the first page
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static CursorSearchResults<ISite> listSites(ISiteWhereHBaseClient hbase, String resumeToken,
+			ISearchCriteria criteria) throws SiteWhereException {
+		RegexStringComparator comparator = new RegexStringComparator(REGEX_SITE);
+		byte[] start = HBaseUtils.getResumeRow(null, resumeToken);
+		Pager<Result> pager = new Pager<Result>(criteria, PagingMode.Cursor);
+		getFilteredSiteRows(hbase, false, pager, comparator, start, null);
+		List<ISite> response = new ArrayList<ISite>();
+		for (Result match : pager.getResults()) {
+			response.add(MarshalUtils.unmarshal(HBaseUtils.getJsonContent(match), Site.class));
+		}
+		return new CursorSearchResults<ISite>(response, HBaseUtils.getResumeToken(pager));
+	}
+
 	/**
 	 * List device assignments for a given site.
 	 * 
@@ -213,14 +238,46 @@ public class HBaseSite {
 		byte[] assnPrefix = getAssignmentRowKey(siteId);
 		byte[] after = getAfterAssignmentRowKey(siteId);
 		BinaryPrefixComparator comparator = new BinaryPrefixComparator(assnPrefix);
-		Pager<byte[]> pager = getFilteredSiteRows(hbase, false, criteria, comparator, assnPrefix, after);
+		Pager<Result> pager = getFilteredSiteRows(hbase, false, criteria, comparator, assnPrefix, after);
 		List<IDeviceAssignment> response = new ArrayList<IDeviceAssignment>();
-		for (byte[] match : pager.getResults()) {
-			response.add(MarshalUtils.unmarshalJson(match, DeviceAssignment.class));
+		for (Result match : pager.getResults()) {
+			response.add(HBaseDeviceAssignment.getDeviceAssignment(match));
 		}
 		return new SearchResults<IDeviceAssignment>(response, pager.getTotal());
 	}
 
+	/**
+	 * List device assignments for a site a page at a time, resuming after the last
+	 * assignment of the previous page.
+	 * 
+	 * @param hbase
+	 * @param siteToken
+	 * @param resumeToken
+	 *            token from the previous page or null for the first page
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static CursorSearchResults<IDeviceAssignment> listDeviceAssignmentsForSite(
+			ISiteWhereHBaseClient hbase, String siteToken, String resumeToken, ISearchCriteria criteria)
+			throws SiteWhereException {
+		Long siteId = IdManager.getInstance().getSiteKeys().getValue(siteToken);
+		if (siteId == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidSiteToken, ErrorLevel.ERROR);
+		}
+		byte[] assnPrefix = getAssignmentRowKey(siteId);
+		byte[] after = getAfterAssignmentRowKey(siteId);
+		byte[] start = HBaseUtils.getResumeRow(assnPrefix, resumeToken);
+		BinaryPrefixComparator comparator = new BinaryPrefixComparator(assnPrefix);
+		Pager<Result> pager = new Pager<Result>(criteria, PagingMode.Cursor);
+		getFilteredSiteRows(hbase, false, pager, comparator, start, after);
+		List<IDeviceAssignment> response = new ArrayList<IDeviceAssignment>();
+		for (Result match : pager.getResults()) {
+			response.add(HBaseDeviceAssignment.getDeviceAssignment(match));
+		}
+		return new CursorSearchResults<IDeviceAssignment>(response, HBaseUtils.getResumeToken(pager));
+	}
+
 	/**
 	 * List zones for a given site.
 	 * 
@@ -239,16 +296,48 @@ public class HBaseSite {
 		byte[] zonePrefix = getZoneRowKey(siteId);
 		byte[] after = getAssignmentRowKey(siteId);
 		BinaryPrefixComparator comparator = new BinaryPrefixComparator(zonePrefix);
-		Pager<byte[]> pager = getFilteredSiteRows(hbase, false, criteria, comparator, zonePrefix, after);
+		Pager<Result> pager = getFilteredSiteRows(hbase, false, criteria, comparator, zonePrefix, after);
 		List<IZone> response = new ArrayList<IZone>();
-		for (byte[] match : pager.getResults()) {
-			response.add(MarshalUtils.unmarshalJson(match, Zone.class));
+		for (Result match : pager.getResults()) {
+			response.add(MarshalUtils.unmarshal(HBaseUtils.getJsonContent(match), Zone.class));
 		}
 		return new SearchResults<IZone>(response, pager.getTotal());
 	}
 
 	/**
-	 * Get json associated with various rows in the site table based on regex filters.
+	 * List zones for a site a page at a time, resuming after the last zone of the previous
+	 * page.
+	 * 
+	 * @param hbase
+	 * @param siteToken
+	 * @param resumeToken
+	 *            token from the previous page or null for the first page
+	 * @param criteria
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static CursorSearchResults<IZone> listZonesForSite(ISiteWhereHBaseClient hbase, String siteToken,
+			String resumeToken, ISearchCriteria criteria) throws SiteWhereException {
+		Long siteId = IdManager.getInstance().getSiteKeys().getValue(siteToken);
+		if (siteId == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidSiteToken, ErrorLevel.ERROR);
+		}
+		byte[] zonePrefix = getZoneRowKey(siteId);
+		byte[] after = getAssignmentRowKey(siteId);
+		byte[] start = HBaseUtils.getResumeRow(zonePrefix, resumeToken);
+		BinaryPrefixComparator comparator = new BinaryPrefixComparator(zonePrefix);
+		Pager<Result> pager = new Pager<Result>(criteria, PagingMode.Cursor);
+		getFilteredSiteRows(hbase, false, pager, comparator, start, after);
+		List<IZone> response = new ArrayList<IZone>();
+		for (Result match : pager.getResults()) {
+			response.add(MarshalUtils.unmarshal(HBaseUtils.getJsonContent(match), Zone.class));
+		}
+		return new CursorSearchResults<IZone>(response, HBaseUtils.getResumeToken(pager));
+	}
+
+	/**
+	 * Get various rows in the site table based on regex filters. Only rows with JSON
+	 * content are included.
 	 * 
 	 * @param hbase
 	 * @param includeDeleted
@@ -256,9 +345,29 @@ public class HBaseSite {
 	 * @return
 	 * @throws SiteWhereException
 	 */
-	public static Pager<byte[]> getFilteredSiteRows(ISiteWhereHBaseClient hbase, boolean includeDeleted,
+	public static Pager<Result> getFilteredSiteRows(ISiteWhereHBaseClient hbase, boolean includeDeleted,
 			ISearchCriteria criteria, WritableByteArrayComparable comparator, byte[] startRow, byte[] stopRow)
 			throws SiteWhereException {
+		return getFilteredSiteRows(hbase, includeDeleted, new Pager<Result>(criteria), comparator, startRow,
+				stopRow);
+	}
+
+	/**
+	 * Get various rows in the site table based on regex filters, adding them to the given
+	 * pager. Stops scanning once the pager needs no more rows.
+	 * 
+	 * @param hbase
+	 * @param includeDeleted
+	 * @param pager
+	 * @param comparator
+	 * @param startRow
+	 * @param stopRow
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static Pager<Result> getFilteredSiteRows(ISiteWhereHBaseClient hbase, boolean includeDeleted,
+			Pager<Result> pager, WritableByteArrayComparable comparator, byte[] startRow, byte[] stopRow)
+			throws SiteWhereException {
 		HTableInterface sites = null;
 		ResultScanner scanner = null;
 		try {
@@ -271,24 +380,27 @@ public class HBaseSite {
 			if (stopRow != null) {
 				scan.setStopRow(stopRow);
 			}
+			ScanProfiles.get(ScanProfiles.ENTITY_LIST).apply(scan, pager.getExpectedRecords());
 			scan.setFilter(matcher);
 			scanner = sites.getScanner(scan);
 
-			Pager<byte[]> pager = new Pager<byte[]>(criteria);
 			for (Result result : scanner) {
 				boolean shouldAdd = true;
-				byte[] json = null;
+				boolean hasJson = false;
 				for (KeyValue column : result.raw()) {
 					byte[] qualifier = column.getQualifier();
 					if ((Bytes.equals(ISiteWhereHBase.DELETED, qualifier)) && (!includeDeleted)) {
 						shouldAdd = false;
 					}
 					if (Bytes.equals(ISiteWhereHBase.JSON_CONTENT, qualifier)) {
-						json = column.getValue();
+						hasJson = true;
 					}
 				}
-				if ((shouldAdd) && (json != null)) {
-					pager.process(json);
+				if ((shouldAdd) && (hasJson)) {
+					pager.process(result);
+				}
+				if (pager.isDone()) {
+					break;
 				}
 			}
 			return pager;
@@ -302,6 +414,45 @@ public class HBaseSite {
 		}
 	}
 
+	/**
+	 * Get the rows of all assignments for a site, including deleted ones, reading only a
+	 * single column from each. Rows that do not have the column are not returned.
+	 * 
+	 * @param hbase
+	 * @param siteId
+	 * @param qualifier
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static List<Result> getAssignmentRows(ISiteWhereHBaseClient hbase, Long siteId, byte[] qualifier)
+			throws SiteWhereException {
+		int keyLength = SITE_IDENTIFIER_LENGTH + 1 + HBaseDeviceAssignment.ASSIGNMENT_IDENTIFIER_LENGTH;
+		HTableInterface sites = null;
+		ResultScanner scanner = null;
+		try {
+			sites = hbase.getTableInterface(ISiteWhereHBase.SITES_TABLE_NAME);
+			Scan scan = new Scan(getAssignmentRowKey(siteId), getAfterAssignmentRowKey(siteId));
+			scan.addColumn(ISiteWhereHBase.FAMILY_ID, qualifier);
+			ScanProfiles.get(ScanProfiles.ENTITY_LIST).apply(scan);
+			scanner = sites.getScanner(scan);
+
+			List<Result> rows = new ArrayList<Result>();
+			for (Result result : scanner) {
+				if (result.getRow().length == keyLength) {
+					rows.add(result);
+				}
+			}
+			return rows;
+		} catch (IOException e) {
+			throw new SiteWhereException("Error scanning assignment rows.", e);
+		} finally {
+			if (scanner != null) {
+				scanner.close();
+			}
+			HBaseUtils.closeCleanly(sites);
+		}
+	}
+
 	/**
 	 * Delete an existing site.
 	 * 
@@ -336,7 +487,7 @@ public class HBaseSite {
 		} else {
 			byte[] marker = { (byte) 0x01 };
 			SiteWherePersistence.setUpdatedEntityMetadata(existing);
-			byte[] updated = MarshalUtils.marshalJson(existing);
+			byte[] updated = MarshalUtils.marshal(existing);
 			HTableInterface sites = null;
 			try {
 				sites = hbase.getTableInterface(ISiteWhereHBase.SITES_TABLE_NAME);
@@ -69,7 +69,7 @@ public class HBaseZone {
 		Zone zone = SiteWherePersistence.zoneCreateLogic(request, site.getToken(), uuid);
 
 		// Serialize as JSON.
-		byte[] json = MarshalUtils.marshalJson(zone);
+		byte[] json = MarshalUtils.marshal(zone);
 
 		HTableInterface sites = null;
 		try {
@@ -103,7 +103,7 @@ public class HBaseZone {
 		SiteWherePersistence.zoneUpdateLogic(request, updated);
 
 		byte[] zoneId = IdManager.getInstance().getZoneKeys().getValue(token);
-		byte[] json = MarshalUtils.marshalJson(updated);
+		byte[] json = MarshalUtils.marshal(updated);
 
 		HTableInterface sites = null;
 		try {
@@ -142,7 +142,7 @@ public class HBaseZone {
 			if (result.size() != 1) {
 				throw new SiteWhereException("Expected one JSON entry for zone and found: " + result.size());
 			}
-			return MarshalUtils.unmarshalJson(result.value(), Zone.class);
+			return MarshalUtils.unmarshal(result.value(), Zone.class);
 		} catch (IOException e) {
 			throw new SiteWhereException("Unable to load zone by token.", e);
 		} finally {
@@ -182,7 +182,7 @@ public class HBaseZone {
 		} else {
 			byte[] marker = { (byte) 0x01 };
 			SiteWherePersistence.setUpdatedEntityMetadata(existing);
-			byte[] updated = MarshalUtils.marshalJson(existing);
+			byte[] updated = MarshalUtils.marshal(existing);
 			HTableInterface sites = null;
 			try {
 				sites = hbase.getTableInterface(ISiteWhereHBase.SITES_TABLE_NAME);
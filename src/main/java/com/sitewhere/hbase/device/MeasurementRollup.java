@@ -0,0 +1,143 @@
+/*
+ * MeasurementRollup.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import java.util.Date;
+
+/**
+ * Count, sum, minimum and maximum of the values recorded for a measurement during one
+ * rollup period.
+ * 
+ * @author Derek
+ */
+public class MeasurementRollup {
+
+	/** Measurement name */
+	private String name;
+
+	/** Rollup resolution */
+	private RollupInterval interval;
+
+	/** Start of the period */
+	private Date periodStart;
+
+	/** Number of values */
+	private long count;
+
+	/** Sum of values */
+	private double sum;
+
+	/** Smallest value */
+	private double min = Double.POSITIVE_INFINITY;
+
+	/** Largest value */
+	private double max = Double.NEGATIVE_INFINITY;
+
+	public MeasurementRollup() {
+	}
+
+	public MeasurementRollup(String name, RollupInterval interval, Date periodStart) {
+		this.name = name;
+		this.interval = interval;
+		this.periodStart = periodStart;
+	}
+
+	/**
+	 * Include a single value.
+	 * 
+	 * @param value
+	 */
+	public void add(double value) {
+		count++;
+		sum += value;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * Include the values from another rollup for the same period.
+	 * 
+	 * @param other
+	 */
+	public void merge(MeasurementRollup other) {
+		if (other.getCount() == 0) {
+			return;
+		}
+		count += other.getCount();
+		sum += other.getSum();
+		min = Math.min(min, other.getMin());
+		max = Math.max(max, other.getMax());
+	}
+
+	/**
+	 * Get the average of the values in the period.
+	 * 
+	 * @return average or null if no values were recorded
+	 */
+	public Double getAverage() {
+		return (count > 0) ? sum / count : null;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public RollupInterval getInterval() {
+		return interval;
+	}
+
+	public void setInterval(RollupInterval interval) {
+		this.interval = interval;
+	}
+
+	public Date getPeriodStart() {
+		return periodStart;
+	}
+
+	public void setPeriodStart(Date periodStart) {
+		this.periodStart = periodStart;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public void setCount(long count) {
+		this.count = count;
+	}
+
+	public double getSum() {
+		return sum;
+	}
+
+	public void setSum(double sum) {
+		this.sum = sum;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	public void setMin(double min) {
+		this.min = min;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	public void setMax(double max) {
+		this.max = max;
+	}
+}
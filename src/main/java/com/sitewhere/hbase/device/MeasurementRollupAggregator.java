@@ -0,0 +1,320 @@
+/*
+ * MeasurementRollupAggregator.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.log4j.Logger;
+
+import com.sitewhere.hbase.ISiteWhereHBaseClient;
+import com.sitewhere.hbase.uid.IdManager;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.SiteWhereSystemException;
+import com.sitewhere.spi.device.IDeviceMeasurements;
+import com.sitewhere.spi.error.ErrorCode;
+import com.sitewhere.spi.error.ErrorLevel;
+
+/**
+ * Maintains minute, hour and day rollups of measurement values in memory as events are
+ * created and adds them to the rollups table periodically and on shutdown. Only values
+ * received since the last flush are written and they are added to the stored values
+ * rather than replacing them, so several aggregators may record values for the same
+ * assignment. Entries that see no updates for the idle timeout are removed once stored.
+ * 
+ * @author Derek
+ */
+public class MeasurementRollupAggregator {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(MeasurementRollupAggregator.class);
+
+	/** Time in milliseconds between writes of pending rollups */
+	private long flushIntervalMs = 5000;
+
+	/** Time in milliseconds an entry is kept without updates */
+	private long idleTimeoutMs = 10 * 60 * 1000;
+
+	/** Resolutions at which rollups are maintained */
+	private List<RollupInterval> intervals = new ArrayList<RollupInterval>();
+
+	/** HBase client used for reads and writes */
+	private ISiteWhereHBaseClient hbase;
+
+	/** Entries by row key */
+	private ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/** Runs periodic flushes */
+	private ScheduledExecutorService flusher;
+
+	public MeasurementRollupAggregator() {
+		intervals.add(RollupInterval.Minute);
+		intervals.add(RollupInterval.Hour);
+		intervals.add(RollupInterval.Day);
+	}
+
+	/**
+	 * Start periodic flushes.
+	 * 
+	 * @param hbase
+	 * @throws SiteWhereException
+	 */
+	public void start(ISiteWhereHBaseClient hbase) throws SiteWhereException {
+		this.hbase = hbase;
+		this.flusher = Executors.newSingleThreadScheduledExecutor();
+		flusher.scheduleWithFixedDelay(new Runnable() {
+
+			public void run() {
+				try {
+					flush();
+				} catch (Throwable t) {
+					LOGGER.error("Unable to flush measurement rollups.", t);
+				}
+			}
+		}, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+		LOGGER.info("Measurement rollup aggregator started with flush interval of " + flushIntervalMs
+				+ "ms.");
+	}
+
+	/**
+	 * Stop periodic flushes and write any pending rollups.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	public void stop() throws SiteWhereException {
+		if (flusher == null) {
+			return;
+		}
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(flushIntervalMs, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		LOGGER.info("Measurement rollup aggregator stopped.");
+	}
+
+	/**
+	 * Add the values from a measurements event to the rollups for its period at each
+	 * resolution.
+	 * 
+	 * @param measurements
+	 * @throws SiteWhereException
+	 */
+	public void add(IDeviceMeasurements measurements) throws SiteWhereException {
+		byte[] assnKey =
+				IdManager.getInstance().getAssignmentKeys().getValue(measurements.getDeviceAssignmentToken());
+		if (assnKey == null) {
+			throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+		}
+		long time =
+				(measurements.getEventDate() != null) ? measurements.getEventDate().getTime()
+						: System.currentTimeMillis();
+		for (Map.Entry<String, Double> measurement : measurements.getMeasurements().entrySet()) {
+			if ((measurement.getKey() == null) || (measurement.getValue() == null)) {
+				continue;
+			}
+			for (RollupInterval interval : intervals) {
+				add(assnKey, measurement.getKey(), interval, interval.getPeriodStart(time),
+						measurement.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Add a single value to the rollup for a period.
+	 * 
+	 * @param assnKey
+	 * @param name
+	 * @param interval
+	 * @param periodStart
+	 * @param value
+	 */
+	protected void add(byte[] assnKey, String name, RollupInterval interval, long periodStart, double value) {
+		byte[] rowkey = HBaseMeasurementRollup.getRowKey(assnKey, name, interval, periodStart);
+		String key = Bytes.toStringBinary(rowkey);
+		while (true) {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				entry = new Entry(rowkey, name, interval, periodStart);
+				Entry existing = entries.putIfAbsent(key, entry);
+				entry = (existing != null) ? existing : entry;
+			}
+			synchronized (entry) {
+				if (entry.isRemoved()) {
+					continue;
+				}
+				entry.getPending().add(value);
+				entry.setDirty(true);
+				entry.setLastUpdated(System.currentTimeMillis());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Add the values received since the last flush to the stored rollups and remove idle
+	 * entries. Values that could not be written are kept and retried on the next flush.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	public synchronized void flush() throws SiteWhereException {
+		Map<byte[], Entry> flushed = new TreeMap<byte[], Entry>(Bytes.BYTES_COMPARATOR);
+		Map<byte[], MeasurementRollup> pending =
+				new TreeMap<byte[], MeasurementRollup>(Bytes.BYTES_COMPARATOR);
+		long idleBefore = System.currentTimeMillis() - idleTimeoutMs;
+		for (Map.Entry<String, Entry> current : entries.entrySet()) {
+			Entry entry = current.getValue();
+			synchronized (entry) {
+				if (entry.isDirty()) {
+					flushed.put(entry.getRowkey(), entry);
+					pending.put(entry.getRowkey(), entry.getPending());
+					entry.setPending(entry.createRollup());
+					entry.setDirty(false);
+				} else if (entry.getLastUpdated() < idleBefore) {
+					entry.setRemoved(true);
+					entries.remove(current.getKey(), entry);
+				}
+			}
+		}
+		if (pending.isEmpty()) {
+			return;
+		}
+		int count = pending.size();
+		try {
+			HBaseMeasurementRollup.storeRollups(hbase, pending);
+		} catch (SiteWhereException e) {
+			for (Map.Entry<byte[], MeasurementRollup> unstored : pending.entrySet()) {
+				Entry entry = flushed.get(unstored.getKey());
+				synchronized (entry) {
+					entry.getPending().merge(unstored.getValue());
+					entry.setDirty(true);
+				}
+			}
+			throw e;
+		}
+		LOGGER.debug("Stored " + count + " measurement rollups.");
+	}
+
+	/**
+	 * Values for a single rollup period along with flush bookkeeping. All access is
+	 * synchronized on the entry.
+	 * 
+	 * @author Derek
+	 */
+	private static class Entry {
+
+		/** Row key for the period */
+		private byte[] rowkey;
+
+		/** Measurement name */
+		private String name;
+
+		/** Rollup resolution */
+		private RollupInterval interval;
+
+		/** Start of the period */
+		private long periodStart;
+
+		/** Values received since the last flush */
+		private MeasurementRollup pending;
+
+		/** Indicates values were received since last flush */
+		private boolean dirty;
+
+		/** Indicates entry is no longer in the map */
+		private boolean removed;
+
+		/** Time of last update */
+		private long lastUpdated = System.currentTimeMillis();
+
+		public Entry(byte[] rowkey, String name, RollupInterval interval, long periodStart) {
+			this.rowkey = rowkey;
+			this.name = name;
+			this.interval = interval;
+			this.periodStart = periodStart;
+			this.pending = createRollup();
+		}
+
+		public MeasurementRollup createRollup() {
+			return new MeasurementRollup(name, interval, new Date(periodStart));
+		}
+
+		public byte[] getRowkey() {
+			return rowkey;
+		}
+
+		public MeasurementRollup getPending() {
+			return pending;
+		}
+
+		public void setPending(MeasurementRollup pending) {
+			this.pending = pending;
+		}
+
+		public boolean isDirty() {
+			return dirty;
+		}
+
+		public void setDirty(boolean dirty) {
+			this.dirty = dirty;
+		}
+
+		public boolean isRemoved() {
+			return removed;
+		}
+
+		public void setRemoved(boolean removed) {
+			this.removed = removed;
+		}
+
+		public long getLastUpdated() {
+			return lastUpdated;
+		}
+
+		public void setLastUpdated(long lastUpdated) {
+			this.lastUpdated = lastUpdated;
+		}
+	}
+
+	public long getFlushIntervalMs() {
+		return flushIntervalMs;
+	}
+
+	public void setFlushIntervalMs(long flushIntervalMs) {
+		this.flushIntervalMs = flushIntervalMs;
+	}
+
+	public long getIdleTimeoutMs() {
+		return idleTimeoutMs;
+	}
+
+	public void setIdleTimeoutMs(long idleTimeoutMs) {
+		this.idleTimeoutMs = idleTimeoutMs;
+	}
+
+	public List<RollupInterval> getIntervals() {
+		return intervals;
+	}
+
+	public void setIntervals(List<RollupInterval> intervals) {
+		this.intervals = intervals;
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * RollupInterval.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+/**
+ * Resolution at which measurement rollups are maintained.
+ * 
+ * @author Derek
+ */
+public enum RollupInterval {
+
+	/** One minute periods */
+	Minute((byte) 0x01, 60 * 1000L),
+
+	/** One hour periods */
+	Hour((byte) 0x02, 60 * 60 * 1000L),
+
+	/** One day periods (UTC) */
+	Day((byte) 0x03, 24 * 60 * 60 * 1000L);
+
+	/** Type indicator */
+	private byte type;
+
+	/** Period length in milliseconds */
+	private long length;
+
+	private RollupInterval(byte type, long length) {
+		this.type = type;
+		this.length = length;
+	}
+
+	/**
+	 * Get the interval type indicator.
+	 * 
+	 * @return
+	 */
+	public byte getType() {
+		return type;
+	}
+
+	/**
+	 * Get the period length in milliseconds.
+	 * 
+	 * @return
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Get the start of the period that contains the given time.
+	 * 
+	 * @param time
+	 * @return
+	 */
+	public long getPeriodStart(long time) {
+		return time - (((time % length) + length) % length);
+	}
+
+	/**
+	 * Get the interval for a type indicator.
+	 * 
+	 * @param type
+	 * @return interval or null if not recognized
+	 */
+	public static RollupInterval getByType(byte type) {
+		for (RollupInterval value : values()) {
+			if (value.getType() == type) {
+				return value;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,712 @@
+/*
+ * ZoneGeofenceEngine.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+
+import com.sitewhere.hbase.ISiteWhereHBaseClient;
+import com.sitewhere.hbase.common.CursorSearchResults;
+import com.sitewhere.hbase.common.GeoHash;
+import com.sitewhere.rest.model.device.request.DeviceAlertCreateRequest;
+import com.sitewhere.rest.model.search.SearchCriteria;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.common.ILocation;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceLocation;
+import com.sitewhere.spi.device.IZone;
+import com.sitewhere.spi.device.request.IDeviceAlertCreateRequest;
+
+/**
+ * Tests device locations against the zones of their site as they are created and
+ * reports assignments entering or leaving zones. Zone polygons for a site are loaded
+ * from the sites table the first time a location for the site is tested and are indexed
+ * in memory by the geohash cells that cover them, so a location is only tested against
+ * zones whose cells contain it. Only one thread loads the zones of a site at a time.
+ * Zones for a site are loaded again before next use after a zone is changed through the
+ * device management instance. Once the reload interval passes they are reloaded in the
+ * background while the old zones stay in use, so changes made by other instances are
+ * eventually seen.
+ * 
+ * Zone membership per assignment is kept in memory only. The first location tested for
+ * an assignment sets its membership without reporting changes, and locations older than
+ * the last one tested for the assignment are ignored. Membership is dropped when the
+ * assignment ends or is deleted, or when no location has been tested for the idle
+ * timeout.
+ * 
+ * @author Derek
+ */
+public class ZoneGeofenceEngine {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(ZoneGeofenceEngine.class);
+
+	/** Number of zones read per page when loading a site */
+	private static final int ZONE_PAGE_SIZE = 100;
+
+	/** Metadata name for the token of the zone an alert refers to */
+	public static final String ZONE_TOKEN_METADATA = "zoneToken";
+
+	/** Time in milliseconds before zones for a site are reloaded */
+	private long reloadIntervalMs = 60 * 1000;
+
+	/** Time in milliseconds membership is kept for an assignment without new locations */
+	private long idleTimeoutMs = 60 * 60 * 1000;
+
+	/** Maximum number of cells a zone is indexed under */
+	private int maxCellsPerZone = 16;
+
+	/** Alert type for an assignment entering a zone */
+	private String enteredAlertType = "zone.entered";
+
+	/** Alert type for an assignment leaving a zone */
+	private String exitedAlertType = "zone.exited";
+
+	/** Alert source */
+	private String alertSource = "System";
+
+	/** HBase client used to load zones */
+	private ISiteWhereHBaseClient hbase;
+
+	/** Zones by site token */
+	private ConcurrentMap<String, SiteZones> sites = new ConcurrentHashMap<String, SiteZones>();
+
+	/** Zone membership by assignment token */
+	private ConcurrentMap<String, Membership> memberships = new ConcurrentHashMap<String, Membership>();
+
+	/** Number of times zones have been invalidated. Guarded by the sites map */
+	private long invalidations;
+
+	/** Loads in progress for sites that have no zones loaded */
+	private ConcurrentMap<String, FutureTask<SiteZones>> loads =
+			new ConcurrentHashMap<String, FutureTask<SiteZones>>();
+
+	/** Reloads zones in the background and removes idle membership */
+	private ScheduledExecutorService background;
+
+	/**
+	 * Start the engine.
+	 * 
+	 * @param hbase
+	 * @throws SiteWhereException
+	 */
+	public void start(ISiteWhereHBaseClient hbase) throws SiteWhereException {
+		this.hbase = hbase;
+		this.background = Executors.newSingleThreadScheduledExecutor();
+		background.scheduleWithFixedDelay(new Runnable() {
+
+			public void run() {
+				try {
+					removeIdle();
+				} catch (Throwable t) {
+					LOGGER.error("Unable to remove idle zone membership.", t);
+				}
+			}
+		}, reloadIntervalMs, reloadIntervalMs, TimeUnit.MILLISECONDS);
+		LOGGER.info("Zone geofence engine started with reload interval of " + reloadIntervalMs + "ms.");
+	}
+
+	/**
+	 * Stop the engine and discard zones and membership.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	public void stop() throws SiteWhereException {
+		if (background != null) {
+			background.shutdownNow();
+		}
+		sites.clear();
+		memberships.clear();
+		LOGGER.info("Zone geofence engine stopped.");
+	}
+
+	/**
+	 * Drop zone membership for an assignment. Used when the assignment ends or is deleted.
+	 * 
+	 * @param assignmentToken
+	 */
+	public void remove(String assignmentToken) {
+		if (assignmentToken == null) {
+			return;
+		}
+		Membership membership = memberships.remove(assignmentToken);
+		if (membership != null) {
+			synchronized (membership) {
+				membership.setRemoved(true);
+			}
+		}
+	}
+
+	/**
+	 * Drop zone membership for assignments that have not had a location tested for the
+	 * idle timeout.
+	 */
+	public void removeIdle() {
+		long idleBefore = System.currentTimeMillis() - idleTimeoutMs;
+		int removed = 0;
+		for (Map.Entry<String, Membership> current : memberships.entrySet()) {
+			Membership membership = current.getValue();
+			synchronized (membership) {
+				if ((!membership.isRemoved()) && (membership.getLastUsed() < idleBefore)) {
+					membership.setRemoved(true);
+					memberships.remove(current.getKey(), membership);
+					removed++;
+				}
+			}
+		}
+		if (removed > 0) {
+			LOGGER.debug("Removed zone membership for " + removed + " idle assignments.");
+		}
+	}
+
+	/**
+	 * Indicate that zones for a site have changed so they are reloaded on next use.
+	 * 
+	 * @param siteToken
+	 */
+	public void invalidate(String siteToken) {
+		if (siteToken != null) {
+			synchronized (sites) {
+				invalidations++;
+				sites.remove(siteToken);
+			}
+		}
+	}
+
+	/**
+	 * Test a location against the zones of its site and get requests for alerts that
+	 * report zones the assignment has entered or left.
+	 * 
+	 * @param assignment
+	 * @param location
+	 * @return alert requests, empty if membership has not changed
+	 * @throws SiteWhereException
+	 */
+	public List<IDeviceAlertCreateRequest> evaluate(IDeviceAssignment assignment, IDeviceLocation location)
+			throws SiteWhereException {
+		List<IDeviceAlertCreateRequest> alerts = new ArrayList<IDeviceAlertCreateRequest>();
+		if ((location.getLatitude() == null) || (location.getLongitude() == null)
+				|| (assignment.getSiteToken() == null)) {
+			return alerts;
+		}
+		SiteZones zones = getSiteZones(assignment.getSiteToken());
+		Map<String, ZonePolygon> inside = zones.getContaining(location.getLatitude(), location.getLongitude());
+		long time =
+				(location.getEventDate() != null) ? location.getEventDate().getTime()
+						: System.currentTimeMillis();
+
+		while (true) {
+			Membership membership = memberships.get(assignment.getToken());
+			if (membership == null) {
+				membership = new Membership();
+				Membership existing = memberships.putIfAbsent(assignment.getToken(), membership);
+				membership = (existing != null) ? existing : membership;
+			}
+			synchronized (membership) {
+				if (membership.isRemoved()) {
+					continue;
+				}
+				membership.setLastUsed(System.currentTimeMillis());
+				Map<String, ZonePolygon> previous = membership.getZones();
+				if ((previous != null) && (time < membership.getLastTime())) {
+					return alerts;
+				}
+				membership.setZones(inside);
+				membership.setLastTime(time);
+				if (previous == null) {
+					return alerts;
+				}
+				for (ZonePolygon zone : inside.values()) {
+					if (!previous.containsKey(zone.getToken())) {
+						alerts.add(createAlert(enteredAlertType, "Entered zone '" + zone.getName() + "'.",
+								zone, location));
+					}
+				}
+				for (ZonePolygon zone : previous.values()) {
+					if ((!inside.containsKey(zone.getToken())) && (zones.contains(zone.getToken()))) {
+						alerts.add(createAlert(exitedAlertType, "Left zone '" + zone.getName() + "'.", zone,
+								location));
+					}
+				}
+				return alerts;
+			}
+		}
+	}
+
+	/**
+	 * Create the request for an alert about a zone.
+	 * 
+	 * @param type
+	 * @param message
+	 * @param zone
+	 * @param location
+	 * @return
+	 */
+	protected IDeviceAlertCreateRequest createAlert(String type, String message, ZonePolygon zone,
+			IDeviceLocation location) {
+		DeviceAlertCreateRequest alert = new DeviceAlertCreateRequest();
+		alert.setSource(alertSource);
+		alert.setType(type);
+		alert.setMessage(message);
+		alert.setEventDate(location.getEventDate());
+		alert.addOrReplaceMetadata(ZONE_TOKEN_METADATA, zone.getToken());
+		return alert;
+	}
+
+	/**
+	 * Get zones for a site. If none are loaded, the calling thread waits for them to load,
+	 * with a single load shared by all threads. If they are older than the reload
+	 * interval, a reload is started in the background and the current zones are returned.
+	 * 
+	 * @param siteToken
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected SiteZones getSiteZones(final String siteToken) throws SiteWhereException {
+		SiteZones zones = sites.get(siteToken);
+		if (zones == null) {
+			return waitForLoad(siteToken);
+		}
+		if ((zones.getLoaded() + reloadIntervalMs <= System.currentTimeMillis()) && (zones.claimReload())) {
+			final SiteZones current = zones;
+			try {
+				background.execute(new Runnable() {
+
+					public void run() {
+						try {
+							loadSiteZones(siteToken, current);
+						} catch (Throwable t) {
+							current.releaseReload();
+							LOGGER.error("Unable to reload zones for site " + siteToken + ".", t);
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				current.releaseReload();
+			}
+		}
+		return zones;
+	}
+
+	/**
+	 * Load zones for a site that has none loaded. If another thread is already loading
+	 * them, wait for that load instead of starting another.
+	 * 
+	 * @param siteToken
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected SiteZones waitForLoad(final String siteToken) throws SiteWhereException {
+		FutureTask<SiteZones> load = new FutureTask<SiteZones>(new Callable<SiteZones>() {
+
+			public SiteZones call() throws Exception {
+				return loadSiteZones(siteToken, null);
+			}
+		});
+		FutureTask<SiteZones> existing = loads.putIfAbsent(siteToken, load);
+		if (existing == null) {
+			try {
+				load.run();
+			} finally {
+				loads.remove(siteToken, load);
+			}
+			existing = load;
+		}
+		try {
+			return existing.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SiteWhereException) {
+				throw (SiteWhereException) e.getCause();
+			}
+			throw new SiteWhereException("Unable to load zones for site.", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SiteWhereException("Interrupted while waiting for zones to load.", e);
+		}
+	}
+
+	/**
+	 * Read zones for a site from HBase and replace those held in memory. The zones are
+	 * not kept if zones were invalidated during the read or the previous zones are no
+	 * longer current, since the read may have missed the change.
+	 * 
+	 * @param siteToken
+	 * @param previous
+	 *            zones being reloaded or null if none are loaded
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	protected SiteZones loadSiteZones(String siteToken, SiteZones previous) throws SiteWhereException {
+		long version;
+		synchronized (sites) {
+			version = invalidations;
+		}
+		SiteZones zones = new SiteZones(maxCellsPerZone);
+		String resumeToken = null;
+		do {
+			CursorSearchResults<IZone> page =
+					HBaseSite.listZonesForSite(hbase, siteToken, resumeToken, new SearchCriteria(1,
+							ZONE_PAGE_SIZE));
+			for (IZone zone : page.getResults()) {
+				zones.add(zone);
+			}
+			resumeToken = page.getResumeToken();
+		} while (resumeToken != null);
+		synchronized (sites) {
+			if (invalidations == version) {
+				if (previous == null) {
+					sites.put(siteToken, zones);
+				} else {
+					sites.replace(siteToken, previous, zones);
+				}
+			}
+		}
+		LOGGER.debug("Loaded " + zones.size() + " zones for site " + siteToken + ".");
+		return zones;
+	}
+
+	/**
+	 * Zones for a site indexed by the geohash cells that cover their bounding boxes. Each
+	 * zone is indexed at the finest precision that needs no more than the maximum number
+	 * of cells, so a location is looked up once for each geohash prefix, including the
+	 * empty prefix used for very large zones. Instances are not modified once loaded.
+	 * 
+	 * @author Derek
+	 */
+	private static class SiteZones {
+
+		/** Time zones were loaded */
+		private long loaded = System.currentTimeMillis();
+
+		/** Indicates a reload of the site has been started */
+		private AtomicBoolean reloading = new AtomicBoolean();
+
+		/** Maximum number of cells a zone is indexed under */
+		private int maxCells;
+
+		/** Zones by cell */
+		private Map<String, List<ZonePolygon>> cells = new HashMap<String, List<ZonePolygon>>();
+
+		/** Zones by token */
+		private Map<String, ZonePolygon> zones = new HashMap<String, ZonePolygon>();
+
+		public SiteZones(int maxCells) {
+			this.maxCells = maxCells;
+		}
+
+		/**
+		 * Add a zone. Zones with fewer than three valid coordinates are ignored.
+		 * 
+		 * @param zone
+		 */
+		public void add(IZone zone) {
+			ZonePolygon polygon = ZonePolygon.create(zone);
+			if (polygon == null) {
+				return;
+			}
+			zones.put(polygon.getToken(), polygon);
+			for (String cell : GeoHash.getCoveringHashes(polygon.getMinLat(), polygon.getMaxLat(),
+					polygon.getMinLng(), polygon.getMaxLng(), HBaseLocationIndex.INDEX_PRECISION, maxCells)) {
+				List<ZonePolygon> existing = cells.get(cell);
+				if (existing == null) {
+					existing = new ArrayList<ZonePolygon>();
+					cells.put(cell, existing);
+				}
+				existing.add(polygon);
+			}
+		}
+
+		/**
+		 * Get the zones that contain a point.
+		 * 
+		 * @param latitude
+		 * @param longitude
+		 * @return zones by token
+		 */
+		public Map<String, ZonePolygon> getContaining(double latitude, double longitude) {
+			Map<String, ZonePolygon> containing = new LinkedHashMap<String, ZonePolygon>();
+			if (zones.isEmpty()) {
+				return containing;
+			}
+			String hash = GeoHash.encode(latitude, longitude, HBaseLocationIndex.INDEX_PRECISION);
+			for (int i = 0; i <= hash.length(); i++) {
+				List<ZonePolygon> candidates = cells.get(hash.substring(0, i));
+				if (candidates == null) {
+					continue;
+				}
+				for (ZonePolygon zone : candidates) {
+					if (zone.contains(latitude, longitude)) {
+						containing.put(zone.getToken(), zone);
+					}
+				}
+			}
+			return containing;
+		}
+
+		public boolean contains(String token) {
+			return zones.containsKey(token);
+		}
+
+		public int size() {
+			return zones.size();
+		}
+
+		public long getLoaded() {
+			return loaded;
+		}
+
+		/**
+		 * Claim the reload of the site. Only the first caller succeeds.
+		 * 
+		 * @return true if the caller should reload the site
+		 */
+		public boolean claimReload() {
+			return reloading.compareAndSet(false, true);
+		}
+
+		/**
+		 * Allow the reload to be claimed again after it failed.
+		 */
+		public void releaseReload() {
+			reloading.set(false);
+		}
+	}
+
+	/**
+	 * Polygon for a zone with its bounding box.
+	 * 
+	 * @author Derek
+	 */
+	private static class ZonePolygon {
+
+		/** Zone token */
+		private String token;
+
+		/** Zone name */
+		private String name;
+
+		/** Vertex latitudes */
+		private double[] lats;
+
+		/** Vertex longitudes */
+		private double[] lngs;
+
+		/** Smallest vertex latitude */
+		private double minLat;
+
+		/** Largest vertex latitude */
+		private double maxLat;
+
+		/** Smallest vertex longitude */
+		private double minLng;
+
+		/** Largest vertex longitude */
+		private double maxLng;
+
+		/**
+		 * Create a polygon from a zone.
+		 * 
+		 * @param zone
+		 * @return polygon or null if the zone has fewer than three valid coordinates
+		 */
+		public static ZonePolygon create(IZone zone) {
+			List<ILocation> valid = new ArrayList<ILocation>();
+			if (zone.getCoordinates() != null) {
+				for (ILocation coordinate : zone.getCoordinates()) {
+					if ((coordinate.getLatitude() != null) && (coordinate.getLongitude() != null)) {
+						valid.add(coordinate);
+					}
+				}
+			}
+			if (valid.size() < 3) {
+				return null;
+			}
+			ZonePolygon polygon = new ZonePolygon();
+			polygon.token = zone.getToken();
+			polygon.name = zone.getName();
+			polygon.lats = new double[valid.size()];
+			polygon.lngs = new double[valid.size()];
+			polygon.minLat = polygon.minLng = Double.MAX_VALUE;
+			polygon.maxLat = polygon.maxLng = -Double.MAX_VALUE;
+			for (int i = 0; i < valid.size(); i++) {
+				polygon.lats[i] = valid.get(i).getLatitude();
+				polygon.lngs[i] = valid.get(i).getLongitude();
+				polygon.minLat = Math.min(polygon.minLat, polygon.lats[i]);
+				polygon.maxLat = Math.max(polygon.maxLat, polygon.lats[i]);
+				polygon.minLng = Math.min(polygon.minLng, polygon.lngs[i]);
+				polygon.maxLng = Math.max(polygon.maxLng, polygon.lngs[i]);
+			}
+			return polygon;
+		}
+
+		/**
+		 * Test whether a point is inside the polygon by counting edge crossings of a ray
+		 * from the point.
+		 * 
+		 * @param latitude
+		 * @param longitude
+		 * @return
+		 */
+		public boolean contains(double latitude, double longitude) {
+			if ((latitude < minLat) || (latitude > maxLat) || (longitude < minLng) || (longitude > maxLng)) {
+				return false;
+			}
+			boolean inside = false;
+			for (int i = 0, j = lats.length - 1; i < lats.length; j = i++) {
+				if (((lats[i] > latitude) != (lats[j] > latitude))
+						&& (longitude < (lngs[j] - lngs[i]) * (latitude - lats[i]) / (lats[j] - lats[i])
+								+ lngs[i])) {
+					inside = !inside;
+				}
+			}
+			return inside;
+		}
+
+		public String getToken() {
+			return token;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public double getMinLat() {
+			return minLat;
+		}
+
+		public double getMaxLat() {
+			return maxLat;
+		}
+
+		public double getMinLng() {
+			return minLng;
+		}
+
+		public double getMaxLng() {
+			return maxLng;
+		}
+	}
+
+	/**
+	 * Zones an assignment was in as of its most recent location. All access is
+	 * synchronized on the instance.
+	 * 
+	 * @author Derek
+	 */
+	private static class Membership {
+
+		/** Zones by token or null if no location has been tested */
+		private Map<String, ZonePolygon> zones;
+
+		/** Time of the most recent location tested */
+		private long lastTime;
+
+		/** System time the membership was last used */
+		private long lastUsed = System.currentTimeMillis();
+
+		/** Indicates membership is no longer in the map */
+		private boolean removed;
+
+		public Map<String, ZonePolygon> getZones() {
+			return zones;
+		}
+
+		public void setZones(Map<String, ZonePolygon> zones) {
+			this.zones = zones;
+		}
+
+		public long getLastTime() {
+			return lastTime;
+		}
+
+		public void setLastTime(long lastTime) {
+			this.lastTime = lastTime;
+		}
+
+		public long getLastUsed() {
+			return lastUsed;
+		}
+
+		public void setLastUsed(long lastUsed) {
+			this.lastUsed = lastUsed;
+		}
+
+		public boolean isRemoved() {
+			return removed;
+		}
+
+		public void setRemoved(boolean removed) {
+			this.removed = removed;
+		}
+	}
+
+	public long getReloadIntervalMs() {
+		return reloadIntervalMs;
+	}
+
+	public void setReloadIntervalMs(long reloadIntervalMs) {
+		this.reloadIntervalMs = reloadIntervalMs;
+	}
+
+	public long getIdleTimeoutMs() {
+		return idleTimeoutMs;
+	}
+
+	public void setIdleTimeoutMs(long idleTimeoutMs) {
+		this.idleTimeoutMs = idleTimeoutMs;
+	}
+
+	public int getMaxCellsPerZone() {
+		return maxCellsPerZone;
+	}
+
+	public void setMaxCellsPerZone(int maxCellsPerZone) {
+		this.maxCellsPerZone = maxCellsPerZone;
+	}
+
+	public String getEnteredAlertType() {
+		return enteredAlertType;
+	}
+
+	public void setEnteredAlertType(String enteredAlertType) {
+		this.enteredAlertType = enteredAlertType;
+	}
+
+	public String getExitedAlertType() {
+		return exitedAlertType;
+	}
+
+	public void setExitedAlertType(String exitedAlertType) {
+		this.exitedAlertType = exitedAlertType;
+	}
+
+	public String getAlertSource() {
+		return alertSource;
+	}
+
+	public void setAlertSource(String alertSource) {
+		this.alertSource = alertSource;
+	}
+}
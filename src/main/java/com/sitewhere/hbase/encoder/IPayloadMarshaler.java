@@ -0,0 +1,75 @@
+/*
+ * IPayloadMarshaler.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.encoder;
+
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Converts entities to and from the byte payloads stored in HBase. Implementations must
+ * be thread safe since a single instance is shared by all DAO calls.
+ * 
+ * @author Derek
+ */
+public interface IPayloadMarshaler {
+
+	/**
+	 * Get a short name for the payload format.
+	 * 
+	 * @return
+	 */
+	public String getName();
+
+	/**
+	 * Encode an object as a payload.
+	 * 
+	 * @param object
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public byte[] encode(Object object) throws SiteWhereException;
+
+	/**
+	 * Decode a payload to an object of the given type.
+	 * 
+	 * @param payload
+	 * @param type
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public <T> T decode(byte[] payload, Class<T> type) throws SiteWhereException;
+
+	/**
+	 * Decode part of a byte array to an object of the given type.
+	 * 
+	 * @param payload
+	 * @param offset
+	 * @param length
+	 * @param type
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public <T> T decode(byte[] payload, int offset, int length, Class<T> type) throws SiteWhereException;
+
+	/**
+	 * Indicates whether the payload is in the format written by this marshaler.
+	 * 
+	 * @param payload
+	 * @return
+	 */
+	public boolean isEncodedBy(byte[] payload);
+
+	/**
+	 * Prepare for encoding and decoding the given types so that the first calls do not pay
+	 * for introspection.
+	 * 
+	 * @param types
+	 */
+	public void prepare(Class<?>... types);
+}
@@ -0,0 +1,138 @@
+/*
+ * JacksonPayloadMarshaler.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.encoder;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Base class for marshalers backed by a Jackson {@link ObjectMapper}. A reader and writer
+ * are bound once per type and cached. Both are immutable, so they can be shared between
+ * threads without locking.
+ * 
+ * @author Derek
+ */
+public abstract class JacksonPayloadMarshaler implements IPayloadMarshaler {
+
+	/** Mapper that creates readers and writers */
+	private ObjectMapper mapper;
+
+	/** Readers bound to a type */
+	private ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<Class<?>, ObjectReader>();
+
+	/** Writers bound to a type */
+	private ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+
+	public JacksonPayloadMarshaler(ObjectMapper mapper) {
+		this.mapper = mapper;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.hbase.encoder.IPayloadMarshaler#encode(java.lang.Object)
+	 */
+	@Override
+	public byte[] encode(Object object) throws SiteWhereException {
+		if (object == null) {
+			throw new SiteWhereException("Unable to encode null value as " + getName() + ".");
+		}
+		try {
+			return getWriter(object.getClass()).writeValueAsBytes(object);
+		} catch (Throwable e) {
+			throw new SiteWhereException("Could not marshal " + object.getClass().getSimpleName() + " as "
+					+ getName() + ".", e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.hbase.encoder.IPayloadMarshaler#decode(byte[], java.lang.Class)
+	 */
+	@Override
+	public <T> T decode(byte[] payload, Class<T> type) throws SiteWhereException {
+		return decode(payload, 0, payload.length, type);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.hbase.encoder.IPayloadMarshaler#decode(byte[], int, int,
+	 * java.lang.Class)
+	 */
+	@Override
+	public <T> T decode(byte[] payload, int offset, int length, Class<T> type) throws SiteWhereException {
+		try {
+			return getReader(type).readValue(payload, offset, length);
+		} catch (Throwable e) {
+			throw new SiteWhereException("Unable to parse " + getName() + " as " + type.getSimpleName() + ".",
+					e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.hbase.encoder.IPayloadMarshaler#prepare(java.lang.Class<?>[])
+	 */
+	@Override
+	public void prepare(Class<?>... types) {
+		for (Class<?> type : types) {
+			getReader(type);
+			getWriter(type);
+		}
+	}
+
+	/**
+	 * Get the reader bound to a type, creating it if necessary.
+	 * 
+	 * @param type
+	 * @return
+	 */
+	protected ObjectReader getReader(Class<?> type) {
+		ObjectReader reader = readers.get(type);
+		if (reader == null) {
+			reader = mapper.reader(type);
+			ObjectReader existing = readers.putIfAbsent(type, reader);
+			if (existing != null) {
+				reader = existing;
+			}
+		}
+		return reader;
+	}
+
+	/**
+	 * Get the writer bound to a type, creating it if necessary.
+	 * 
+	 * @param type
+	 * @return
+	 */
+	protected ObjectWriter getWriter(Class<?> type) {
+		ObjectWriter writer = writers.get(type);
+		if (writer == null) {
+			writer = mapper.writerWithType(type);
+			ObjectWriter existing = writers.putIfAbsent(type, writer);
+			if (existing != null) {
+				writer = existing;
+			}
+		}
+		return writer;
+	}
+
+	public ObjectMapper getMapper() {
+		return mapper;
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * JsonPayloadMarshaler.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.encoder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Stores entities as JSON. This is the format used by all existing data.
+ * 
+ * @author Derek
+ */
+public class JsonPayloadMarshaler extends JacksonPayloadMarshaler {
+
+	public JsonPayloadMarshaler() {
+		super(new ObjectMapper());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.hbase.encoder.IPayloadMarshaler#getName()
+	 */
+	@Override
+	public String getName() {
+		return "JSON";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.hbase.encoder.IPayloadMarshaler#isEncodedBy(byte[])
+	 */
+	@Override
+	public boolean isEncodedBy(byte[] payload) {
+		return (payload != null) && (payload.length > 0) && ((payload[0] == '{') || (payload[0] == '['));
+	}
+}
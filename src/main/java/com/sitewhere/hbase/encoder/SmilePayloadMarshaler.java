@@ -0,0 +1,67 @@
+/*
+ * SmilePayloadMarshaler.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.encoder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * Stores entities as Smile (binary JSON). Payloads are smaller than JSON and faster to
+ * parse. The Smile header is always written, which allows these payloads to be told
+ * apart from JSON when reading.
+ * 
+ * @author Derek
+ */
+public class SmilePayloadMarshaler extends JacksonPayloadMarshaler {
+
+	/** First byte of the Smile header */
+	private static final byte HEADER_BYTE_1 = ':';
+
+	/** Second byte of the Smile header */
+	private static final byte HEADER_BYTE_2 = ')';
+
+	public SmilePayloadMarshaler() {
+		super(new ObjectMapper(createFactory()));
+	}
+
+	/**
+	 * Create the factory for Smile content.
+	 * 
+	 * @return
+	 */
+	protected static SmileFactory createFactory() {
+		SmileFactory factory = new SmileFactory();
+		factory.configure(SmileGenerator.Feature.WRITE_HEADER, true);
+		factory.configure(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES, true);
+		return factory;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.hbase.encoder.IPayloadMarshaler#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Smile";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.hbase.encoder.IPayloadMarshaler#isEncodedBy(byte[])
+	 */
+	@Override
+	public boolean isEncodedBy(byte[] payload) {
+		return (payload != null) && (payload.length > 2) && (payload[0] == HEADER_BYTE_1)
+				&& (payload[1] == HEADER_BYTE_2);
+	}
+}
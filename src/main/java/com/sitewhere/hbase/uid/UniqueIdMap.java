@@ -28,6 +28,7 @@ import org.apache.hadoop.hbase.util.Bytes;
 import com.sitewhere.hbase.ISiteWhereHBase;
 import com.sitewhere.hbase.ISiteWhereHBaseClient;
 import com.sitewhere.hbase.common.HBaseUtils;
+import com.sitewhere.hbase.common.ScanProfiles;
 import com.sitewhere.spi.SiteWhereException;
 
 /**
@@ -53,7 +54,7 @@ public abstract class UniqueIdMap<N, V> {
 	private Map<N, V> nameToValue = new HashMap<N, V>();
 
 	/** Maps of values to names */
-	private Map<V, N> valueToName = new HashMap<V, N>();
+	private Map<V, N> valueToName = createValueToNameMap();
 
 	public UniqueIdMap(ISiteWhereHBaseClient hbase, UniqueIdType keyIndicator, UniqueIdType valueIndicator) {
 		this.hbase = hbase;
@@ -61,6 +62,16 @@ public abstract class UniqueIdMap<N, V> {
 		this.valueIndicator = valueIndicator;
 	}
 
+	/**
+	 * Create the map used to cache value to name lookups. Subclasses whose values do not
+	 * implement equals() and hashCode() should override this.
+	 * 
+	 * @return
+	 */
+	protected Map<V, N> createValueToNameMap() {
+		return new HashMap<V, N>();
+	}
+
 	/**
 	 * Create mapping and reverse mapping in UID table. Create value-to-name first, so if
 	 * it fails we do not have names without reverse mappings.
@@ -244,6 +255,7 @@ public abstract class UniqueIdMap<N, V> {
 			Scan scan = new Scan();
 			scan.setStartRow(startKey);
 			scan.setStopRow(stopKey);
+			ScanProfiles.get(ScanProfiles.UID_LOAD).apply(scan);
 			scanner = uids.getScanner(scan);
 
 			List<Result> results = new ArrayList<Result>();
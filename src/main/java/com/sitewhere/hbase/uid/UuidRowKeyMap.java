@@ -9,8 +9,12 @@
  */
 package com.sitewhere.hbase.uid;
 
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 
+import org.apache.hadoop.hbase.util.Bytes;
+
 import com.sitewhere.hbase.ISiteWhereHBaseClient;
 import com.sitewhere.spi.SiteWhereException;
 
@@ -38,6 +42,16 @@ public class UuidRowKeyMap extends UniqueIdMap<String, byte[]> {
 		return uuid;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.sitewhere.hbase.uid.UniqueIdMap#createValueToNameMap()
+	 */
+	@Override
+	protected Map<byte[], String> createValueToNameMap() {
+		return new TreeMap<byte[], String>(Bytes.BYTES_COMPARATOR);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -30,6 +30,7 @@ import com.sitewhere.hbase.ISiteWhereHBase;
 import com.sitewhere.hbase.ISiteWhereHBaseClient;
 import com.sitewhere.hbase.common.HBaseUtils;
 import com.sitewhere.hbase.common.MarshalUtils;
+import com.sitewhere.hbase.common.ScanProfiles;
 import com.sitewhere.rest.model.user.GrantedAuthority;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.SiteWhereSystemException;
@@ -65,7 +66,7 @@ public class HBaseGrantedAuthority {
 		// Create the new granted authority and store it.
 		GrantedAuthority auth = SiteWherePersistence.grantedAuthorityCreateLogic(request);
 		byte[] primary = getGrantedAuthorityRowKey(request.getAuthority());
-		byte[] json = MarshalUtils.marshalJson(auth);
+		byte[] json = MarshalUtils.marshal(auth);
 
 		HTableInterface users = null;
 		try {
@@ -107,7 +108,7 @@ public class HBaseGrantedAuthority {
 				throw new SiteWhereException("Expected one JSON entry for granted authority and found: "
 						+ result.size());
 			}
-			return MarshalUtils.unmarshalJson(result.value(), GrantedAuthority.class);
+			return MarshalUtils.unmarshal(result.value(), GrantedAuthority.class);
 		} catch (IOException e) {
 			throw new SiteWhereException("Unable to load granted authority by name.", e);
 		} finally {
@@ -132,6 +133,7 @@ public class HBaseGrantedAuthority {
 			Scan scan = new Scan();
 			scan.setStartRow(new byte[] { UserRecordType.GrantedAuthority.getType() });
 			scan.setStopRow(new byte[] { UserRecordType.End.getType() });
+			ScanProfiles.get(ScanProfiles.ENTITY_LIST).apply(scan);
 			scanner = users.getScanner(scan);
 
 			ArrayList<IGrantedAuthority> matches = new ArrayList<IGrantedAuthority>();
@@ -145,7 +147,7 @@ public class HBaseGrantedAuthority {
 					}
 				}
 				if ((shouldAdd) && (json != null)) {
-					matches.add(MarshalUtils.unmarshalJson(json, GrantedAuthority.class));
+					matches.add(MarshalUtils.unmarshal(json, GrantedAuthority.class));
 				}
 			}
 			return matches;
@@ -32,6 +32,7 @@ import com.sitewhere.hbase.ISiteWhereHBase;
 import com.sitewhere.hbase.ISiteWhereHBaseClient;
 import com.sitewhere.hbase.common.HBaseUtils;
 import com.sitewhere.hbase.common.MarshalUtils;
+import com.sitewhere.hbase.common.ScanProfiles;
 import com.sitewhere.rest.model.user.GrantedAuthoritySearchCriteria;
 import com.sitewhere.rest.model.user.User;
 import com.sitewhere.spi.SiteWhereException;
@@ -69,7 +70,7 @@ public class HBaseUser {
 		// Create the new user and store it.
 		User user = SiteWherePersistence.userCreateLogic(request);
 		byte[] primary = getUserRowKey(request.getUsername());
-		byte[] json = MarshalUtils.marshalJson(user);
+		byte[] json = MarshalUtils.marshal(user);
 
 		HTableInterface users = null;
 		try {
@@ -104,7 +105,7 @@ public class HBaseUser {
 		SiteWherePersistence.userUpdateLogic(request, updated);
 
 		byte[] primary = getUserRowKey(username);
-		byte[] json = MarshalUtils.marshalJson(updated);
+		byte[] json = MarshalUtils.marshal(updated);
 
 		HTableInterface users = null;
 		try {
@@ -151,7 +152,7 @@ public class HBaseUser {
 		} else {
 			byte[] marker = { (byte) 0x01 };
 			SiteWherePersistence.setUpdatedEntityMetadata(existing);
-			byte[] updated = MarshalUtils.marshalJson(existing);
+			byte[] updated = MarshalUtils.marshal(existing);
 			HTableInterface users = null;
 			try {
 				users = hbase.getTableInterface(ISiteWhereHBase.USERS_TABLE_NAME);
@@ -192,7 +193,7 @@ public class HBaseUser {
 			if (result.size() > 1) {
 				throw new SiteWhereException("Expected one JSON entry for site and found: " + result.size());
 			}
-			return MarshalUtils.unmarshalJson(result.value(), User.class);
+			return MarshalUtils.unmarshal(result.value(), User.class);
 		} catch (IOException e) {
 			throw new SiteWhereException("Unable to load user by username.", e);
 		} finally {
@@ -229,7 +230,7 @@ public class HBaseUser {
 		// Update last login date.
 		existing.setLastLogin(new Date());
 		byte[] primary = getUserRowKey(username);
-		byte[] json = MarshalUtils.marshalJson(existing);
+		byte[] json = MarshalUtils.marshal(existing);
 
 		HTableInterface users = null;
 		try {
@@ -263,6 +264,7 @@ public class HBaseUser {
 			Scan scan = new Scan();
 			scan.setStartRow(new byte[] { UserRecordType.User.getType() });
 			scan.setStopRow(new byte[] { UserRecordType.GrantedAuthority.getType() });
+			ScanProfiles.get(ScanProfiles.ENTITY_LIST).apply(scan);
 			scanner = users.getScanner(scan);
 
 			ArrayList<IUser> matches = new ArrayList<IUser>();
@@ -279,7 +281,7 @@ public class HBaseUser {
 					}
 				}
 				if ((shouldAdd) && (json != null)) {
-					matches.add(MarshalUtils.unmarshalJson(json, User.class));
+					matches.add(MarshalUtils.unmarshal(json, User.class));
 				}
 			}
 			return matches;
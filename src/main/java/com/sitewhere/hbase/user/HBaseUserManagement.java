@@ -11,12 +11,14 @@ package com.sitewhere.hbase.user;
 
 import java.util.List;
 
-import org.apache.hadoop.hbase.regionserver.StoreFile.BloomType;
 import org.apache.log4j.Logger;
 
 import com.sitewhere.hbase.ISiteWhereHBase;
 import com.sitewhere.hbase.ISiteWhereHBaseClient;
+import com.sitewhere.hbase.common.MarshalUtils;
 import com.sitewhere.hbase.common.SiteWhereTables;
+import com.sitewhere.hbase.common.TableProfile;
+import com.sitewhere.hbase.encoder.IPayloadMarshaler;
 import com.sitewhere.hbase.uid.IdManager;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.user.IGrantedAuthority;
@@ -40,6 +42,9 @@ public class HBaseUserManagement implements IUserManagement {
 	/** Used to communicate with HBase */
 	private ISiteWhereHBaseClient client;
 
+	/** Schema settings for the users table */
+	private TableProfile usersTableProfile = TableProfile.lookupTable();
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -55,6 +60,9 @@ public class HBaseUserManagement implements IUserManagement {
 		LOGGER.info("Loading id management...");
 		IdManager.getInstance().load(client);
 
+		LOGGER.info("Preparing " + MarshalUtils.getMarshaler().getName() + " payload marshaler...");
+		MarshalUtils.prepare();
+
 		LOGGER.info("HBase user management started.");
 	}
 
@@ -74,7 +82,7 @@ public class HBaseUserManagement implements IUserManagement {
 	 * @throws SiteWhereException
 	 */
 	protected void ensureTablesExist() throws SiteWhereException {
-		SiteWhereTables.assureTable(client, ISiteWhereHBase.USERS_TABLE_NAME, BloomType.ROW);
+		SiteWhereTables.assureTable(client, ISiteWhereHBase.USERS_TABLE_NAME, usersTableProfile, null);
 	}
 
 	/*
@@ -245,4 +253,20 @@ public class HBaseUserManagement implements IUserManagement {
 	public void setClient(ISiteWhereHBaseClient client) {
 		this.client = client;
 	}
-}
\ No newline at end of file
+
+	public TableProfile getUsersTableProfile() {
+		return usersTableProfile;
+	}
+
+	public void setUsersTableProfile(TableProfile usersTableProfile) {
+		this.usersTableProfile = usersTableProfile;
+	}
+
+	public IPayloadMarshaler getPayloadMarshaler() {
+		return MarshalUtils.getMarshaler();
+	}
+
+	public void setPayloadMarshaler(IPayloadMarshaler payloadMarshaler) {
+		MarshalUtils.setMarshaler(payloadMarshaler);
+	}
+}
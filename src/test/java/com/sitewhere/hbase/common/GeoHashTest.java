@@ -0,0 +1,91 @@
+/*
+ * GeoHashTest.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link GeoHash}.
+ * 
+ * @author Derek
+ */
+public class GeoHashTest {
+
+	/** Allowed error when comparing degrees */
+	private static final double DELTA = 0.0001;
+
+	@Test
+	public void encodeKnownPositions() {
+		assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+		assertEquals("u4pru", GeoHash.encode(57.64911, 10.40744, 5));
+		assertEquals("s0000", GeoHash.encode(0.0, 0.0, 5));
+		assertEquals("zzzzz", GeoHash.encode(90.0, 180.0, 5));
+	}
+
+	@Test
+	public void coveringHashesIncludeEveryCorner() {
+		double minLat = 33.70;
+		double maxLat = 33.80;
+		double minLng = -84.45;
+		double maxLng = -84.30;
+		Set<String> hashes = GeoHash.getCoveringHashes(minLat, maxLat, minLng, maxLng, 6, 32);
+		assertTrue(hashes.size() <= 32);
+		int precision = hashes.iterator().next().length();
+		assertTrue((precision > 0) && (precision <= 6));
+		for (String hash : hashes) {
+			assertEquals(precision, hash.length());
+		}
+		assertTrue(hashes.contains(GeoHash.encode(minLat, minLng, precision)));
+		assertTrue(hashes.contains(GeoHash.encode(minLat, maxLng, precision)));
+		assertTrue(hashes.contains(GeoHash.encode(maxLat, minLng, precision)));
+		assertTrue(hashes.contains(GeoHash.encode(maxLat, maxLng, precision)));
+		assertTrue(hashes.contains(GeoHash.encode(33.75, -84.38, precision)));
+	}
+
+	@Test
+	public void coveringHashesNeverExceedCellLimit() {
+		Set<String> hashes = GeoHash.getCoveringHashes(-90.0, 90.0, -180.0, 180.0, 6, 1);
+		assertEquals(1, hashes.size());
+		assertEquals("", hashes.iterator().next());
+	}
+
+	@Test
+	public void boundingBoxContainsCircle() {
+		double radiusKm = 100.0;
+		double[] box = GeoHash.getBoundingBox(45.0, 10.0, radiusKm);
+		double deltaLat = Math.toDegrees(radiusKm / GeoHash.EARTH_RADIUS_KM);
+		assertEquals(45.0 - deltaLat, box[0], DELTA);
+		assertEquals(45.0 + deltaLat, box[1], DELTA);
+		assertTrue(box[2] < 10.0);
+		assertTrue(box[3] > 10.0);
+		assertTrue(GeoHash.getDistanceKm(45.0, 10.0, 45.0, box[3]) >= radiusKm);
+		assertTrue(GeoHash.getDistanceKm(45.0, 10.0, 45.0, box[2]) >= radiusKm);
+	}
+
+	@Test
+	public void boundingBoxNearPoleCoversAllLongitudes() {
+		double[] box = GeoHash.getBoundingBox(89.5, 10.0, 200.0);
+		assertEquals(90.0, box[1], DELTA);
+		assertEquals(-180.0, box[2], DELTA);
+		assertEquals(180.0, box[3], DELTA);
+	}
+
+	@Test
+	public void boundingBoxAcrossAntimeridianCoversAllLongitudes() {
+		double[] box = GeoHash.getBoundingBox(10.0, 179.9, 50.0);
+		assertEquals(-180.0, box[2], DELTA);
+		assertEquals(180.0, box[3], DELTA);
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * MergedResultScannerTest.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+/**
+ * Tests for {@link MergedResultScanner}.
+ * 
+ * @author Derek
+ */
+public class MergedResultScannerTest {
+
+	/** Family used for test cells */
+	private static final byte[] FAMILY = Bytes.toBytes("f");
+
+	@Test
+	public void rowsAreMergedIgnoringSalt() throws Exception {
+		ListScanner first = new ListScanner(0, "a", "c", "f");
+		ListScanner second = new ListScanner(1, "b", "e");
+		ListScanner third = new ListScanner(2, "d");
+		MergedResultScanner merged =
+				new MergedResultScanner(Arrays.<ResultScanner> asList(first, second, third), 1);
+		List<String> rows = new ArrayList<String>();
+		for (Result result : merged) {
+			rows.add(Bytes.toString(Bytes.tail(result.getRow(), result.getRow().length - 1)));
+		}
+		assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f"), rows);
+	}
+
+	@Test
+	public void saltIsKeptInReturnedRows() throws Exception {
+		MergedResultScanner merged =
+				new MergedResultScanner(Arrays.<ResultScanner> asList(new ListScanner(7, "b"),
+						new ListScanner(3, "a")), 1);
+		assertEquals(3, merged.next().getRow()[0]);
+		assertEquals(7, merged.next().getRow()[0]);
+		assertNull(merged.next());
+	}
+
+	@Test
+	public void emptyScannersAreSkipped() throws Exception {
+		MergedResultScanner merged =
+				new MergedResultScanner(Arrays.<ResultScanner> asList(new ListScanner(0),
+						new ListScanner(1, "a", "b"), new ListScanner(2)), 1);
+		Result[] results = merged.next(5);
+		assertEquals(2, results.length);
+		assertEquals(0, merged.next(5).length);
+	}
+
+	@Test
+	public void closeClosesAllScanners() {
+		ListScanner first = new ListScanner(0, "a");
+		ListScanner second = new ListScanner(1, "b");
+		new MergedResultScanner(Arrays.<ResultScanner> asList(first, second), 1).close();
+		assertTrue(first.isClosed());
+		assertTrue(second.isClosed());
+	}
+
+	/**
+	 * Scanner over rows held in memory. Each row has the salt byte followed by its name.
+	 * 
+	 * @author Derek
+	 */
+	private static class ListScanner implements ResultScanner {
+
+		/** Rows not yet returned */
+		private Iterator<Result> rows;
+
+		/** Indicates the scanner was closed */
+		private boolean closed;
+
+		public ListScanner(int salt, String... names) {
+			List<Result> results = new ArrayList<Result>();
+			for (String name : names) {
+				byte[] row = Bytes.add(new byte[] { (byte) salt }, Bytes.toBytes(name));
+				results.add(new Result(new KeyValue[] { new KeyValue(row, FAMILY, FAMILY, row) }));
+			}
+			this.rows = results.iterator();
+		}
+
+		public Result next() {
+			return rows.hasNext() ? rows.next() : null;
+		}
+
+		public Result[] next(int nbRows) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() {
+			closed = true;
+		}
+
+		public Iterator<Result> iterator() {
+			return rows;
+		}
+
+		public boolean isClosed() {
+			return closed;
+		}
+	}
+}
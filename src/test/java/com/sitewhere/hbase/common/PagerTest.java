@@ -0,0 +1,93 @@
+/*
+ * PagerTest.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.sitewhere.rest.model.search.SearchCriteria;
+
+/**
+ * Tests for {@link Pager} in each {@link PagingMode}.
+ * 
+ * @author Derek
+ */
+public class PagerTest {
+
+	@Test
+	public void exactModeCountsAllRecords() {
+		Pager<Integer> pager = new Pager<Integer>(new SearchCriteria(2, 3), PagingMode.Exact);
+		assertEquals(-1, pager.getExpectedRecords());
+		int processed = process(pager, 20);
+		assertEquals(20, processed);
+		assertEquals(Arrays.asList(3, 4, 5), pager.getResults());
+		assertEquals(20, pager.getTotal());
+		assertFalse(pager.isDone());
+		assertFalse(pager.isTruncated());
+	}
+
+	@Test
+	public void limitedModeStopsAfterPageAndOneMore() {
+		Pager<Integer> pager = new Pager<Integer>(new SearchCriteria(2, 3), PagingMode.Limited);
+		assertEquals(7, pager.getExpectedRecords());
+		int processed = process(pager, 20);
+		assertEquals(7, processed);
+		assertEquals(Arrays.asList(3, 4, 5), pager.getResults());
+		assertEquals(7, pager.getTotal());
+		assertTrue(pager.isDone());
+		assertTrue(pager.isTruncated());
+	}
+
+	@Test
+	public void limitedModeIsExactOnLastPage() {
+		Pager<Integer> pager = new Pager<Integer>(new SearchCriteria(2, 3), PagingMode.Limited);
+		int processed = process(pager, 5);
+		assertEquals(5, processed);
+		assertEquals(Arrays.asList(3, 4), pager.getResults());
+		assertEquals(5, pager.getTotal());
+		assertFalse(pager.isDone());
+		assertFalse(pager.isTruncated());
+	}
+
+	@Test
+	public void cursorModeIgnoresPageNumber() {
+		Pager<Integer> pager = new Pager<Integer>(new SearchCriteria(4, 3), PagingMode.Cursor);
+		assertTrue(pager.isCursor());
+		assertEquals(3, pager.getExpectedRecords());
+		int processed = process(pager, 20);
+		assertEquals(3, processed);
+		assertEquals(Arrays.asList(0, 1, 2), pager.getResults());
+		assertTrue(pager.isDone());
+		assertFalse(pager.isTruncated());
+	}
+
+	/**
+	 * Pass records to a pager until it is done or the records run out.
+	 * 
+	 * @param pager
+	 * @param count
+	 * @return number of records processed
+	 */
+	protected int process(Pager<Integer> pager, int count) {
+		int processed = 0;
+		while (processed < count) {
+			boolean more = pager.process(processed++);
+			if (!more) {
+				break;
+			}
+		}
+		return processed;
+	}
+}
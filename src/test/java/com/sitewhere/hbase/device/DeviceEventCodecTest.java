@@ -0,0 +1,137 @@
+/*
+ * DeviceEventCodecTest.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.sitewhere.rest.model.device.DeviceAlert;
+import com.sitewhere.rest.model.device.DeviceAssignment;
+import com.sitewhere.rest.model.device.DeviceMeasurements;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Tests for {@link DeviceEventCodec}. Events use tokens that differ from the assignment
+ * so that decoding does not need to look up tokens from the row key.
+ * 
+ * @author Derek
+ */
+public class DeviceEventCodecTest {
+
+	/** Assignment key used for event rows */
+	private static final byte[] ASSN_KEY = new byte[] { 0x00, 0x01, 0x02, (byte) 0xff, (byte) 0xff,
+			(byte) 0xff, (byte) 0xfe };
+
+	/** Event time with a millisecond part */
+	private static final long TIME = 1400000123456L;
+
+	@After
+	public void resetSettings() {
+		DeviceEventSettings.getInstance().setEncoding(EventEncoding.Binary);
+	}
+
+	@Test
+	public void binaryValuesRoundTrip() throws Exception {
+		byte[] row = HBaseDeviceEvent.getBucketKey(ASSN_KEY, TIME);
+		byte[] qualifier =
+				HBaseDeviceEvent.getQualifier(DeviceAssignmentRecordType.Measurement, TIME,
+						EventKeyLayout.Milliseconds);
+		byte[] value = DeviceEventCodec.encode(createMeasurements(), createAssignment(), row, qualifier);
+		assertEquals(DeviceEventCodec.FORMAT_BINARY_V1, value[0]);
+
+		DeviceMeasurements decoded = DeviceEventCodec.decode(row, qualifier, value, DeviceMeasurements.class);
+		assertEquals(HBaseDeviceEvent.getEncodedEventId(row, qualifier), decoded.getId());
+		assertEquals(TIME, decoded.getEventDate().getTime());
+		assertEquals("site", decoded.getSiteToken());
+		assertEquals("assignment", decoded.getDeviceAssignmentToken());
+		assertEquals(Double.valueOf(21.5), decoded.getMeasurements().get("temperature"));
+	}
+
+	@Test
+	public void secondKeysKeepMilliseconds() throws Exception {
+		byte[] row = HBaseDeviceEvent.getBucketKey(ASSN_KEY, TIME);
+		byte[] qualifier =
+				HBaseDeviceEvent.getQualifier(DeviceAssignmentRecordType.Measurement, TIME,
+						EventKeyLayout.Seconds);
+		byte[] value = DeviceEventCodec.encode(createMeasurements(), createAssignment(), row, qualifier);
+
+		DeviceMeasurements decoded = DeviceEventCodec.decode(row, qualifier, value, DeviceMeasurements.class);
+		assertEquals(TIME, decoded.getEventDate().getTime());
+	}
+
+	@Test
+	public void jsonValuesRoundTrip() throws Exception {
+		DeviceEventSettings.getInstance().setEncoding(EventEncoding.Json);
+		byte[] row = HBaseDeviceEvent.getBucketKey(ASSN_KEY, TIME);
+		byte[] qualifier =
+				HBaseDeviceEvent.getQualifier(DeviceAssignmentRecordType.Alert, TIME, EventKeyLayout.Seconds);
+		DeviceAlert alert = new DeviceAlert();
+		alert.setId("alert-id");
+		alert.setSiteToken("site");
+		alert.setDeviceAssignmentToken("assignment");
+		alert.setEventDate(new Date(TIME));
+		alert.setType("fire");
+		alert.setMessage("Fire detected.");
+		byte[] value = DeviceEventCodec.encode(alert, createAssignment(), row, qualifier);
+		assertEquals(DeviceEventCodec.FORMAT_JSON, value[0]);
+
+		DeviceAlert decoded = DeviceEventCodec.decode(row, qualifier, value, DeviceAlert.class);
+		assertEquals("alert-id", decoded.getId());
+		assertEquals(TIME, decoded.getEventDate().getTime());
+		assertEquals("fire", decoded.getType());
+		assertEquals("Fire detected.", decoded.getMessage());
+	}
+
+	@Test(expected = SiteWhereException.class)
+	public void unknownFormatIsRejected() throws Exception {
+		byte[] row = HBaseDeviceEvent.getBucketKey(ASSN_KEY, TIME);
+		byte[] qualifier =
+				HBaseDeviceEvent.getQualifier(DeviceAssignmentRecordType.Alert, TIME, EventKeyLayout.Seconds);
+		DeviceEventCodec.decode(row, qualifier, new byte[] { 0x7f, 0x00 }, DeviceAlert.class);
+	}
+
+	@Test(expected = SiteWhereException.class)
+	public void emptyValueIsRejected() throws Exception {
+		byte[] row = HBaseDeviceEvent.getBucketKey(ASSN_KEY, TIME);
+		byte[] qualifier =
+				HBaseDeviceEvent.getQualifier(DeviceAssignmentRecordType.Alert, TIME, EventKeyLayout.Seconds);
+		DeviceEventCodec.decode(row, qualifier, new byte[0], DeviceAlert.class);
+	}
+
+	/**
+	 * Create a measurements event.
+	 * 
+	 * @return
+	 */
+	protected DeviceMeasurements createMeasurements() {
+		DeviceMeasurements measurements = new DeviceMeasurements();
+		measurements.setSiteToken("site");
+		measurements.setDeviceAssignmentToken("assignment");
+		measurements.setEventDate(new Date(TIME));
+		measurements.addOrReplaceMeasurement("temperature", 21.5);
+		return measurements;
+	}
+
+	/**
+	 * Create an assignment whose tokens differ from those of the events.
+	 * 
+	 * @return
+	 */
+	protected DeviceAssignment createAssignment() {
+		DeviceAssignment assignment = new DeviceAssignment();
+		assignment.setToken("other-assignment");
+		assignment.setSiteToken("other-site");
+		return assignment;
+	}
+}
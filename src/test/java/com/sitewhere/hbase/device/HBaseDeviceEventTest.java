@@ -0,0 +1,133 @@
+/*
+ * HBaseDeviceEventTest.java 
+ * --------------------------------------------------------------------------------------
+ * Copyright (c) Reveal Technologies, LLC. All rights reserved. http://www.reveal-tech.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.device;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for the event key layout and table split keys in {@link HBaseDeviceEvent}.
+ * 
+ * @author Derek
+ */
+public class HBaseDeviceEventTest {
+
+	/** Assignment key used for event rows */
+	private static final byte[] ASSN_KEY = new byte[] { 0x00, 0x01, 0x02, (byte) 0xff, (byte) 0xff,
+			(byte) 0xff, (byte) 0xfe };
+
+	/** Event time in the middle of an hour bucket */
+	private static final long TIME = 1400000123456L;
+
+	@After
+	public void resetSettings() {
+		DeviceEventSettings.getInstance().setNodeId(0);
+	}
+
+	@Test
+	public void millisecondLayoutKeepsEventTime() {
+		byte[] row = HBaseDeviceEvent.getBucketKey(ASSN_KEY, TIME);
+		byte[] qualifier =
+				HBaseDeviceEvent.getQualifier(DeviceAssignmentRecordType.Measurement, TIME,
+						EventKeyLayout.Milliseconds);
+		assertEquals(EventKeyLayout.Milliseconds.getQualifierLength(), qualifier.length);
+		assertEquals(DeviceAssignmentRecordType.Measurement.getType(), qualifier[3]);
+		assertEquals(TIME, HBaseDeviceEvent.getDateForEventKeyValue(row, qualifier).getTime());
+	}
+
+	@Test
+	public void secondLayoutKeepsEventSecond() {
+		byte[] row = HBaseDeviceEvent.getBucketKey(ASSN_KEY, TIME);
+		byte[] qualifier =
+				HBaseDeviceEvent.getQualifier(DeviceAssignmentRecordType.Alert, TIME, EventKeyLayout.Seconds);
+		assertEquals(EventKeyLayout.Seconds.getQualifierLength(), qualifier.length);
+		assertEquals(DeviceAssignmentRecordType.Alert.getType(), qualifier[3]);
+		assertEquals((TIME / 1000) * 1000, HBaseDeviceEvent.getDateForEventKeyValue(row, qualifier).getTime());
+	}
+
+	@Test
+	public void newerEventsSortFirst() {
+		for (EventKeyLayout layout : EventKeyLayout.values()) {
+			byte[] older =
+					HBaseDeviceEvent.getQualifier(DeviceAssignmentRecordType.Location, TIME, layout);
+			byte[] newer =
+					HBaseDeviceEvent.getQualifier(DeviceAssignmentRecordType.Location, TIME + 5000, layout);
+			assertTrue(Bytes.compareTo(newer, older) < 0);
+		}
+		byte[] olderRow = HBaseDeviceEvent.getBucketKey(ASSN_KEY, TIME);
+		byte[] newerRow = HBaseDeviceEvent.getBucketKey(ASSN_KEY, TIME + 3600 * 1000L);
+		assertTrue(Bytes.compareTo(newerRow, olderRow) < 0);
+	}
+
+	@Test
+	public void sameMillisecondGetsDistinctQualifiers() {
+		byte[] first =
+				HBaseDeviceEvent.getQualifier(DeviceAssignmentRecordType.Measurement, TIME,
+						EventKeyLayout.Milliseconds);
+		byte[] second =
+				HBaseDeviceEvent.getQualifier(DeviceAssignmentRecordType.Measurement, TIME,
+						EventKeyLayout.Milliseconds);
+		assertFalse(Bytes.equals(first, second));
+		assertTrue(Bytes.equals(Bytes.head(first, 4), Bytes.head(second, 4)));
+	}
+
+	@Test
+	public void sequenceHoldsNodeId() {
+		DeviceEventSettings.getInstance().setNodeId(5);
+		byte[] qualifier =
+				HBaseDeviceEvent.getQualifier(DeviceAssignmentRecordType.Measurement, TIME,
+						EventKeyLayout.Milliseconds);
+		int sequence = (~Bytes.toShort(qualifier, 4)) & 0xffff;
+		assertEquals(5, sequence >> 12);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nodeIdIsLimitedToFourBits() {
+		DeviceEventSettings.getInstance().setNodeId(16);
+	}
+
+	@Test
+	public void noSplitsWhenTooFewAssignments() {
+		assertNull(HBaseDeviceEvent.getSplitKeys(1, 10, 1000));
+		assertNull(HBaseDeviceEvent.getSplitKeys(0, 10, 1000));
+		assertNull(HBaseDeviceEvent.getSplitKeys(8, 1, 7));
+	}
+
+	@Test
+	public void splitsAreOrderedAndSpreadAcrossSites() {
+		byte[][] splits = HBaseDeviceEvent.getSplitKeys(8, 4, 1000);
+		assertEquals(7, splits.length);
+		for (int i = 1; i < splits.length; i++) {
+			assertTrue(Bytes.compareTo(splits[i - 1], splits[i]) < 0);
+		}
+		assertTrue(Bytes.startsWith(splits[0], HBaseSite.getAssignmentRowKey(1L)));
+		assertTrue(Bytes.startsWith(splits[2], HBaseSite.getAssignmentRowKey(2L)));
+		assertTrue(Bytes.startsWith(splits[4], HBaseSite.getAssignmentRowKey(3L)));
+		assertTrue(Bytes.startsWith(splits[6], HBaseSite.getAssignmentRowKey(4L)));
+	}
+
+	@Test
+	public void splitsUseNewestAssignmentIdentifiers() {
+		byte[][] splits = HBaseDeviceEvent.getSplitKeys(4, 1, 1000);
+		byte[] site = HBaseSite.getAssignmentRowKey(1L);
+		long firstId = 0xffffffffL - 999;
+		for (int i = 0; i < splits.length; i++) {
+			assertEquals(site.length + HBaseDeviceAssignment.ASSIGNMENT_IDENTIFIER_LENGTH, splits[i].length);
+			byte[] expected = HBaseDeviceAssignment.getAssignmentIdentifier(firstId + (250 * (i + 1)));
+			assertTrue(Bytes.equals(expected, Bytes.tail(splits[i], expected.length)));
+		}
+	}
+}